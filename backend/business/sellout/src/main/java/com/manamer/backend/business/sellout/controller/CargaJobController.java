@@ -0,0 +1,121 @@
+package com.manamer.backend.business.sellout.controller;
+
+import com.manamer.backend.business.sellout.service.CargaJobService;
+import com.manamer.backend.business.sellout.service.CargaJobService.CargaJob;
+import com.manamer.backend.business.sellout.service.CargaJobService.TipoCarga;
+import com.manamer.backend.business.sellout.service.TipoMuebleService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Cargas asíncronas: cada POST devuelve 202 con el id del trabajo; el avance se consulta
+ * en GET /jobs/{id} y las incidencias se descargan en GET /jobs/{id}/incidencias.
+ */
+@RestController
+@CrossOrigin(origins = "*", allowedHeaders = "*", exposedHeaders = "Location",
+        methods = {RequestMethod.GET, RequestMethod.POST})
+@RequestMapping("/api-sellout/jobs")
+public class CargaJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(CargaJobController.class);
+
+    private final CargaJobService cargaJobService;
+
+    public CargaJobController(CargaJobService cargaJobService) {
+        this.cargaJobService = cargaJobService;
+    }
+
+    // ---------- Encolar ----------
+
+    @PostMapping("/template-general")
+    public ResponseEntity<Map<String, Object>> cargarTemplateGeneral(@RequestParam("file") MultipartFile file) {
+        return encolar(TipoCarga.TEMPLATE_GENERAL, file, null);
+    }
+
+    @PostMapping("/fybeca/venta")
+    public ResponseEntity<Map<String, Object>> cargarVentasFybeca(@RequestParam("file") MultipartFile file,
+                                                                  @RequestParam(required = false) String codCliente) {
+        String cod = (codCliente == null || codCliente.isBlank()) ? TipoMuebleService.COD_CLIENTE_FYBECA : codCliente.trim();
+        return encolar(TipoCarga.FYBECA, file, cod);
+    }
+
+    @PostMapping("/deprati/venta")
+    public ResponseEntity<Map<String, Object>> cargarVentasDeprati(@RequestParam("file") MultipartFile file) {
+        return encolar(TipoCarga.DEPRATI, file, null);
+    }
+
+    private ResponseEntity<Map<String, Object>> encolar(TipoCarga tipo, MultipartFile file, String codCliente) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("message", "El archivo está vacío."));
+        }
+        try {
+            CargaJob job = cargaJobService.encolar(tipo, file.getInputStream(), file.getOriginalFilename(), codCliente);
+            String url = "/api-sellout/jobs/" + job.getId();
+
+            Map<String, Object> body = new LinkedHashMap<>(job.toMap());
+            body.put("urlEstado", url);
+            body.put("urlIncidencias", url + "/incidencias");
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, url)
+                    .body(body);
+
+        } catch (RejectedExecutionException e) {
+            logger.warn("Cola de cargas llena; se rechaza {} ({})", tipo, file.getOriginalFilename());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .body(Map.of("message", "Hay demasiadas cargas en curso. Intenta nuevamente en unos minutos."));
+        } catch (Exception e) {
+            logger.error("No se pudo encolar la carga {}: {}", tipo, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "No se pudo recibir el archivo: " + e.getMessage()));
+        }
+    }
+
+    // ---------- Consulta ----------
+
+    @GetMapping
+    public Map<String, Object> listar() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("pool", cargaJobService.estadoPool());
+        out.put("trabajos", cargaJobService.listar().stream().map(CargaJob::toMap).toList());
+        return out;
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> estado(@PathVariable String id) {
+        return cargaJobService.obtener(id)
+                .map(j -> ResponseEntity.ok(j.toMap()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("message", "No existe el trabajo " + id)));
+    }
+
+    @GetMapping("/{id}/incidencias")
+    public ResponseEntity<?> incidencias(@PathVariable String id) {
+        Optional<CargaJob> job = cargaJobService.obtener(id);
+        if (job.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "No existe el trabajo " + id));
+        }
+        Optional<Path> txt = job.get().getIncidencias();
+        if (txt.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("message", "El trabajo aún no genera incidencias.", "estado", job.get().getEstado()));
+        }
+        Resource resource = new FileSystemResource(txt.get());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=incidencias_" + id + ".txt")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(resource);
+    }
+}
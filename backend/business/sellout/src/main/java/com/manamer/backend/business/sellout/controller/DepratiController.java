@@ -6,6 +6,7 @@ import com.manamer.backend.business.sellout.service.ClienteService;
 import com.manamer.backend.business.sellout.service.DepratiVentaService;
 import com.manamer.backend.business.sellout.service.ProductoService;
 import com.manamer.backend.business.sellout.service.TipoMuebleService;
+import com.manamer.backend.business.sellout.service.VentaConsultaService;
 import com.manamer.backend.business.sellout.service.VentaService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,18 +40,21 @@ public class DepratiController {
     private final ClienteService clienteService;
     private final ProductoService productoService;
     private final VentaService ventaService;
+    private final VentaConsultaService ventaConsultaService;
 
     @Autowired
     public DepratiController(DepratiVentaService depratiVentaService,
                              TipoMuebleService tipoMuebleService,
                              ClienteService clienteService,
                              ProductoService productoService,
-                             VentaService ventaService) {
+                             VentaService ventaService,
+                             VentaConsultaService ventaConsultaService) {
         this.depratiVentaService = depratiVentaService;
         this.tipoMuebleService = tipoMuebleService;
         this.clienteService = clienteService;
         this.productoService = productoService;
         this.ventaService = ventaService;
+        this.ventaConsultaService = ventaConsultaService;
     }
 
     // ---------- Ventas ----------
@@ -59,6 +63,26 @@ public class DepratiController {
         return ResponseEntity.ok(depratiVentaService.obtenerTodasLasVentasDeprati());
     }
 
+    /** Lista paginada (keyset) de ventas Deprati: filtros anio/mes/marca/codPdv/codBarra, orden y cursor. */
+    @GetMapping("/venta/pagina")
+    public ResponseEntity<?> obtenerVentasPaginadas(@RequestParam(required = false) Integer anio,
+                                                    @RequestParam(required = false) Integer mes,
+                                                    @RequestParam(required = false) String marca,
+                                                    @RequestParam(required = false) String codPdv,
+                                                    @RequestParam(required = false) String codBarra,
+                                                    @RequestParam(required = false) String orden,
+                                                    @RequestParam(required = false) String direccion,
+                                                    @RequestParam(required = false) Integer limite,
+                                                    @RequestParam(required = false) String cursor) {
+        try {
+            var filtro = new VentaConsultaService.FiltroVentas(null, DepratiVentaService.COD_CLIENTE_DEPRATI,
+                    anio, mes, marca, codPdv, codBarra);
+            return ResponseEntity.ok(ventaConsultaService.pagina(filtro, orden, direccion, limite, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
     @GetMapping("/venta/{id}")
     public ResponseEntity<Venta> obtenerVentaPorId(@PathVariable Long id) {
         return depratiVentaService.obtenerVentaDepratiPorId(id)
@@ -85,10 +109,15 @@ public class DepratiController {
     }
 
     @DeleteMapping("/ventas-forma-masiva")
-    public ResponseEntity<Void> eliminarVentas(@RequestBody List<Long> ids) {
-        boolean ok = depratiVentaService.eliminarVentasDeprati(ids);
-        return ok ? ResponseEntity.ok().build()
-                  : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    public ResponseEntity<Map<String, Object>> eliminarVentas(@RequestBody List<Long> ids) {
+        try {
+            return ResponseEntity.ok(depratiVentaService.eliminarVentasDeprati(ids).toMap());
+        } catch (Exception e) {
+            logger.error("Error en borrado masivo de ventas Deprati (ids={}): {}",
+                    ids == null ? 0 : ids.size(), e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("ok", false, "message", "No se pudieron eliminar las ventas: " + e.getMessage()));
+        }
     }
 
     // ---------- Cargas Excel (ventas) ----------
@@ -141,25 +170,7 @@ public class DepratiController {
 
     @PostMapping("/descargas/log-carga")
     public ResponseEntity<Resource> descargarLogCarga(@RequestBody Map<String, Object> resumen) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("LOG DE CARGA - DEPRATI").append(System.lineSeparator());
-        sb.append("Archivo: ").append(resumen.getOrDefault("archivo", "N/D")).append(System.lineSeparator());
-        sb.append("Filas leídas: ").append(resumen.getOrDefault("filasLeidas", 0)).append(System.lineSeparator());
-        sb.append("Filas procesadas: ").append(resumen.getOrDefault("filasProcesadas", 0)).append(System.lineSeparator());
-        sb.append("Insertados: ").append(resumen.getOrDefault("insertados", 0)).append(System.lineSeparator());
-        sb.append("Actualizados: ").append(resumen.getOrDefault("actualizados", 0)).append(System.lineSeparator());
-        sb.append("Omitidos: ").append(resumen.getOrDefault("omitidos", 0)).append(System.lineSeparator());
-        sb.append("Errores: ").append(resumen.getOrDefault("errores", 0)).append(System.lineSeparator());
-
-        Object inc = resumen.get("incidencias");
-        if (inc instanceof Collection<?> col && !col.isEmpty()) {
-            sb.append(System.lineSeparator()).append("Incidencias:").append(System.lineSeparator());
-            for (Object o : col) {
-                sb.append("- ").append(String.valueOf(o)).append(System.lineSeparator());
-            }
-        }
-
-        byte[] bytes = sb.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        byte[] bytes = depratiVentaService.construirLogCarga(resumen).getBytes(java.nio.charset.StandardCharsets.UTF_8);
         var resource = new org.springframework.core.io.InputStreamResource(new java.io.ByteArrayInputStream(bytes));
         String filename = "log_carga_deprati_" +
                 LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
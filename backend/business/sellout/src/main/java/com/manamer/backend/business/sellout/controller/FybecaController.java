@@ -6,13 +6,17 @@ import com.manamer.backend.business.sellout.models.Producto;
 import com.manamer.backend.business.sellout.models.TipoMueble;
 import com.manamer.backend.business.sellout.models.Venta;
 import com.manamer.backend.business.sellout.repositories.ProductoRepository;
+import com.manamer.backend.business.sellout.service.ClienteNoEncontradoException;
 import com.manamer.backend.business.sellout.service.ClienteService;
 import com.manamer.backend.business.sellout.service.FybecaVentaService;
 import com.manamer.backend.business.sellout.service.ProductoService;
 import com.manamer.backend.business.sellout.service.TipoMuebleService;
+import com.manamer.backend.business.sellout.service.VentaCatalogoService;
+import com.manamer.backend.business.sellout.service.VentaConsultaService;
+import com.manamer.backend.business.sellout.service.VentaReporteService;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
@@ -20,14 +24,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.text.Normalizer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -47,18 +55,24 @@ public class FybecaController {
     private final ClienteService clienteService;
     private final ProductoService productoService;
     private final ProductoRepository repository;
+    private final VentaConsultaService ventaConsultaService;
+    private final VentaReporteService ventaReporteService;
 
     @Autowired
     public FybecaController(FybecaVentaService fybecaService,
                             TipoMuebleService tipoMuebleService,
                             ClienteService clienteService,
                             ProductoService productoService,
-                            ProductoRepository repository) {
+                            ProductoRepository repository,
+                            VentaConsultaService ventaConsultaService,
+                            VentaReporteService ventaReporteService) {
         this.fybecaService = fybecaService;
         this.tipoMuebleService = tipoMuebleService;
         this.clienteService = clienteService;
         this.productoService = productoService;
         this.repository = repository;
+        this.ventaConsultaService = ventaConsultaService;
+        this.ventaReporteService = ventaReporteService;
     }
 
     // ---------- Helpers ----------
@@ -75,62 +89,6 @@ public class FybecaController {
         return parts;
     }
 
-    public static String normalizarTexto(String input) {
-        if (input == null) return null;
-        return Normalizer.normalize(input.toLowerCase().trim(), Normalizer.Form.NFD)
-                .replaceAll("\\p{InCombiningDiacriticalMarks}+", "")
-                .replaceAll("[^\\p{ASCII}]", "")
-                .replaceAll("[\\.,\"']", "");
-    }
-
-    private Workbook obtenerWorkbookCorrecto(MultipartFile file) throws IOException {
-        String nombreArchivo = file.getOriginalFilename();
-        if (nombreArchivo != null && nombreArchivo.toLowerCase().endsWith(".xls")) {
-            return new HSSFWorkbook(file.getInputStream());
-        } else {
-            return new XSSFWorkbook(file.getInputStream());
-        }
-    }
-
-    private <T> T obtenerValorCelda(Cell cell, Class<T> clazz) {
-        if (cell == null) {
-            if (clazz == Integer.class) return clazz.cast(0);
-            if (clazz == Double.class) return clazz.cast(0.0);
-            return null;
-        }
-        try {
-            switch (cell.getCellType()) {
-                case NUMERIC:
-                    if (clazz == Integer.class) return clazz.cast((int) cell.getNumericCellValue());
-                    if (clazz == Double.class) return clazz.cast(cell.getNumericCellValue());
-                    if (clazz == String.class) return clazz.cast(String.valueOf((int) cell.getNumericCellValue()));
-                    break;
-                case STRING:
-                    String value = cell.getStringCellValue().trim();
-                    if (clazz == Integer.class) {
-                        try { return clazz.cast(Integer.parseInt(value)); } catch (NumberFormatException e) { return clazz.cast(0); }
-                    } else if (clazz == Double.class) {
-                        try { return clazz.cast(Double.parseDouble(value)); } catch (NumberFormatException e) { return clazz.cast(0.0); }
-                    } else {
-                        return clazz.cast(value);
-                    }
-                case BLANK:
-                    if (clazz == Integer.class) return clazz.cast(0);
-                    if (clazz == Double.class) return clazz.cast(0.0);
-                    return null;
-                default:
-                    if (clazz == Integer.class) return clazz.cast(0);
-                    if (clazz == Double.class) return clazz.cast(0.0);
-                    return null;
-            }
-        } catch (Exception e) {
-            logger.error("Error al convertir celda: {}", cell, e);
-            if (clazz == Integer.class) return clazz.cast(0);
-            if (clazz == Double.class) return clazz.cast(0.0);
-        }
-        return null;
-    }
-
     // ---------- Ventas ----------
 
     /** Lista ventas — acepta ?codCliente=..., default MZCL-000014 */
@@ -141,6 +99,27 @@ public class FybecaController {
         return ResponseEntity.ok(ventas);
     }
 
+    /** Lista paginada (keyset) — acepta ?codCliente=..., filtros anio/mes/marca/codPdv/codBarra, orden y cursor */
+    @GetMapping("/venta/pagina")
+    public ResponseEntity<?> obtenerVentasPaginadas(@RequestParam(required = false) String codCliente,
+                                                    @RequestParam(required = false) Integer anio,
+                                                    @RequestParam(required = false) Integer mes,
+                                                    @RequestParam(required = false) String marca,
+                                                    @RequestParam(required = false) String codPdv,
+                                                    @RequestParam(required = false) String codBarra,
+                                                    @RequestParam(required = false) String orden,
+                                                    @RequestParam(required = false) String direccion,
+                                                    @RequestParam(required = false) Integer limite,
+                                                    @RequestParam(required = false) String cursor) {
+        String cod = resolveCodCliente(codCliente);
+        try {
+            var filtro = new VentaConsultaService.FiltroVentas(null, cod, anio, mes, marca, codPdv, codBarra);
+            return ResponseEntity.ok(ventaConsultaService.pagina(filtro, orden, direccion, limite, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
     /** Obtener por id — acepta ?codCliente=... */
     @GetMapping("/venta/{id}")
     public ResponseEntity<Venta> obtenerVentaPorId(@PathVariable Long id,
@@ -179,31 +158,29 @@ public class FybecaController {
         }
     }
 
-    // >>> Borrado masivo en lotes de 5000 <<<
+    // >>> Borrado masivo por conjuntos (DELETE ... WHERE id IN / JOIN #ids), acotado al cliente <<<
     @DeleteMapping("/ventas-forma-masiva")
-    public ResponseEntity<Void> eliminarVentas(@RequestBody List<Long> ids) {
-        if (ids == null || ids.isEmpty()) return ResponseEntity.ok().build();
-        int fallidos = 0;
-        for (List<Long> batch : partition(ids, DELETE_BATCH_SIZE)) {
-            try {
-                boolean ok = fybecaService.eliminarVentas(batch);
-                if (!ok) fallidos++;
-            } catch (Exception e) {
-                logger.error("Error eliminando lote de ventas (tam={}): {}", batch.size(), e.getMessage(), e);
-                fallidos++;
-            }
+    public ResponseEntity<Map<String, Object>> eliminarVentas(@RequestBody List<Long> ids,
+                                                              @RequestParam(required = false) String codCliente) {
+        String cod = resolveCodCliente(codCliente);
+        try {
+            return ResponseEntity.ok(fybecaService.eliminarVentasDeCliente(cod, ids).toMap());
+        } catch (ClienteNoEncontradoException e) {
+            logger.warn("Borrado masivo rechazado: cliente con codCliente {} no existe", cod);
+            return ResponseEntity.badRequest().body(Map.of("ok", false, "message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error en borrado masivo de ventas (ids={}, codCliente={}): {}",
+                    ids == null ? 0 : ids.size(), cod, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("ok", false, "message", "No se pudieron eliminar las ventas: " + e.getMessage()));
         }
-        return (fallidos == 0) ? ResponseEntity.ok().build()
-                               : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
     }
 
     /**
      * Subida flexible de ventas:
      * - Detecta columnas por encabezado.
-     * - Resuelve Cliente (ID real) y lo asigna a cada venta.
-     * - Enriquecimiento con cargarDatosDeProducto(Cliente,...).
-     * - Upsert con guardarOActualizarVenta(Cliente,...).
-     * - Devuelve TXT con códigos no encontrados.
+     * - Procesa en chunks de 10k filas: resolución de productos por conjuntos + MERGE por chunk.
+     * - Devuelve TXT con códigos no encontrados; el resumen viaja en cabeceras X-*.
      */
     @PostMapping("/subir-archivo-venta")
     public ResponseEntity<Resource> subirArchivoVentaFlexible(@RequestParam("file") MultipartFile file,
@@ -211,107 +188,35 @@ public class FybecaController {
         String cod = resolveCodCliente(codCliente);
         logger.info("Inicio de carga de archivo de ventas: {} para codCliente={}", file.getOriginalFilename(), cod);
 
-        Set<String> codigosNoEncontrados = new HashSet<>();
         if (file.isEmpty()) {
             logger.warn("El archivo recibido está vacío.");
             return ResponseEntity.badRequest().build();
         }
 
-        try (Workbook workbook = obtenerWorkbookCorrecto(file)) {
-            var clienteOpt = clienteService.findByCodCliente(cod);
-            if (clienteOpt.isEmpty()) {
-                logger.error("Cliente con codCliente {} no existe", cod);
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-            }
-            final Cliente clienteCarga = clienteOpt.get(); // ID real
-
-            Sheet sheet = workbook.getSheetAt(0);
-            Row encabezado = sheet.getRow(0);
-            if (encabezado == null) throw new IllegalArgumentException("❌ La primera fila (encabezados) está vacía.");
-
-            Map<String, List<String>> camposEsperados = new HashMap<>();
-            camposEsperados.put("anio", List.of("año", "anio", "Año"));
-            camposEsperados.put("mes", List.of("mes", "Mes"));
-            camposEsperados.put("codBarra", List.of("codigo barra", "cod_barra", "codigobarra", "COD ITEM", "cod barra", "codbarra"));
-            camposEsperados.put("codPdv", List.of("codigo pdv", "cod_pdv", "COD LOCAL", "cod pdv"));
-            camposEsperados.put("pdv", List.of("pdv", "NOMBRE LOCAL", "nombre pdv"));
-            camposEsperados.put("ventaDolares", List.of("venta_dolares", "venta $", "venta dolares", "Venta Dolares", "venta usd"));
-            camposEsperados.put("ventaUnidad", List.of("venta_unidades", "venta unidades", "Venta Unidades"));
-            camposEsperados.put("stockDolares", List.of("stock_dolares", "stock usd", "Stock Dolares", "stock dolares"));
-            camposEsperados.put("stockUnidades", List.of("stock_unidades", "stock unidades", "Stock en Unidades"));
-
-            Map<String, Integer> columnaPorCampo = new HashMap<>();
-            for (Cell celda : encabezado) {
-                String valor = obtenerValorCelda(celda, String.class);
-                if (valor == null) continue;
-                String valorNormalizado = normalizarTexto(valor);
-                for (Map.Entry<String, List<String>> entry : camposEsperados.entrySet()) {
-                    boolean match = entry.getValue().stream()
-                            .map(FybecaController::normalizarTexto)
-                            .anyMatch(v -> v.equals(valorNormalizado));
-                    if (match) {
-                        columnaPorCampo.put(entry.getKey(), celda.getColumnIndex());
-                        logger.info("✔ Columna '{}' mapeada a campo '{}'", valor, entry.getKey());
-                    }
-                }
-            }
-
-            for (String campo : camposEsperados.keySet()) {
-                if (!columnaPorCampo.containsKey(campo)) {
-                    logger.warn("❌ No se detectó ninguna columna para el campo obligatorio: {}", campo);
-                }
-            }
-
-            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
-
-                try {
-                    Venta venta = new Venta();
-                    venta.setDia(1);
-                    // Asigna SIEMPRE el cliente con ID real
-                    venta.setCliente(clienteCarga);
-
-                    if (columnaPorCampo.containsKey("anio"))
-                        venta.setAnio(obtenerValorCelda(row.getCell(columnaPorCampo.get("anio")), Integer.class));
-                    if (columnaPorCampo.containsKey("mes"))
-                        venta.setMes(obtenerValorCelda(row.getCell(columnaPorCampo.get("mes")), Integer.class));
-                    if (columnaPorCampo.containsKey("ventaDolares"))
-                        venta.setVentaDolares(obtenerValorCelda(row.getCell(columnaPorCampo.get("ventaDolares")), Double.class));
-                    if (columnaPorCampo.containsKey("ventaUnidad"))
-                        venta.setVentaUnidad(obtenerValorCelda(row.getCell(columnaPorCampo.get("ventaUnidad")), Double.class));
-                    if (columnaPorCampo.containsKey("codBarra"))
-                        venta.setCodBarra(obtenerValorCelda(row.getCell(columnaPorCampo.get("codBarra")), String.class));
-                    if (columnaPorCampo.containsKey("codPdv"))
-                        venta.setCodPdv(obtenerValorCelda(row.getCell(columnaPorCampo.get("codPdv")), String.class));
-                    if (columnaPorCampo.containsKey("pdv"))
-                        venta.setPdv(obtenerValorCelda(row.getCell(columnaPorCampo.get("pdv")), String.class));
-                    if (columnaPorCampo.containsKey("stockDolares"))
-                        venta.setStockDolares(obtenerValorCelda(row.getCell(columnaPorCampo.get("stockDolares")), Double.class));
-                    if (columnaPorCampo.containsKey("stockUnidades"))
-                        venta.setStockUnidades(obtenerValorCelda(row.getCell(columnaPorCampo.get("stockUnidades")), Double.class));
-
-                    if (venta.getCodBarra() == null || venta.getCodBarra().trim().isEmpty()) {
-                        logger.warn("⚠️ Fila {}: Código de barra vacío", i + 1);
-                        continue;
-                    }
-
-                    boolean datosCargados = fybecaService.cargarDatosDeProducto(clienteCarga, venta, codigosNoEncontrados);
-                    if (!datosCargados) {
-                        logger.warn("⚠️ Fila {}: No se encontraron datos para el código {}", i + 1, venta.getCodBarra());
-                        continue;
-                    }
-
-                    fybecaService.guardarOActualizarVenta(clienteCarga, venta);
-
-                } catch (Exception exFila) {
-                    logger.error("❌ Error procesando fila {}: {}", i + 1, exFila.getMessage(), exFila);
-                }
-            }
-
-            // Devuelve TXT de no encontrados
-            return fybecaService.obtenerArchivoCodigosNoEncontrados(new ArrayList<>(codigosNoEncontrados));
-
+        try {
+            Map<String, Object> res = fybecaService.cargarArchivoVentas(file.getInputStream(), file.getOriginalFilename(), cod);
+            logger.info("Carga finalizada: {}", resumenCarga(res));
+
+            @SuppressWarnings("unchecked")
+            List<String> codigos = (List<String>) res.get("codigosNoEncontrados");
+            ResponseEntity<Resource> txt = fybecaService.obtenerArchivoCodigosNoEncontrados(codigos);
+            return ResponseEntity.status(txt.getStatusCode())
+                    .headers(txt.getHeaders())
+                    .header("X-Filas-Leidas", String.valueOf(res.get("filasLeidas")))
+                    .header("X-Insertados", String.valueOf(res.get("insertados")))
+                    .header("X-Actualizados", String.valueOf(res.get("actualizados")))
+                    .header("X-Omitidos", String.valueOf(res.get("omitidos")))
+                    .header("X-Filas-Por-Segundo", String.valueOf(res.get("filasPorSegundo")))
+                    .header("X-Latencia-Chunk-Ms", String.valueOf(res.get("latenciaChunkPromedioMs")))
+                    .header("Access-Control-Expose-Headers",
+                            "X-Filas-Leidas, X-Insertados, X-Actualizados, X-Omitidos, X-Filas-Por-Segundo, X-Latencia-Chunk-Ms")
+                    .body(txt.getBody());
+
+        } catch (ClienteNoEncontradoException e) {
+            logger.error("Cliente con codCliente {} no existe", cod);
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(new ByteArrayResource(e.getMessage().getBytes(StandardCharsets.UTF_8)));
         } catch (IOException e) {
             logger.error("❌ Error leyendo archivo Excel: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
@@ -321,24 +226,56 @@ public class FybecaController {
         }
     }
 
+    /** Misma carga que /subir-archivo-venta, devolviendo el resumen completo en JSON. */
+    @PostMapping("/subir-archivo-venta/json")
+    public ResponseEntity<Map<String, Object>> subirArchivoVentaJson(@RequestParam("file") MultipartFile file,
+                                                                     @RequestParam(required = false) String codCliente) {
+        String cod = resolveCodCliente(codCliente);
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("ok", false, "message", "El archivo recibido está vacío."));
+        }
+        try {
+            Map<String, Object> res = fybecaService.cargarArchivoVentas(file.getInputStream(), file.getOriginalFilename(), cod);
+            logger.info("Carga finalizada: {}", resumenCarga(res));
+            return ResponseEntity.ok(res);
+        } catch (ClienteNoEncontradoException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("ok", false, "message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("❌ Error inesperado al procesar archivo: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("ok", false, "message", "Error al procesar el archivo: " + e.getMessage()));
+        }
+    }
+
+    private static String resumenCarga(Map<String, Object> res) {
+        return String.format("%s filas, %s insertadas, %s actualizadas, %s omitidas, %s filas/s (chunk prom. %s ms, máx. %s ms)",
+                res.get("filasLeidas"), res.get("insertados"), res.get("actualizados"), res.get("omitidos"),
+                res.get("filasPorSegundo"), res.get("latenciaChunkPromedioMs"), res.get("latenciaChunkMaxMs"));
+    }
+
     // ---------- Catálogos auxiliares ----------
+    /** Catálogos de filtros desde memoria, con ETag (If-None-Match vigente => 304). */
     @GetMapping("/marcas-ventas")
-    public List<String> obtenerMarcasDisponibles(@RequestParam(required = false) String codCliente) {
+    public ResponseEntity<List<String>> obtenerMarcasDisponibles(@RequestParam(required = false) String codCliente) {
         String cod = resolveCodCliente(codCliente);
-        return fybecaService.obtenerMarcasDisponibles(cod);
+        return conEtag(fybecaService.obtenerMarcasDisponibles(cod));
     }
 
     @GetMapping("/anios-disponibles")
     public ResponseEntity<List<Integer>> obtenerAniosDisponibles(@RequestParam(required = false) String codCliente) {
         String cod = resolveCodCliente(codCliente);
-        return ResponseEntity.ok(fybecaService.obtenerAniosDisponibles(cod));
+        return conEtag(fybecaService.obtenerAniosDisponibles(cod));
     }
 
     @GetMapping("/meses-disponibles")
     public ResponseEntity<List<Integer>> obtenerMesesDisponibles(@RequestParam(required = false) Integer anio,
                                                                  @RequestParam(required = false) String codCliente) {
         String cod = resolveCodCliente(codCliente);
-        return ResponseEntity.ok(fybecaService.obtenerMesesDisponibles(cod, anio));
+        return conEtag(fybecaService.obtenerMesesDisponibles(cod, anio));
+    }
+
+    private static <T> ResponseEntity<List<T>> conEtag(List<T> valores) {
+        return ResponseEntity.ok().eTag(VentaCatalogoService.etag(valores)).body(valores);
     }
 
     // ---------- CRUD Clientes ----------
@@ -475,82 +412,27 @@ public class FybecaController {
     }
 
     // ---------- Reportes ----------
-    /** Reporte de ventas: acepta ?codCliente=..., usa default si no se envía */
+    /**
+     * Reporte de ventas: acepta ?codCliente=..., usa default si no se envía.
+     * Excel en streaming (cursor de solo avance + SXSSF).
+     */
     @GetMapping("/reporte-ventas")
-    public ResponseEntity<byte[]> generarReporteVentas(@RequestParam(required = false) String codCliente) {
-        try {
-            String cod = resolveCodCliente(codCliente);
-            List<Venta> ventas = fybecaService.obtenerTodasLasVentasPorCodCliente(cod);
-
-            XSSFWorkbook workbook = new XSSFWorkbook();
-            Sheet sheet = workbook.createSheet("Ventas");
-
-            Row header = sheet.createRow(0);
-            header.createCell(0).setCellValue("Año");
-            header.createCell(1).setCellValue("Mes");
-            header.createCell(2).setCellValue("Marca");
-            header.createCell(3).setCellValue("Código Cliente");
-            header.createCell(4).setCellValue("Nombre Cliente");
-            header.createCell(5).setCellValue("Código Barra SAP");
-            header.createCell(6).setCellValue("Código Producto SAP");
-            header.createCell(7).setCellValue("Código Item");
-            header.createCell(8).setCellValue("Nombre Producto");
-            header.createCell(9).setCellValue("Código PDV");
-            header.createCell(10).setCellValue("Ciudad");
-            header.createCell(11).setCellValue("PDV");
-            header.createCell(12).setCellValue("Stock en Dólares");
-            header.createCell(13).setCellValue("Stock en Unidades");
-            header.createCell(14).setCellValue("Venta en Dólares");
-            header.createCell(15).setCellValue("Venta en Unidades");
-
-            int rowNum = 1;
-            for (Venta venta : ventas) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(venta.getAnio());
-                row.createCell(1).setCellValue(venta.getMes());
-                row.createCell(2).setCellValue(venta.getMarca());
-
-                if (venta.getCliente() != null) {
-                    row.createCell(3).setCellValue(venta.getCliente().getCodCliente());
-                    row.createCell(4).setCellValue(venta.getCliente().getNombreCliente());
-                    row.createCell(10).setCellValue(venta.getCliente().getCiudad());
-                } else {
-                    row.createCell(3).setCellValue("N/A");
-                    row.createCell(4).setCellValue("N/A");
-                    row.createCell(10).setCellValue("N/A");
-                }
-
-                row.createCell(5).setCellValue(venta.getCodBarra());
-                row.createCell(6).setCellValue(venta.getCodigoSap());
-
-                if (venta.getProducto() != null) {
-                    row.createCell(7).setCellValue(venta.getProducto().getCodItem());
-                    row.createCell(8).setCellValue(venta.getNombreProducto());
-                } else {
-                    row.createCell(7).setCellValue("N/A");
-                    row.createCell(8).setCellValue("N/A");
-                }
-
-                row.createCell(9).setCellValue(venta.getCodPdv());
-                row.createCell(11).setCellValue(venta.getPdv());
-                row.createCell(12).setCellValue(venta.getStockDolares());
-                row.createCell(13).setCellValue(venta.getStockUnidades());
-                row.createCell(14).setCellValue(venta.getVentaDolares());
-                row.createCell(15).setCellValue(venta.getVentaUnidad());
+    public ResponseEntity<StreamingResponseBody> generarReporteVentas(@RequestParam(required = false) String codCliente,
+                                                                      HttpServletRequest req) {
+        String cod = resolveCodCliente(codCliente);
+        WebAsyncUtils.getAsyncManager(req).getAsyncWebRequest().setTimeout(ventaReporteService.getTimeoutMs());
+        StreamingResponseBody body = out -> {
+            try {
+                ventaReporteService.escribirReporteFybeca(cod, out);
+            } catch (Exception e) {
+                logger.error("Error al generar reporte de ventas ({}): {}", cod, e.getMessage(), e);
+                throw e;
             }
-
-            byte[] byteArray = ExcelUtils.convertWorkbookToByteArray(workbook);
-            workbook.close();
-
-            return ResponseEntity.ok()
-                    .header("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
-                    .header("Content-Disposition", "attachment; filename=reporte_ventas.xlsx")
-                    .body(byteArray);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+        };
+        return ResponseEntity.ok()
+                .header("Content-Type", VentaReporteService.CONTENT_TYPE_XLSX)
+                .header("Content-Disposition", "attachment; filename=reporte_ventas.xlsx")
+                .body(body);
     }
 
     @GetMapping("/reporte-productos")
@@ -0,0 +1,90 @@
+package com.manamer.backend.business.sellout.controller;
+
+import com.manamer.backend.business.sellout.service.PurgaVentasService;
+import com.manamer.backend.business.sellout.service.PurgaVentasService.FiltroPurga;
+import com.manamer.backend.business.sellout.service.PurgaVentasService.PurgaJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Purgas de ventas por filtros: el POST devuelve 202 con el id del trabajo; el avance se consulta
+ * en GET /purgas/{id} y la purga se detiene con DELETE /purgas/{id} (al terminar la tanda en curso).
+ */
+@RestController
+@CrossOrigin(origins = "*", allowedHeaders = "*", exposedHeaders = "Location",
+        methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.DELETE})
+@RequestMapping("/api-sellout/purgas")
+public class PurgaVentasController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PurgaVentasController.class);
+
+    private final PurgaVentasService purgaVentasService;
+
+    public PurgaVentasController(PurgaVentasService purgaVentasService) {
+        this.purgaVentasService = purgaVentasService;
+    }
+
+    // ---------- Encolar ----------
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> encolar(@RequestParam(required = false) Long clienteId,
+                                                       @RequestParam(required = false) Integer anio,
+                                                       @RequestParam(required = false) Integer mes,
+                                                       @RequestParam(required = false) String marca,
+                                                       @RequestParam(required = false) String codPdv,
+                                                       @RequestParam(required = false) Integer tanda,
+                                                       @RequestParam(required = false) Long pausaMs,
+                                                       @RequestParam(required = false) Integer maxTotal) {
+        try {
+            PurgaJob job = purgaVentasService.encolar(
+                    new FiltroPurga(clienteId, anio, mes, marca, codPdv), tanda, pausaMs, maxTotal);
+            String url = "/api-sellout/purgas/" + job.getId();
+
+            Map<String, Object> body = new LinkedHashMap<>(job.toMap());
+            body.put("urlEstado", url);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, url)
+                    .body(body);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Cola de purgas llena; se rechaza la purga (anio={}, mes={}, marca={})", anio, mes, marca);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .body(Map.of("message", "Hay demasiadas purgas en curso. Intenta nuevamente en unos minutos."));
+        }
+    }
+
+    // ---------- Consulta / cancelación ----------
+
+    @GetMapping
+    public List<Map<String, Object>> listar() {
+        return purgaVentasService.listar().stream().map(PurgaJob::toMap).toList();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> estado(@PathVariable String id) {
+        return purgaVentasService.obtener(id)
+                .map(j -> ResponseEntity.ok(j.toMap()))
+                .orElseGet(() -> noExiste(id));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> cancelar(@PathVariable String id) {
+        return purgaVentasService.cancelar(id)
+                .map(j -> ResponseEntity.status(j.isTerminada() ? HttpStatus.OK : HttpStatus.ACCEPTED).body(j.toMap()))
+                .orElseGet(() -> noExiste(id));
+    }
+
+    private static ResponseEntity<Map<String, Object>> noExiste(String id) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "No existe la purga " + id));
+    }
+}
@@ -0,0 +1,31 @@
+package com.manamer.backend.business.sellout.controller;
+
+import com.manamer.backend.business.sellout.service.SapProductCatalog;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@CrossOrigin(origins = "*", allowedHeaders = "*",
+        methods = {RequestMethod.GET, RequestMethod.POST})
+@RequestMapping("/api-sellout/sap-catalogo")
+public class SapCatalogoController {
+
+    private final SapProductCatalog catalogo;
+    public SapCatalogoController(SapProductCatalog catalogo) { this.catalogo = catalogo; }
+
+    /** Tamaño, última carga y aciertos/fallos del catálogo SAP en memoria. */
+    @GetMapping("/metricas")
+    public Map<String, Object> metricas() {
+        return catalogo.metricas();
+    }
+
+    /** Fuerza una recarga completa (p. ej. tras dar de alta productos en SAP). */
+    @PostMapping("/refrescar")
+    public ResponseEntity<Map<String, Object>> refrescar() {
+        boolean ok = catalogo.refrescar();
+        return ok ? ResponseEntity.ok(catalogo.metricas())
+                  : ResponseEntity.status(503).body(catalogo.metricas());
+    }
+}
@@ -1,20 +1,21 @@
 package com.manamer.backend.business.sellout.controller;
 
-import com.manamer.backend.business.sellout.models.ExcelUtils;
 import com.manamer.backend.business.sellout.models.Venta;
 import com.manamer.backend.business.sellout.service.TemplateGeneralService;
+import com.manamer.backend.business.sellout.service.VentaCatalogoService;
+import com.manamer.backend.business.sellout.service.VentaConsultaService;
+import com.manamer.backend.business.sellout.service.VentaReporteService;
 import com.manamer.backend.business.sellout.service.VentaService;
 import jakarta.servlet.http.HttpServletRequest;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
@@ -38,11 +39,17 @@ public class TemplateGeneralController {
 
     private final VentaService ventaService;
     private final TemplateGeneralService templateGeneralService;
+    private final VentaConsultaService ventaConsultaService;
+    private final VentaReporteService ventaReporteService;
 
     public TemplateGeneralController(VentaService ventaService,
-                                     TemplateGeneralService templateGeneralService) {
+                                     TemplateGeneralService templateGeneralService,
+                                     VentaConsultaService ventaConsultaService,
+                                     VentaReporteService ventaReporteService) {
         this.ventaService = ventaService;
         this.templateGeneralService = templateGeneralService;
+        this.ventaConsultaService = ventaConsultaService;
+        this.ventaReporteService = ventaReporteService;
     }
 
     // ===================== Ventas (CRUD básico) =====================
@@ -62,6 +69,38 @@ public class TemplateGeneralController {
         }
     }
 
+    /**
+     * Listado paginado por keyset. Filtros opcionales: clienteId, anio, mes, marca, codPdv, codBarra.
+     * orden: id | periodo | ventaDolares; direccion: asc | desc; cursor: el siguienteCursor de la página anterior.
+     */
+    @GetMapping("/venta/pagina")
+    public ResponseEntity<?> obtenerVentasPaginadas(@RequestParam(required = false) Long clienteId,
+                                                    @RequestParam(required = false) Integer anio,
+                                                    @RequestParam(required = false) Integer mes,
+                                                    @RequestParam(required = false) String marca,
+                                                    @RequestParam(required = false) String codPdv,
+                                                    @RequestParam(required = false) String codBarra,
+                                                    @RequestParam(required = false) String orden,
+                                                    @RequestParam(required = false) String direccion,
+                                                    @RequestParam(required = false) Integer limite,
+                                                    @RequestParam(required = false) String cursor,
+                                                    HttpServletRequest req) {
+        String cid = corrId();
+        try {
+            var filtro = new VentaConsultaService.FiltroVentas(clienteId, null, anio, mes, marca, codPdv, codBarra);
+            return ResponseEntity.ok()
+                    .header("X-Correlation-Id", cid)
+                    .body(ventaConsultaService.pagina(filtro, orden, direccion, limite, cursor));
+        } catch (IllegalArgumentException iae) {
+            return error(HttpStatus.BAD_REQUEST, "Parámetros de paginación inválidos.",
+                    iae.getMessage(), req.getRequestURI(), cid);
+        } catch (Exception e) {
+            logger.error("[{}] Error al paginar ventas: {}", cid, e.getMessage(), e);
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "No se pudieron cargar las ventas.",
+                    e.getMessage(), req.getRequestURI(), cid);
+        }
+    }
+
     @GetMapping("/venta/{id}")
     public ResponseEntity<?> obtenerVentaPorId(@PathVariable Long id, HttpServletRequest req) {
         String cid = corrId();
@@ -132,15 +171,13 @@ public class TemplateGeneralController {
                 return error(HttpStatus.BAD_REQUEST, "Listado de IDs vacío.",
                         "Debes enviar una lista de IDs para eliminar.", req.getRequestURI(), cid);
             }
-            boolean ok = ventaService.eliminarVentas(ids);
-            if (!ok) {
-                logger.error("[{}] Eliminación masiva fallida para {} IDs", cid, ids.size());
-                return error(HttpStatus.INTERNAL_SERVER_ERROR, "No se pudieron eliminar las ventas.",
-                        "Ocurrió un error al eliminar en lote.", req.getRequestURI(), cid);
-            }
+            var res = ventaService.eliminarVentasMasivo(ids);
+            Map<String, Object> body = new LinkedHashMap<>(res.toMap());
+            body.put("message", "Ventas eliminadas correctamente.");
+            body.put("deletedCount", res.eliminados());
             return ResponseEntity.ok()
                     .header("X-Correlation-Id", cid)
-                    .body(Map.of("message", "Ventas eliminadas correctamente.", "deletedCount", ids.size()));
+                    .body(body);
         } catch (Exception e) {
             logger.error("[{}] Error en eliminación masiva: {}", cid, e.getMessage(), e);
             return error(HttpStatus.INTERNAL_SERVER_ERROR, "No se pudieron eliminar las ventas.",
@@ -194,7 +231,7 @@ public class TemplateGeneralController {
             );
 
             // Armar TXT de incidencias
-            String txt = buildIncidenciasTxt(res, file.getOriginalFilename());
+            String txt = templateGeneralService.construirIncidenciasTxt(res, file.getOriginalFilename());
             byte[] bytes = txt.getBytes(StandardCharsets.UTF_8);
 
             String outName = "incidencias_template_general_" +
@@ -266,13 +303,19 @@ public class TemplateGeneralController {
 
     // ===================== Utilidades (filtros / reportes) =====================
 
+    /**
+     * Catálogos para los filtros (marcas, años, meses): se sirven desde memoria con ETag,
+     * así un If-None-Match vigente responde 304 sin cuerpo.
+     */
     @GetMapping("/marcas-ventas")
-    public ResponseEntity<?> obtenerMarcasDisponibles(HttpServletRequest req) {
+    public ResponseEntity<?> obtenerMarcasDisponibles(@RequestParam(required = false) Long clienteId,
+                                                      HttpServletRequest req) {
         String cid = corrId();
         try {
-            List<String> marcas = ventaService.obtenerMarcasDisponibles();
+            List<String> marcas = ventaService.obtenerMarcasDisponibles(clienteId);
             return ResponseEntity.ok()
                     .header("X-Correlation-Id", cid)
+                    .eTag(VentaCatalogoService.etag(marcas))
                     .body(marcas);
         } catch (Exception e) {
             logger.error("[{}] Error al obtener marcas: {}", cid, e.getMessage(), e);
@@ -292,6 +335,7 @@ public class TemplateGeneralController {
                 List<Integer> anios = ventaService.obtenerAniosDisponibles(clienteId);
                 return ResponseEntity.ok()
                         .header("X-Correlation-Id", cid)
+                        .eTag(VentaCatalogoService.etag(anios))
                         .body(anios);
             } catch (Exception e) {
                 logger.error("[{}] Error al obtener años disponibles: {}", cid, e.getMessage(), e);
@@ -316,6 +360,7 @@ public class TemplateGeneralController {
             List<Integer> meses = ventaService.obtenerMesesDisponibles(anio, clienteId);
             return ResponseEntity.ok()
                     .header("X-Correlation-Id", cid)
+                    .eTag(VentaCatalogoService.etag(meses))
                     .body(meses);
         } catch (Exception e) {
             logger.error("[{}] Error al obtener meses disponibles: {}", cid, e.getMessage(), e);
@@ -325,177 +370,31 @@ public class TemplateGeneralController {
     }
 
     /**
-     * Reporte Excel de ventas (general).
+     * Reporte Excel de ventas (general), en streaming: no se materializan las ventas ni el libro.
      */
     @GetMapping("/reporte-ventas")
-    public ResponseEntity<?> generarReporteVentas(HttpServletRequest req) {
+    public ResponseEntity<StreamingResponseBody> generarReporteVentas(HttpServletRequest req) {
         String cid = corrId();
-        try {
-            List<Venta> ventas = ventaService.obtenerTodasLasVentas();
-
-            XSSFWorkbook workbook = new XSSFWorkbook();
-            Sheet sheet = workbook.createSheet("Ventas");
-
-            // Encabezados
-            Row header = sheet.createRow(0);
-            header.createCell(0).setCellValue("Año");
-            header.createCell(1).setCellValue("Mes");
-            header.createCell(2).setCellValue("Día");
-            header.createCell(3).setCellValue("Marca");
-            header.createCell(4).setCellValue("Código Barra SAP");
-            header.createCell(5).setCellValue("Código SAP");
-            header.createCell(6).setCellValue("Código Item");
-            header.createCell(7).setCellValue("Nombre Producto");
-            header.createCell(8).setCellValue("Código PDV");
-            header.createCell(9).setCellValue("PDV");
-            header.createCell(10).setCellValue("Ciudad");
-            header.createCell(11).setCellValue("Stock en Dólares");
-            header.createCell(12).setCellValue("Stock en Unidades");
-            header.createCell(13).setCellValue("Venta en Dólares");
-            header.createCell(14).setCellValue("Venta en Unidades");
-
-            int rowNum = 1;
-            for (Venta v : ventas) {
-                Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(v.getAnio());
-                row.createCell(1).setCellValue(v.getMes());
-                row.createCell(2).setCellValue(v.getDia());
-                row.createCell(3).setCellValue(Objects.toString(v.getMarca(), ""));
-                row.createCell(4).setCellValue(Objects.toString(v.getCodBarra(), ""));
-                row.createCell(5).setCellValue(Objects.toString(v.getCodigoSap(), ""));
-                row.createCell(6).setCellValue(v.getProducto() != null ? Objects.toString(v.getProducto().getCodItem(), "") : "");
-                row.createCell(7).setCellValue(Objects.toString(v.getNombreProducto(), ""));
-                row.createCell(8).setCellValue(Objects.toString(v.getCodPdv(), ""));
-                row.createCell(9).setCellValue(Objects.toString(v.getPdv(), ""));
-                row.createCell(10).setCellValue(Objects.toString(v.getCiudad(), ""));
-                row.createCell(11).setCellValue(v.getStockDolares());
-                row.createCell(12).setCellValue(v.getStockUnidades());
-                row.createCell(13).setCellValue(v.getVentaDolares());
-                row.createCell(14).setCellValue(v.getVentaUnidad());
+        // Timeout propio de esta descarga; el resto de requests asíncronos conserva el global
+        WebAsyncUtils.getAsyncManager(req).getAsyncWebRequest().setTimeout(ventaReporteService.getTimeoutMs());
+        StreamingResponseBody body = out -> {
+            try {
+                ventaReporteService.escribirReporteGeneral(out);
+            } catch (Exception e) {
+                // Las cabeceras ya salieron: solo queda cortar la descarga y dejar rastro.
+                logger.error("[{}] Error al generar reporte de ventas: {}", cid, e.getMessage(), e);
+                throw e;
             }
-
-            byte[] bytes = ExcelUtils.convertWorkbookToByteArray(workbook);
-            workbook.close();
-
-            return ResponseEntity.ok()
-                    .header("X-Correlation-Id", cid)
-                    .header(HttpHeaders.CONTENT_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=reporte_ventas_template_general.xlsx")
-                    .body(bytes);
-
-        } catch (Exception e) {
-            logger.error("[{}] Error al generar reporte de ventas: {}", cid, e.getMessage(), e);
-            return error(HttpStatus.INTERNAL_SERVER_ERROR, "No se pudo generar el reporte de ventas.",
-                    e.getMessage(), req.getRequestURI(), cid);
-        }
+        };
+        return ResponseEntity.ok()
+                .header("X-Correlation-Id", cid)
+                .header(HttpHeaders.CONTENT_TYPE, VentaReporteService.CONTENT_TYPE_XLSX)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=reporte_ventas_template_general.xlsx")
+                .body(body);
     }
 
     // ===================== Helpers =====================
 
-    private String buildIncidenciasTxt(Map<String, Object> res, String nombreArchivo) {
-        String nl = System.lineSeparator();
-        StringBuilder sb = new StringBuilder();
-
-        // Portada
-        sb.append("INCIDENCIAS DETECTADAS - TEMPLATE GENERAL (CU4)").append(nl);
-        sb.append("Archivo: ").append(nombreArchivo).append(nl);
-        sb.append("Generado: ")
-        .append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
-        .append(nl);
-        sb.append("----").append(nl);
-
-        // Resumen
-        sb.append("[RESUMEN]").append(nl);
-        sb.append("ok=").append(res.getOrDefault("ok", false)).append(nl);
-        sb.append("filasLeidas=").append(res.getOrDefault("filasLeidas", 0)).append(nl);
-        sb.append("filasConCodCliente=").append(res.getOrDefault("filasConCodCliente", 0)).append(nl);
-        sb.append("insertados=").append(res.getOrDefault("insertados", 0)).append(nl);
-        sb.append("actualizados=").append(res.getOrDefault("actualizados", 0)).append(nl);
-        sb.append("omitidos=").append(res.getOrDefault("omitidos", 0)).append(nl);
-        sb.append("errores=").append(res.getOrDefault("errores", 0)).append(nl);
-        sb.append("----").append(nl).append(nl);
-
-        // Errores/advertencias generales
-        sb.append("[INCIDENCIAS GENERALES]").append(nl);
-        Object inc = res.get("incidencias");
-        if (inc instanceof List<?> lst && !lst.isEmpty()) {
-            for (Object it : lst) sb.append("- ").append(String.valueOf(it)).append(nl);
-        } else {
-            sb.append("Sin incidencias.").append(nl);
-        }
-        sb.append(nl);
-
-        // Detalle: Omitidos
-        sb.append("[DETALLE DE FILAS OMITIDAS]").append(nl);
-        List<?> omitidos = (List<?>) res.getOrDefault("detalleOmitidos", List.of());
-        if (omitidos.isEmpty()) {
-            sb.append("Sin filas omitidas.").append(nl);
-        } else {
-            sb.append("Fila\tCODBARRA\tCOD_PDV\tMotivo").append(nl);
-            for (Object o : omitidos) {
-                if (o instanceof Map<?, ?> m) {
-                    sb.append(Objects.toString(m.get("fila"), ""))
-                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
-                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
-                    .append('\t').append(Objects.toString(m.get("motivo"), ""))
-                    .append(nl);
-                }
-            }
-        }
-        sb.append(nl);
-
-        // Detalle: Insertados
-        sb.append("[DETALLE DE FILAS INSERTADAS]").append(nl);
-        List<?> insertados = (List<?>) res.getOrDefault("detalleInsertados", List.of());
-        if (insertados.isEmpty()) {
-            sb.append("Sin filas insertadas.").append(nl);
-        } else {
-            sb.append("Fila\tCODBARRA\tCOD_PDV\tVentaUnd\tVentaUSD").append(nl);
-            for (Object o : insertados) {
-                if (o instanceof Map<?, ?> m) {
-                    sb.append(Objects.toString(m.get("fila"), ""))
-                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
-                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
-                    .append('\t').append(Objects.toString(m.get("ventaUnidades"), ""))
-                    .append('\t').append(Objects.toString(m.get("ventaUSD"), ""))
-                    .append(nl);
-                }
-            }
-        }
-        sb.append(nl);
-
-        // Detalle: Actualizados
-        sb.append("[DETALLE DE FILAS ACTUALIZADAS]").append(nl);
-        List<?> actualizados = (List<?>) res.getOrDefault("detalleActualizados", List.of());
-        if (actualizados.isEmpty()) {
-            sb.append("Sin filas actualizadas.").append(nl);
-        } else {
-            sb.append("Fila\tCODBARRA\tCOD_PDV\tVentaUnd\tVentaUSD").append(nl);
-            for (Object o : actualizados) {
-                if (o instanceof Map<?, ?> m) {
-                    sb.append(Objects.toString(m.get("fila"), ""))
-                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
-                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
-                    .append('\t').append(Objects.toString(m.get("ventaUnidades"), ""))
-                    .append('\t').append(Objects.toString(m.get("ventaUSD"), ""))
-                    .append(nl);
-                }
-            }
-        }
-        sb.append(nl);
-
-        // Listado de códigos afectados
-        sb.append("[CÓDIGOS AFECTADOS EN ESTA CARGA (CODBARRA)]").append(nl);
-        List<?> codigos = (List<?>) res.getOrDefault("codigosAfectados", List.of());
-        if (codigos.isEmpty()) {
-            sb.append("Ninguno.").append(nl);
-        } else {
-            for (Object c : codigos) sb.append("- ").append(String.valueOf(c)).append(nl);
-        }
-
-        return sb.toString();
-    }
-
     private ResponseEntity<Map<String, Object>> error(HttpStatus status, String message, String details,
                                                       String path, String correlationId) {
         Map<String, Object> body = new LinkedHashMap<>();
@@ -5,6 +5,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import lombok.Data;
@@ -18,7 +19,8 @@ import lombok.Data;
 public class TipoMueble {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tipo_mueble_seq")
+    @SequenceGenerator(name = "tipo_mueble_seq", sequenceName = "tipo_mueble_id_seq", allocationSize = 1000)
     private Long id;
 
     private String codPdv;
@@ -3,12 +3,14 @@
  * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
  */
 package com.manamer.backend.business.sellout.models;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import lombok.Data;
@@ -23,7 +25,9 @@ public class Venta {
     
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Secuencia con bloques de 1000 (pooled-lo): permite el batching de INSERT que IDENTITY desactiva
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "venta_seq")
+    @SequenceGenerator(name = "venta_seq", sequenceName = "venta_id_seq", allocationSize = 1000)
     private Long id;
     
     private Integer anio;
@@ -43,12 +47,16 @@ public class Venta {
     private double stockUnidades;
     
 
-     @ManyToOne(fetch = FetchType.EAGER)
+     // LAZY: las lecturas masivas usan VentaRow; las consultas que devuelven la entidad
+     // traen cliente/producto con JOIN FETCH o @EntityGraph (ver VentaRepository).
+     @ManyToOne(fetch = FetchType.LAZY)
      @JoinColumn(name = "cliente_id", referencedColumnName = "id")
+     @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
      private Cliente cliente;
 
-     @ManyToOne(fetch = FetchType.EAGER)
+     @ManyToOne(fetch = FetchType.LAZY)
      @JoinColumn(name = "producto_id", referencedColumnName = "id")
+     @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
      private Producto producto;
 
     private String unidadesDiarias;
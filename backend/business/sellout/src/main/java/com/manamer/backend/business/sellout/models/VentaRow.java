@@ -0,0 +1,40 @@
+package com.manamer.backend.business.sellout.models;
+
+/**
+ * Proyección de lectura de una venta con cliente y producto aplanados.
+ * Se arma con un constructor JPQL (una sola consulta, sin entidades administradas ni proxies);
+ * úsala en listados y consultas donde no se va a modificar la venta.
+ */
+public record VentaRow(
+        Long id,
+        Integer anio,
+        Integer mes,
+        int dia,
+        String marca,
+        String codBarra,
+        String codigoSap,
+        String nombreProducto,
+        String descripcion,
+        String codPdv,
+        String pdv,
+        String ciudad,
+        double ventaDolares,
+        double ventaUnidad,
+        double stockDolares,
+        double stockUnidades,
+        String unidadesDiarias,
+        Long clienteId,
+        String codCliente,
+        String nombreCliente,
+        Long productoId,
+        String codItem
+) {
+
+    /** SELECT listo para JPQL; el alias de la venta es {@code v}, completa con WHERE/ORDER BY. */
+    public static final String SELECT_JPQL =
+            "SELECT new com.manamer.backend.business.sellout.models.VentaRow(" +
+            "v.id, v.anio, v.mes, v.dia, v.marca, v.codBarra, v.codigoSap, v.nombreProducto, v.descripcion, " +
+            "v.codPdv, v.pdv, v.ciudad, v.ventaDolares, v.ventaUnidad, v.stockDolares, v.stockUnidades, " +
+            "v.unidadesDiarias, c.id, c.codCliente, c.nombreCliente, p.id, p.codItem) " +
+            "FROM Venta v LEFT JOIN v.cliente c LEFT JOIN v.producto p";
+}
@@ -1,9 +1,7 @@
 package com.manamer.backend.business.sellout.repositories;
 
 
-import java.text.Normalizer;
 import java.util.List;
-import java.util.Locale;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -12,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.manamer.backend.business.sellout.models.Cliente;
+import com.manamer.backend.business.sellout.service.TextNormalizer;
 
 @Repository
 public interface ClienteRepository extends JpaRepository<Cliente, Long> {
@@ -38,13 +37,9 @@ public interface ClienteRepository extends JpaRepository<Cliente, Long> {
     }
 
     static String limpiar(String s) {
-        if (s == null) return "";
-        String n = Normalizer.normalize(s, Normalizer.Form.NFD)
-                .replaceAll("\\p{M}", "");
-        n = n.toLowerCase(Locale.ROOT).trim();
         // Si decides normalizar a “como guardas”, aquí puedes quitar espacios/guiones, etc.
         // Para match exacto “humano” usualmente NO se remueven todos los espacios.
-        return n;
+        return s == null ? "" : TextNormalizer.minusculas(s);
     }
 
     Optional<Cliente> findFirstByCodClienteIgnoreCase(String codCliente);
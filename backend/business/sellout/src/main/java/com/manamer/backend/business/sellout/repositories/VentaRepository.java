@@ -6,6 +6,7 @@ import com.manamer.backend.business.sellout.models.Venta;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -14,6 +15,15 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface VentaRepository extends JpaRepository<Venta, Long> {
 
+   // cliente/producto son LAZY: las lecturas que devuelven la entidad completa los traen en el mismo SELECT
+   @Override
+   @EntityGraph(attributePaths = {"cliente", "producto"})
+   List<Venta> findAll();
+
+   @Override
+   @EntityGraph(attributePaths = {"cliente", "producto"})
+   Optional<Venta> findById(Long id);
+
    @Query(value = "SELECT * FROM SAPHANA..CG3_360CORP.SAP_Prod sapProd WHERE sapProd.CodBarra = :codBarra", nativeQuery = true)
    List<Producto> obtenerProductoPorCodBarra(@Param("codBarra") String codBarra);
 
@@ -0,0 +1,302 @@
+package com.manamer.backend.business.sellout.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cargas de ventas asíncronas.
+ *
+ * El archivo se vuelca a disco local, se registra un trabajo y se devuelve su id de inmediato;
+ * la ingesta corre en un pool acotado (hilos + cola fija), de modo que una subida grande no
+ * retiene un hilo de Tomcat ni choca con los timeouts del gateway. El avance se consulta por
+ * polling y el TXT de incidencias queda en disco hasta que el trabajo vence.
+ */
+@Service
+public class CargaJobService {
+
+    private static final Logger log = Logger.getLogger(CargaJobService.class.getName());
+
+    /** Claves del resumen que pueden ser enormes (detalle por fila); ya van en el TXT. */
+    private static final Set<String> CLAVES_PESADAS = Set.of(
+            "detalleOmitidos", "detalleInsertados", "detalleActualizados", "codigosAfectados", "codigosNoEncontrados");
+
+    public enum TipoCarga { TEMPLATE_GENERAL, FYBECA, DEPRATI }
+
+    public enum EstadoJob { EN_COLA, PROCESANDO, COMPLETADO, FALLIDO }
+
+    private final TemplateGeneralService templateGeneralService;
+    private final FybecaVentaService fybecaVentaService;
+    private final DepratiVentaService depratiVentaService;
+
+    private final ThreadPoolExecutor executor;
+    private final Path directorio;
+    private final long retencionMs;
+    private final Map<String, CargaJob> trabajos = new ConcurrentHashMap<>();
+
+    public CargaJobService(TemplateGeneralService templateGeneralService,
+                           FybecaVentaService fybecaVentaService,
+                           DepratiVentaService depratiVentaService,
+                           @Value("${sellout.jobs.hilos:2}") int hilos,
+                           @Value("${sellout.jobs.cola:20}") int cola,
+                           @Value("${sellout.jobs.directorio:}") String directorio,
+                           @Value("${sellout.jobs.retencion-ms:86400000}") long retencionMs) throws IOException {
+        this.templateGeneralService = templateGeneralService;
+        this.fybecaVentaService = fybecaVentaService;
+        this.depratiVentaService = depratiVentaService;
+        this.retencionMs = retencionMs;
+
+        this.directorio = (directorio == null || directorio.isBlank())
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "sellout-jobs")
+                : Paths.get(directorio);
+        Files.createDirectories(this.directorio);
+
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cola),
+                r -> {
+                    Thread t = new Thread(r, "carga-job-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void detener() {
+        executor.shutdownNow();
+    }
+
+    // =========================
+    //        ENCOLAR
+    // =========================
+
+    /**
+     * Vuelca el archivo a disco y lo encola.
+     * @throws RejectedExecutionException si la cola está llena (el llamador responde 503).
+     */
+    public CargaJob encolar(TipoCarga tipo, InputStream in, String nombreArchivo, String codCliente) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path archivo = directorio.resolve(id + ".upload");
+        long bytes = Files.copy(in, archivo, StandardCopyOption.REPLACE_EXISTING);
+
+        CargaJob job = new CargaJob(id, tipo, nombreArchivo, codCliente, archivo);
+        trabajos.put(id, job);
+        try {
+            executor.execute(() -> ejecutar(job));
+        } catch (RejectedExecutionException e) {
+            trabajos.remove(id);
+            borrar(archivo);
+            throw e;
+        }
+        // Sin tocar el archivo: un trabajo rápido ya pudo terminar y borrarlo
+        log.info("Carga " + tipo + " encolada: " + id + " (" + nombreArchivo + ", " + bytes + " bytes)");
+        return job;
+    }
+
+    public Optional<CargaJob> obtener(String id) {
+        return Optional.ofNullable(trabajos.get(id));
+    }
+
+    public List<CargaJob> listar() {
+        List<CargaJob> out = new ArrayList<>(trabajos.values());
+        out.sort(Comparator.comparing((CargaJob j) -> j.creado).reversed());
+        return out;
+    }
+
+    /** Ocupación del pool (para el listado de trabajos). */
+    public Map<String, Object> estadoPool() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("hilos", executor.getMaximumPoolSize());
+        out.put("activos", executor.getActiveCount());
+        out.put("enCola", executor.getQueue().size());
+        out.put("capacidadCola", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        return out;
+    }
+
+    // =========================
+    //        EJECUCIÓN
+    // =========================
+
+    private void ejecutar(CargaJob job) {
+        job.estado = EstadoJob.PROCESANDO;
+        job.iniciado = LocalDateTime.now();
+        job.t0 = System.nanoTime();
+
+        try (InputStream in = Files.newInputStream(job.archivo)) {
+            Map<String, Object> res;
+            String txt;
+
+            switch (job.tipo) {
+                case TEMPLATE_GENERAL -> {
+                    res = templateGeneralService.cargarTemplateGeneral(in, job.nombreArchivo, job);
+                    txt = templateGeneralService.construirIncidenciasTxt(res, job.nombreArchivo);
+                }
+                case FYBECA -> {
+                    res = fybecaVentaService.cargarArchivoVentas(in, job.nombreArchivo, job.codCliente, job);
+                    @SuppressWarnings("unchecked")
+                    List<String> codigos = (List<String>) res.getOrDefault("codigosNoEncontrados", List.of());
+                    txt = fybecaVentaService.construirTxtCodigosNoEncontrados(codigos);
+                }
+                case DEPRATI -> {
+                    ResponseEntity<Map<String, Object>> r =
+                            depratiVentaService.procesarArchivoExcelDeprati(in, job.nombreArchivo, job);
+                    res = r.getBody() == null ? new HashMap<>() : r.getBody();
+                    if (r.getStatusCode().isError()) {
+                        throw new IllegalStateException(String.valueOf(res.getOrDefault("mensaje", r.getStatusCode())));
+                    }
+                    txt = depratiVentaService.construirLogCarga(res);
+                }
+                default -> throw new IllegalStateException("Tipo de carga no soportado: " + job.tipo);
+            }
+
+            Path incidencias = directorio.resolve(job.id + "-incidencias.txt");
+            Files.writeString(incidencias, txt, StandardCharsets.UTF_8);
+            job.incidencias = incidencias;
+            job.resumen = resumenLiviano(res);
+            job.estado = Boolean.FALSE.equals(res.get("ok")) ? EstadoJob.FALLIDO : EstadoJob.COMPLETADO;
+
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Carga " + job.id + " fallida: " + e.getMessage(), e);
+            job.error = e.getMessage();
+            job.estado = EstadoJob.FALLIDO;
+        } finally {
+            job.finalizado = LocalDateTime.now();
+            borrar(job.archivo);
+            log.info("Carga " + job.id + " " + job.estado + " en "
+                    + Duration.between(job.iniciado, job.finalizado).toMillis() + " ms");
+        }
+    }
+
+    private static Map<String, Object> resumenLiviano(Map<String, Object> res) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        res.forEach((k, v) -> {
+            if (CLAVES_PESADAS.contains(k) && v instanceof Collection<?> c) out.put(k + "Total", c.size());
+            else out.put(k, v);
+        });
+        return out;
+    }
+
+    /** Limpia trabajos terminados (y sus archivos) una vez vencida la retención. */
+    @Scheduled(fixedDelayString = "${sellout.jobs.limpieza-ms:900000}")
+    public void purgarVencidos() {
+        LocalDateTime limite = LocalDateTime.now().minus(Duration.ofMillis(retencionMs));
+        trabajos.values().removeIf(j -> {
+            boolean vencido = j.finalizado != null && j.finalizado.isBefore(limite);
+            if (vencido && j.incidencias != null) borrar(j.incidencias);
+            return vencido;
+        });
+    }
+
+    private static void borrar(Path p) {
+        try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+    }
+
+    // =========================
+    //     Trabajo de carga
+    // =========================
+
+    public static final class CargaJob implements CargaProgreso {
+        private final String id;
+        private final TipoCarga tipo;
+        private final String nombreArchivo;
+        private final String codCliente;
+        private final Path archivo;
+        private final LocalDateTime creado = LocalDateTime.now();
+
+        private volatile EstadoJob estado = EstadoJob.EN_COLA;
+        private volatile LocalDateTime iniciado;
+        private volatile LocalDateTime finalizado;
+        private volatile long t0;
+
+        private volatile int totalEstimado;
+        private volatile int filasLeidas;
+        private volatile int insertados;
+        private volatile int actualizados;
+        private volatile int omitidos;
+
+        private volatile Map<String, Object> resumen;
+        private volatile Path incidencias;
+        private volatile String error;
+
+        CargaJob(String id, TipoCarga tipo, String nombreArchivo, String codCliente, Path archivo) {
+            this.id = id;
+            this.tipo = tipo;
+            this.nombreArchivo = nombreArchivo;
+            this.codCliente = codCliente;
+            this.archivo = archivo;
+        }
+
+        @Override
+        public void totalEstimado(int filas) {
+            this.totalEstimado = filas;
+        }
+
+        @Override
+        public void avance(int filasLeidas, int insertados, int actualizados, int omitidos) {
+            this.filasLeidas = filasLeidas;
+            this.insertados = insertados;
+            this.actualizados = actualizados;
+            this.omitidos = omitidos;
+        }
+
+        public String getId() { return id; }
+
+        public EstadoJob getEstado() { return estado; }
+
+        public Optional<Path> getIncidencias() { return Optional.ofNullable(incidencias); }
+
+        /** Estado para el polling: contadores, porcentaje y ETA en segundos. */
+        public Map<String, Object> toMap() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("id", id);
+            out.put("tipo", tipo);
+            out.put("archivo", nombreArchivo);
+            if (codCliente != null) out.put("codCliente", codCliente);
+            out.put("estado", estado);
+            out.put("creado", creado);
+            out.put("iniciado", iniciado);
+            out.put("finalizado", finalizado);
+            out.put("filasLeidas", filasLeidas);
+            out.put("totalEstimado", totalEstimado);
+            out.put("insertados", insertados);
+            out.put("actualizados", actualizados);
+            out.put("omitidos", omitidos);
+
+            if (estado == EstadoJob.PROCESANDO && t0 > 0) {
+                double seg = (System.nanoTime() - t0) / 1_000_000_000.0;
+                double tasa = seg > 0 ? filasLeidas / seg : 0;
+                out.put("filasPorSegundo", Math.round(tasa));
+                if (totalEstimado > 0) {
+                    out.put("porcentaje", Math.min(100, Math.round(100.0 * filasLeidas / totalEstimado)));
+                    if (tasa > 0) out.put("etaSegundos", Math.max(0, Math.round((totalEstimado - filasLeidas) / tasa)));
+                }
+            } else if (estado == EstadoJob.COMPLETADO) {
+                out.put("porcentaje", 100);
+                out.put("etaSegundos", 0);
+            }
+
+            if (resumen != null) out.put("resumen", resumen);
+            if (error != null) out.put("error", error);
+            out.put("incidenciasDisponibles", incidencias != null);
+            return out;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.manamer.backend.business.sellout.service;
+
+/**
+ * Avance de una carga de ventas. Los servicios de ingesta lo notifican mientras leen
+ * y guardan; los trabajos asíncronos lo exponen para el polling de progreso.
+ */
+public interface CargaProgreso {
+
+    /** Sin seguimiento (cargas síncronas). */
+    CargaProgreso NINGUNO = (filasLeidas, insertados, actualizados, omitidos) -> {};
+
+    /** Filas de datos estimadas en el archivo (para calcular el ETA). */
+    default void totalEstimado(int filas) {}
+
+    /** Totales acumulados hasta el momento. */
+    void avance(int filasLeidas, int insertados, int actualizados, int omitidos);
+}
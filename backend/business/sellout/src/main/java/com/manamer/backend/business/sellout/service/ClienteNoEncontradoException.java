@@ -0,0 +1,18 @@
+package com.manamer.backend.business.sellout.service;
+
+/** El codCliente de la carga no corresponde a ningún cliente registrado. */
+public class ClienteNoEncontradoException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String codCliente;
+
+    public ClienteNoEncontradoException(String codCliente) {
+        super("Cliente no existe: " + codCliente);
+        this.codCliente = codCliente;
+    }
+
+    public String getCodCliente() {
+        return codCliente;
+    }
+}
@@ -34,6 +34,15 @@ public class ClienteService {
 
     public void deleteCliente(Long id) { repository.deleteById(id); }
 
+    private enum CampoCliente { COD_CLIENTE, NOMBRE_CLIENTE, CIUDAD, CODIGO_PROVEEDOR }
+
+    private static final HeaderMapper<CampoCliente> ENCABEZADOS = HeaderMapper.para(CampoCliente.class)
+            .obligatorio(CampoCliente.COD_CLIENTE, "codCliente", "codigo cliente", "código cliente")
+            .obligatorio(CampoCliente.NOMBRE_CLIENTE, "nombreCliente", "nombre cliente")
+            .campo(CampoCliente.CIUDAD, "ciudad")
+            .campo(CampoCliente.CODIGO_PROVEEDOR, "codigoProveedor", "código proveedor", "codigo proveedor")
+            .build();
+
     public Map<String, Object> uploadClientesFromExcel(MultipartFile file) {
         Map<String, Object> out = new LinkedHashMap<>();
         List<Map<String, Object>> errors = new ArrayList<>();
@@ -54,30 +63,13 @@ public class ClienteService {
             }
 
             Row header = sheet.getRow(0);
-            Map<String, Integer> headerIndex = readHeaderMap(header);
-            if (headerIndex.isEmpty()) {
+            if (header == null || header.getPhysicalNumberOfCells() == 0) {
                 out.put("error", "No se detectaron encabezados en la fila 1.");
                 return out;
             }
 
-            Map<String, String> aliases = Map.of(
-                "codcliente", "codCliente",
-                "codigo cliente", "codCliente",
-                "código cliente", "codCliente",
-                "nombrecliente", "nombreCliente",
-                "nombre cliente", "nombreCliente",
-                "ciudad", "ciudad",
-                "codigoproveedor", "codigoProveedor",
-                "código proveedor", "codigoProveedor",
-                "codigo proveedor", "codigoProveedor"
-            );
-
-            Integer colCod  = findCol(headerIndex, aliases, "codCliente");
-            Integer colNom  = findCol(headerIndex, aliases, "nombreCliente");
-            Integer colCiu  = findCol(headerIndex, aliases, "ciudad");
-            Integer colProv = findCol(headerIndex, aliases, "codigoProveedor");
-
-            if (colCod == null || colNom == null) {
+            HeaderMapper.Columnas<CampoCliente> columnas = ENCABEZADOS.resolver(header);
+            if (!columnas.faltantes().isEmpty()) {
                 out.put("error", "Faltan columnas requeridas: 'codCliente' y/o 'nombreCliente'.");
                 return out;
             }
@@ -98,10 +90,12 @@ public class ClienteService {
                 Row row = sheet.getRow(r);
                 if (row == null) continue;
 
-                String codClienteRaw   = clean(fmt.formatCellValue(row.getCell(colCod)));
-                String nombreCliente   = clean(fmt.formatCellValue(row.getCell(colNom)));
-                String ciudad          = (colCiu  != null) ? clean(fmt.formatCellValue(row.getCell(colCiu)))  : null;
-                String codigoProveedor = (colProv != null) ? clean(fmt.formatCellValue(row.getCell(colProv))) : null;
+                String codClienteRaw   = clean(fmt.formatCellValue(columnas.celda(row, CampoCliente.COD_CLIENTE)));
+                String nombreCliente   = clean(fmt.formatCellValue(columnas.celda(row, CampoCliente.NOMBRE_CLIENTE)));
+                String ciudad          = columnas.tiene(CampoCliente.CIUDAD)
+                        ? clean(fmt.formatCellValue(columnas.celda(row, CampoCliente.CIUDAD))) : null;
+                String codigoProveedor = columnas.tiene(CampoCliente.CODIGO_PROVEEDOR)
+                        ? clean(fmt.formatCellValue(columnas.celda(row, CampoCliente.CODIGO_PROVEEDOR))) : null;
 
                 if (isBlank(codClienteRaw) && isBlank(nombreCliente)) {
                     continue; // fila vacía
@@ -166,51 +160,13 @@ public class ClienteService {
 
     /** UPPER + trim + colapsa espacios + elimina tildes (misma regla que usarás en BD si pones índice único). */
     private static String normalizeForKey(String s) {
-        if (s == null) return "";
-        String t = java.text.Normalizer.normalize(s, java.text.Normalizer.Form.NFD)
-                    .replaceAll("\\p{M}", "");           // sin acentos
-        t = t.trim().replaceAll("\\s+", " ");            // colapsa espacios
-        return t.toUpperCase(Locale.ROOT);
+        return s == null ? "" : TextNormalizer.mayusculas(s);
     }
 
     // ===== Helpers =====
-    private static Map<String, Integer> readHeaderMap(Row headerRow) {
-        Map<String, Integer> map = new LinkedHashMap<>();
-        if (headerRow == null) return map;
-        DataFormatter fmt = new DataFormatter();
-        short lastCell = headerRow.getLastCellNum();
-        for (int c = 0; c < lastCell; c++) {
-            Cell cell = headerRow.getCell(c);
-            String raw = (cell == null) ? "" : fmt.formatCellValue(cell);
-            String key = normalizeKey(raw);
-            if (!key.isEmpty()) map.put(key, c);
-        }
-        return map;
-    }
-
-    private static Integer findCol(Map<String, Integer> headerIndex, Map<String, String> aliases, String canonical) {
-        Integer exact = headerIndex.get(normalizeKey(canonical));
-        if (exact != null) return exact;
-        for (Map.Entry<String, Integer> e : headerIndex.entrySet()) {
-            String header = e.getKey();
-            String mapped = aliases.get(header);
-            if (canonical.equals(mapped)) return e.getValue();
-        }
-        return null;
-    }
-
     private static String clean(String s) { return (s == null) ? null : s.trim(); }
     private static boolean isBlank(String s) { return s == null || s.trim().isEmpty(); }
 
-    private static String normalizeKey(String s) {
-        if (s == null) return "";
-        String n = java.text.Normalizer.normalize(s, java.text.Normalizer.Form.NFD)
-            .replaceAll("\\p{M}", "");
-        n = n.toLowerCase(Locale.ROOT).trim();
-        n = n.replaceAll("[\\s_]+", " ");
-        return n;
-    }
-
     private static String safeLower(String s) {
         return (s == null) ? "" : s.toLowerCase(Locale.ROOT).trim();
     }
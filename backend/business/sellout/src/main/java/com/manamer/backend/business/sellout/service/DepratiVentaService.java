@@ -1,7 +1,6 @@
 package com.manamer.backend.business.sellout.service;
 
 import com.manamer.backend.business.sellout.models.Cliente;
-import com.manamer.backend.business.sellout.models.Producto;
 import com.manamer.backend.business.sellout.models.Venta;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
@@ -15,11 +14,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.text.Normalizer;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.logging.Logger;
 
 @Service
@@ -27,16 +26,28 @@ public class DepratiVentaService {
 
     public static final String COD_CLIENTE_DEPRATI = "MZCL-000009";
     private static final Logger logger = Logger.getLogger(DepratiVentaService.class.getName());
-    private static final int DELETE_BATCH_SIZE = 5000;
+    private static final int UPSERT_CHUNK_SIZE = 10_000;
 
     private final VentaService ventaService;
     private final ClienteService clienteService; // <- NUEVO
+    private final VentaBulkService ventaBulkService;
+    private final VentaResumenService ventaResumenService;
+    private final VentaCatalogoService ventaCatalogo;
+    private final VentaBorradoService ventaBorrado;
 
      @Autowired
         public DepratiVentaService(VentaService ventaService,
-                                ClienteService clienteService) { // <- NUEVO
+                                ClienteService clienteService, // <- NUEVO
+                                VentaBulkService ventaBulkService,
+                                VentaResumenService ventaResumenService,
+                                VentaCatalogoService ventaCatalogo,
+                                VentaBorradoService ventaBorrado) {
             this.ventaService = ventaService;
             this.clienteService = clienteService; // <- NUEVO
+            this.ventaBulkService = ventaBulkService;
+            this.ventaResumenService = ventaResumenService;
+            this.ventaCatalogo = ventaCatalogo;
+            this.ventaBorrado = ventaBorrado;
         }
 
         /** 
@@ -62,20 +73,11 @@ public class DepratiVentaService {
     }
     // ----------------------------- Helpers comunes -----------------------------
 
-    public static String normalizarTexto(String input) {
-        if (input == null) return null;
-        return Normalizer.normalize(input.toLowerCase().trim(), Normalizer.Form.NFD)
-                .replaceAll("\\p{InCombiningDiacriticalMarks}+", "")
-                .replaceAll("[^\\p{ASCII}]", "")
-                .replaceAll("[\\.,\\\"\\']", "");
-    }
-
-    private Workbook obtenerWorkbookCorrecto(MultipartFile file) throws IOException {
-        String nombreArchivo = file.getOriginalFilename();
+    private Workbook obtenerWorkbookCorrecto(InputStream in, String nombreArchivo) throws IOException {
         if (nombreArchivo != null && nombreArchivo.toLowerCase().endsWith(".xls")) {
-            return new HSSFWorkbook(file.getInputStream());
+            return new HSSFWorkbook(in);
         } else if (nombreArchivo != null && nombreArchivo.toLowerCase().endsWith(".xlsx")) {
-            return new XSSFWorkbook(file.getInputStream());
+            return new XSSFWorkbook(in);
         } else {
             throw new IllegalArgumentException("Formato de archivo no soportado: " + nombreArchivo);
         }
@@ -113,6 +115,10 @@ public class DepratiVentaService {
         return null;
     }
 
+    /** Texto de la celda pasado por el diccionario de la carga (columnas que se repiten fila a fila). */
+    private String obtenerTextoCelda(Cell cell, DiccionarioTextos textos) {
+        return textos.comun(obtenerValorCelda(cell, String.class));
+    }
 
     private String obtenerTextoCrudoCelda(Cell cell) {
         try {
@@ -161,25 +167,10 @@ public class DepratiVentaService {
         }
     }
 
-    private static <T> List<List<T>> partition(List<T> list, int size) {
-        List<List<T>> parts = new ArrayList<>();
-        if (list == null || list.isEmpty() || size <= 0) return parts;
-        for (int i = 0; i < list.size(); i += size) {
-            parts.add(list.subList(i, Math.min(i + size, list.size())));
-        }
-        return parts;
-    }
-
     // ----------------------------- Ventas: CRUD filtrado por Deprati -----------------------------
 
     public List<Venta> obtenerTodasLasVentasDeprati() {
-        List<Venta> ventas = ventaService.obtenerTodasLasVentas();
-        ventas.removeIf(v ->
-                v.getCliente() == null ||
-                v.getCliente().getCodCliente() == null ||
-                !COD_CLIENTE_DEPRATI.equals(v.getCliente().getCodCliente())
-        );
-        return ventas;
+        return ventaService.obtenerVentasPorCodCliente(COD_CLIENTE_DEPRATI);
     }
 
     public Optional<Venta> obtenerVentaDepratiPorId(Long id) {
@@ -208,51 +199,60 @@ public class DepratiVentaService {
         return ventaService.eliminarVenta(id);
     }
 
-    public boolean eliminarVentasDeprati(List<Long> ids) {
-        if (ids == null || ids.isEmpty()) return true;
-        List<Long> idsFiltrados = new ArrayList<>();
-        for (Long id : ids) {
-            Optional<Venta> v = ventaService.obtenerVentaPorId(id);
-            if (v.isPresent()) {
-                Cliente c = v.get().getCliente();
-                if (c != null && COD_CLIENTE_DEPRATI.equals(c.getCodCliente())) {
-                    idsFiltrados.add(id);
-                }
-            }
-        }
-        int fallidos = 0;
-        for (List<Long> batch : partition(idsFiltrados, DELETE_BATCH_SIZE)) {
-            try {
-                boolean ok = ventaService.eliminarVentas(batch);
-                if (!ok) fallidos++;
-            } catch (Exception e) {
-                logger.severe("Error eliminando lote de " + batch.size() + " ventas: " + e.getMessage());
-                fallidos++;
-            }
-        }
-        return fallidos == 0;
+    /** Borrado masivo por conjuntos, solo sobre ventas del cliente Deprati (los demás ids se ignoran). */
+    public VentaBorradoService.Resultado eliminarVentasDeprati(List<Long> ids) {
+        return ventaBorrado.eliminarPorIds(ids, resolveClienteOrThrow(COD_CLIENTE_DEPRATI).getId());
     }
 
     // ----------------------------- Cargas Excel específicas Deprati -----------------------------
 
+    /** Columnas del formato flexible (encabezados en la fila 28). */
+    private enum CampoFlexible {
+        MARCA("marca"), NOMBRE_PRODUCTO("nombreProducto"), COD_BARRA("codBarra"), FECHA("fecha");
+
+        final String etiqueta;
+
+        CampoFlexible(String etiqueta) { this.etiqueta = etiqueta; }
+    }
+
+    private static final HeaderMapper<CampoFlexible> ENCABEZADOS_FLEXIBLE = HeaderMapper.para(CampoFlexible.class)
+            .obligatorio(CampoFlexible.MARCA, "Marca", "brand", "Marcas")
+            .obligatorio(CampoFlexible.NOMBRE_PRODUCTO, "nombre producto", "producto", "Descripcion", "descripciones")
+            .obligatorio(CampoFlexible.COD_BARRA, "codigo de barras", "cod_barra", "No. Mat. Proveedor")
+            .obligatorio(CampoFlexible.FECHA, "Día natural", "fecha", "fecha venta", "date")
+            .build();
+
     /**
      * Replica la lógica de /subir-archivos-motor-maping del controller.
      * Devuelve el mismo mapa de respuesta para que el controller solo delegue.
      */
     public ResponseEntity<Map<String, Object>> procesarArchivoExcelFlexible(MultipartFile file) {
-        Map<String, Object> respuesta = new HashMap<>();
         if (file.isEmpty()) {
+            Map<String, Object> respuesta = new HashMap<>();
             respuesta.put("mensaje", "❌ El archivo está vacío.");
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
         }
+        try (InputStream in = file.getInputStream()) {
+            return procesarArchivoExcelFlexible(in, file.getOriginalFilename(), CargaProgreso.NINGUNO);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new HashMap<>(Map.of("mensaje", "❌ Error al procesar el archivo Excel.")));
+        }
+    }
 
+    /** Variante sobre un stream (cargas asíncronas), notificando el avance. */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelFlexible(InputStream in, String nombreArchivo, CargaProgreso progreso) {
+        Map<String, Object> respuesta = new HashMap<>();
         int filasLeidas = 0;
         int filasProcesadas = 0;
         Set<String> codigosNoEncontrados = new HashSet<>();
 
-        try (Workbook workbook = obtenerWorkbookCorrecto(file)) {
+        try (Workbook workbook = obtenerWorkbookCorrecto(in, nombreArchivo)) {
             Sheet sheet = workbook.getSheetAt(0);
-            List<Venta> ventas = new ArrayList<>();
+            progreso.totalEstimado(Math.max(0, sheet.getLastRowNum() - 28));
+            // Fase 1: filas del Excel a ventas candidatas (sin tocar la BD)
+            List<Venta> candidatas = new ArrayList<>();
+            List<Map<String, Object>> detalleOmitidos = new ArrayList<>();
 
             Map<Integer, String> codPdvMap = new LinkedHashMap<>();
             Map<Integer, String> pdvMap = new LinkedHashMap<>();
@@ -279,49 +279,31 @@ public class DepratiVentaService {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
             }
 
-            Map<String, List<String>> camposEsperados = new HashMap<>();
-            camposEsperados.put("marca", List.of(normalizarTexto("Marca"), normalizarTexto("brand"), normalizarTexto("Marcas")));
-            camposEsperados.put("nombreProducto", List.of(normalizarTexto("nombre producto"), normalizarTexto("producto"), normalizarTexto("Descripcion"), normalizarTexto("descripciones")));
-            camposEsperados.put("codBarra", List.of(normalizarTexto("codigo de barras"), normalizarTexto("cod_barra"), normalizarTexto("No. Mat. Proveedor")));
-            camposEsperados.put("fecha", List.of(normalizarTexto("Día natural"), normalizarTexto("fecha"), normalizarTexto("fecha venta"), normalizarTexto("date")));
-
-            Map<String, Integer> columnaPorCampo = new HashMap<>();
-            for (Cell celda : encabezado) {
-                String valor = obtenerValorCelda(celda, String.class);
-                if (valor == null) continue;
-                String valorNormalizado = normalizarTexto(valor);
-                for (Map.Entry<String, List<String>> entry : camposEsperados.entrySet()) {
-                    if (entry.getValue().contains(valorNormalizado)) {
-                        columnaPorCampo.put(entry.getKey(), celda.getColumnIndex());
-                    }
-                }
-            }
-
-            for (String campo : camposEsperados.keySet()) {
-                if (!columnaPorCampo.containsKey(campo)) {
-                    respuesta.put("mensaje", "❌ No se encontró la columna para: " + campo);
-                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
-                }
+            HeaderMapper.Columnas<CampoFlexible> columnas = ENCABEZADOS_FLEXIBLE.resolver(encabezado);
+            List<CampoFlexible> faltantes = columnas.faltantes();
+            if (!faltantes.isEmpty()) {
+                respuesta.put("mensaje", "❌ No se encontró la columna para: " + faltantes.get(0).etiqueta);
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
             }
 
+            DiccionarioTextos textos = new DiccionarioTextos();
+            ReconocedorFechas fechas = new ReconocedorFechas(ReconocedorFechas.Perfil.DEPRATI);
             for (int i = 29; i <= sheet.getLastRowNum(); i++) {
                 Row row = sheet.getRow(i);
                 if (row == null) continue;
                 filasLeidas++;
+                if (filasLeidas % 1_000 == 0) progreso.avance(filasLeidas, 0, 0, 0);
+                if (filasLeidas % UPSERT_CHUNK_SIZE == 0) {
+                    logger.info("Deprati " + nombreArchivo + ": " + filasLeidas + " filas, "
+                            + candidatas.size() + " candidatas; " + textos.resumen());
+                }
 
                 LocalDate fecha = null;
                 try {
-                    Cell celdaFecha = row.getCell(columnaPorCampo.get("fecha"));
+                    Cell celdaFecha = columnas.celda(row, CampoFlexible.FECHA);
                     String fechaTexto = obtenerValorCelda(celdaFecha, String.class);
                     if (fechaTexto != null && !fechaTexto.isBlank()) {
-                        String[] formatos = { "dd.MM.yyyy", "dd/MM/yyyy", "dd-MM-yyyy", "yyyy-MM-dd", "yyyy/MM/dd", "d-MMM-yyyy" };
-                        for (String f : formatos) {
-                            try {
-                                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(f).withLocale(Locale.US);
-                                fecha = LocalDate.parse(fechaTexto, formatter);
-                                break;
-                            } catch (Exception ignored) {}
-                        }
+                        fecha = fechas.leer(fechaTexto);
                     }
                     if (fecha == null && celdaFecha != null && celdaFecha.getCellType() == CellType.NUMERIC) {
                         if (DateUtil.isCellDateFormatted(celdaFecha)) {
@@ -334,9 +316,17 @@ public class DepratiVentaService {
                     continue;
                 }
 
-                String marca          = obtenerValorCelda(row.getCell(columnaPorCampo.get("marca")), String.class);
-                String nombreProducto = obtenerValorCelda(row.getCell(columnaPorCampo.get("nombreProducto")), String.class);
-                String codBarra       = obtenerValorCelda(row.getCell(columnaPorCampo.get("codBarra")), String.class);
+                // Un año fuera de rango (fecha mal tipeada) no entra en la clave natural: se omite la fila
+                String fueraDeRango = VentaNaturalKey.fueraDeRango(null,
+                        fecha.getYear(), fecha.getMonthValue(), fecha.getDayOfMonth());
+                if (fueraDeRango != null) {
+                    detalleOmitidos.add(Map.of("fila", i + 1, "motivo", fueraDeRango));
+                    continue;
+                }
+
+                String marca          = obtenerTextoCelda(columnas.celda(row, CampoFlexible.MARCA), textos);
+                String nombreProducto = obtenerTextoCelda(columnas.celda(row, CampoFlexible.NOMBRE_PRODUCTO), textos);
+                String codBarra       = obtenerValorCelda(columnas.celda(row, CampoFlexible.COD_BARRA), String.class);
                 String descripcion    = nombreProducto;
 
                 if (codBarra == null || codBarra.isBlank() || codBarra.trim().equalsIgnoreCase("Resultado")) continue;
@@ -365,33 +355,36 @@ public class DepratiVentaService {
                         venta.setStockUnidades(0);
                         venta.setUnidadesDiarias("0");
 
-                        ensureClienteAttached(venta, COD_CLIENTE_DEPRATI);
-
-                        Producto producto = new Producto();
-                        producto.setCodBarraSap(codBarra);
-                        venta.setProducto(producto);
-
-                        boolean datosCargados = ventaService.cargarDatosDeProductoDeprati(venta, codigosNoEncontrados);
-                        if (!datosCargados) continue;
-
-                        ventas.add(venta);
-                        filasProcesadas++;
+                        candidatas.add(venta);
                     }
                 }
             }
 
+            // Fase 2: productos/cliente resueltos en bloque y ventas armadas desde memoria
+            List<Venta> ventas = enriquecerEnBloque(candidatas, codigosNoEncontrados);
+            filasProcesadas = ventas.size();
+            // Dos unidades distintas: candidatas (fila × PDV) sin producto/cliente y filas del Excel descartadas
+            int omitidos = candidatas.size() - ventas.size();
+            respuesta.put("archivo", nombreArchivo);
+            respuesta.put("filasLeidas", filasLeidas);
+            respuesta.put("filasProcesadas", filasProcesadas);
+            respuesta.put("omitidos", omitidos);
+            respuesta.put("filasOmitidas", detalleOmitidos.size());
+            respuesta.put("detalleOmitidos", detalleOmitidos);
+
             if (ventas.isEmpty()) {
+                progreso.avance(filasLeidas, 0, 0, omitidos);
                 respuesta.put("mensaje", "⚠️ Se leyó el archivo, pero no se encontraron ventas válidas.");
                 respuesta.put("codigosNoEncontrados", codigosNoEncontrados);
                 return ResponseEntity.status(HttpStatus.NO_CONTENT).body(respuesta);
             }
 
-            ventaService.guardarVentas(ventas);
-                        for (Venta v : ventas) {
-                ensureClienteAttached(v, COD_CLIENTE_DEPRATI);
-            }
-            ventaService.guardarVentas(ventas);
+            final int leidas = filasLeidas;
+            VentaBulkService.Resultado guardado = guardarEnBloque(ventas,
+                    (ins, act) -> progreso.avance(leidas, ins, act, omitidos));
             respuesta.put("mensaje", "✅ Se procesaron " + filasProcesadas + " registros de " + filasLeidas + " filas leídas.");
+            respuesta.put("insertados", guardado.insertados);
+            respuesta.put("actualizados", guardado.actualizados);
             respuesta.put("codigosNoEncontrados", codigosNoEncontrados);
             return ResponseEntity.ok(respuesta);
 
@@ -408,19 +401,32 @@ public class DepratiVentaService {
      * Replica la lógica de /subir-archivo-venta del controller (búsqueda dinámica de fila “Tienda”).
      */
     public ResponseEntity<Map<String, Object>> procesarArchivoExcelDeprati(MultipartFile file) {
-        Map<String, Object> respuesta = new HashMap<>();
         if (file.isEmpty()) {
+            Map<String, Object> respuesta = new HashMap<>();
             respuesta.put("mensaje", "❌ El archivo está vacío.");
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
         }
+        try (InputStream in = file.getInputStream()) {
+            return procesarArchivoExcelDeprati(in, file.getOriginalFilename(), CargaProgreso.NINGUNO);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new HashMap<>(Map.of("mensaje", "❌ Error al procesar el archivo Excel.")));
+        }
+    }
 
+    /** Variante sobre un stream (cargas asíncronas), notificando el avance. */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelDeprati(InputStream in, String nombreArchivo, CargaProgreso progreso) {
+        Map<String, Object> respuesta = new HashMap<>();
         int filasLeidas = 0;
         int filasProcesadas = 0;
         Set<String> codigosNoEncontrados = new HashSet<>();
 
-        try (Workbook workbook = obtenerWorkbookCorrecto(file)) {
+        try (Workbook workbook = obtenerWorkbookCorrecto(in, nombreArchivo)) {
             Sheet sheet = workbook.getSheetAt(0);
-            List<Venta> ventas = new ArrayList<>();
+            progreso.totalEstimado(Math.max(0, sheet.getLastRowNum() - 28));
+            // Fase 1: filas del Excel a ventas candidatas (sin tocar la BD)
+            List<Venta> candidatas = new ArrayList<>();
+            List<Map<String, Object>> detalleOmitidos = new ArrayList<>();
 
             // localizar fila con “Tienda”
             int filaCodPdv = -1;
@@ -459,27 +465,27 @@ public class DepratiVentaService {
                 }
             }
 
+            DiccionarioTextos textos = new DiccionarioTextos();
+            ReconocedorFechas fechas = new ReconocedorFechas(ReconocedorFechas.Perfil.DEPRATI);
             for (int i = 29; i <= sheet.getLastRowNum(); i++) {
                 Row row = sheet.getRow(i);
                 if (row == null) continue;
                 filasLeidas++;
+                if (filasLeidas % 1_000 == 0) progreso.avance(filasLeidas, 0, 0, 0);
+                if (filasLeidas % UPSERT_CHUNK_SIZE == 0) {
+                    logger.info("Deprati " + nombreArchivo + ": " + filasLeidas + " filas, "
+                            + candidatas.size() + " candidatas; " + textos.resumen());
+                }
 
                 // fecha en col 11 según tu código original
                 LocalDate fecha = null;
                 try {
                     Cell celdaFecha = row.getCell(11);
-                    String[] formatos = {"dd.MM.yyyy","dd/MM/yyyy","dd-MM-yyyy","yyyy-MM-dd","yyyy/MM/dd","d-MMM-yyyy"};
                     if (celdaFecha != null) {
                         if (celdaFecha.getCellType() == CellType.STRING) {
                             String s = obtenerValorCelda(celdaFecha, String.class);
                             if (s != null && !s.isBlank()) {
-                                for (String f : formatos) {
-                                    try {
-                                        DateTimeFormatter df = DateTimeFormatter.ofPattern(f).withLocale(Locale.US);
-                                        fecha = LocalDate.parse(s, df);
-                                        break;
-                                    } catch (Exception ignored) {}
-                                }
+                                fecha = fechas.leer(s);
                             }
                         } else if (celdaFecha.getCellType() == CellType.NUMERIC && DateUtil.isCellDateFormatted(celdaFecha)) {
                             Date d = celdaFecha.getDateCellValue();
@@ -489,8 +495,16 @@ public class DepratiVentaService {
                     if (fecha == null) continue;
                 } catch (Exception ignored) { continue; }
 
-                String marca          = obtenerValorCelda(row.getCell(6), String.class);
-                String nombreProducto = obtenerValorCelda(row.getCell(9), String.class);
+                // Un año fuera de rango (fecha mal tipeada) no entra en la clave natural: se omite la fila
+                String fueraDeRango = VentaNaturalKey.fueraDeRango(null,
+                        fecha.getYear(), fecha.getMonthValue(), fecha.getDayOfMonth());
+                if (fueraDeRango != null) {
+                    detalleOmitidos.add(Map.of("fila", i + 1, "motivo", fueraDeRango));
+                    continue;
+                }
+
+                String marca          = obtenerTextoCelda(row.getCell(6), textos);
+                String nombreProducto = obtenerTextoCelda(row.getCell(9), textos);
                 String codBarra       = obtenerValorCelda(row.getCell(10), String.class);
                 String descripcion    = nombreProducto;
 
@@ -520,35 +534,36 @@ public class DepratiVentaService {
                         venta.setStockUnidades(0);
                         venta.setUnidadesDiarias("0");
 
-                        Cliente cliente = new Cliente();
-                        cliente.setCodCliente(COD_CLIENTE_DEPRATI);
-                        venta.setCliente(cliente);
-
-                        Producto producto = new Producto();
-                        producto.setCodBarraSap(codBarra);
-                        venta.setProducto(producto);
-
-                        boolean datosCargados = ventaService.cargarDatosDeProductoDeprati(venta, codigosNoEncontrados);
-                        if (!datosCargados) continue;
-
-                        ventas.add(venta);
-                        filasProcesadas++;
+                        candidatas.add(venta);
                     }
                 }
             }
 
+            // Fase 2: productos/cliente resueltos en bloque y ventas armadas desde memoria
+            List<Venta> ventas = enriquecerEnBloque(candidatas, codigosNoEncontrados);
+            filasProcesadas = ventas.size();
+            // Dos unidades distintas: candidatas (fila × PDV) sin producto/cliente y filas del Excel descartadas
+            int omitidos = candidatas.size() - ventas.size();
+            respuesta.put("archivo", nombreArchivo);
+            respuesta.put("filasLeidas", filasLeidas);
+            respuesta.put("filasProcesadas", filasProcesadas);
+            respuesta.put("omitidos", omitidos);
+            respuesta.put("filasOmitidas", detalleOmitidos.size());
+            respuesta.put("detalleOmitidos", detalleOmitidos);
+
             if (ventas.isEmpty()) {
+                progreso.avance(filasLeidas, 0, 0, omitidos);
                 respuesta.put("mensaje", "⚠️ Se leyó el archivo, pero no se encontraron ventas válidas.");
                 respuesta.put("codigosNoEncontrados", codigosNoEncontrados);
                 return ResponseEntity.status(HttpStatus.NO_CONTENT).body(respuesta);
             }
 
-            ventaService.guardarVentas(ventas);
-                        for (Venta v : ventas) {
-                ensureClienteAttached(v, COD_CLIENTE_DEPRATI);
-            }
-            ventaService.guardarVentas(ventas);
+            final int leidas = filasLeidas;
+            VentaBulkService.Resultado guardado = guardarEnBloque(ventas,
+                    (ins, act) -> progreso.avance(leidas, ins, act, omitidos));
             respuesta.put("mensaje", "✅ Se procesaron " + filasProcesadas + " registros de " + filasLeidas + " filas leídas.");
+            respuesta.put("insertados", guardado.insertados);
+            respuesta.put("actualizados", guardado.actualizados);
             respuesta.put("codigosNoEncontrados", codigosNoEncontrados);
             return ResponseEntity.ok(respuesta);
 
@@ -561,6 +576,105 @@ public class DepratiVentaService {
         }
     }
 
+    /**
+     * Fase 2 de la carga: resuelve todos los códigos distintos del archivo con consultas
+     * por conjuntos (producto + catálogo SAP) y completa las ventas desde memoria.
+     * El cliente Deprati se resuelve una sola vez por archivo.
+     */
+    private List<Venta> enriquecerEnBloque(List<Venta> candidatas, Set<String> codigosNoEncontrados) {
+        if (candidatas.isEmpty()) return candidatas;
+
+        Cliente cliente = resolveClienteOrThrow(COD_CLIENTE_DEPRATI);
+
+        Set<String> codigos = new LinkedHashSet<>();
+        for (Venta v : candidatas) codigos.add(v.getCodBarra().trim());
+        Map<String, VentaService.ProductoResuelto> productos = ventaService.resolverProductosPorCodigo(codigos);
+
+        List<Venta> ventas = new ArrayList<>(candidatas.size());
+        for (Venta v : candidatas) {
+            String codBarra = v.getCodBarra().trim();
+            VentaService.ProductoResuelto pr = productos.get(codBarra);
+            if (pr == null) {
+                codigosNoEncontrados.add(codBarra);
+                continue;
+            }
+            v.setCliente(cliente);
+            v.setProducto(pr.producto());
+            VentaService.aplicarDatosSap(v, pr.sap());
+            ventas.add(v);
+        }
+        logger.info("Deprati: " + codigos.size() + " códigos distintos resueltos en bloque, "
+                + ventas.size() + " de " + candidatas.size() + " ventas con producto.");
+        return ventas;
+    }
+
+    /**
+     * Etapa de escritura: una sola pasada por archivo con upsert por conjuntos (MERGE sobre la
+     * clave natural) en tandas de 10k. Es idempotente: recargar el mismo archivo solo actualiza.
+     * Las ventas ya traen el cliente Deprati asignado desde {@link #enriquecerEnBloque}.
+     */
+    private VentaBulkService.Resultado guardarEnBloque(List<Venta> ventas, BiConsumer<Integer, Integer> avance) {
+        long t0 = System.nanoTime();
+        int insertados = 0, actualizados = 0;
+        try {
+            for (int i = 0; i < ventas.size(); i += UPSERT_CHUNK_SIZE) {
+                List<Venta> tanda = ventas.subList(i, Math.min(i + UPSERT_CHUNK_SIZE, ventas.size()));
+                VentaBulkService.Resultado r = ventaBulkService.upsert(tanda);
+                ventaCatalogo.registrar(tanda); // solo tandas confirmadas
+                insertados += r.insertados;
+                actualizados += r.actualizados;
+                avance.accept(insertados, actualizados);
+            }
+        } finally {
+            ventaResumenService.recalcularSinFallar(VentaResumenService.periodosDe(ventas));
+        }
+        logger.info("Deprati: " + ventas.size() + " ventas guardadas (" + insertados + " insertadas, "
+                + actualizados + " actualizadas) en " + (System.nanoTime() - t0) / 1_000_000 + " ms");
+        return new VentaBulkService.Resultado(insertados, actualizados);
+    }
+
+    /** TXT del log de carga (resumen + incidencias + códigos no encontrados, si vienen en el resumen). */
+    public String construirLogCarga(Map<String, Object> resumen) {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append("LOG DE CARGA - DEPRATI").append(nl);
+        sb.append("Archivo: ").append(resumen.getOrDefault("archivo", "N/D")).append(nl);
+        sb.append("Filas leídas: ").append(resumen.getOrDefault("filasLeidas", 0)).append(nl);
+        sb.append("Filas procesadas: ").append(resumen.getOrDefault("filasProcesadas", 0)).append(nl);
+        sb.append("Insertados: ").append(resumen.getOrDefault("insertados", 0)).append(nl);
+        sb.append("Actualizados: ").append(resumen.getOrDefault("actualizados", 0)).append(nl);
+        sb.append("Omitidos (fila × PDV): ").append(resumen.getOrDefault("omitidos", 0)).append(nl);
+        sb.append("Filas omitidas: ").append(resumen.getOrDefault("filasOmitidas", 0)).append(nl);
+        sb.append("Errores: ").append(resumen.getOrDefault("errores", 0)).append(nl);
+
+        Object inc = resumen.get("incidencias");
+        if (inc instanceof Collection<?> col && !col.isEmpty()) {
+            sb.append(nl).append("Incidencias:").append(nl);
+            for (Object o : col) {
+                sb.append("- ").append(String.valueOf(o)).append(nl);
+            }
+        }
+
+        Object omit = resumen.get("detalleOmitidos");
+        if (omit instanceof Collection<?> col && !col.isEmpty()) {
+            sb.append(nl).append("Filas omitidas:").append(nl);
+            for (Object o : col) {
+                if (o instanceof Map<?, ?> m) {
+                    sb.append("- Fila ").append(m.get("fila")).append(": ").append(m.get("motivo")).append(nl);
+                }
+            }
+        }
+
+        Object cods = resumen.get("codigosNoEncontrados");
+        if (cods instanceof Collection<?> col && !col.isEmpty()) {
+            sb.append(nl).append("Códigos no encontrados:").append(nl);
+            for (Object o : new TreeSet<>(col.stream().map(String::valueOf).toList())) {
+                sb.append("- ").append(o).append(nl);
+            }
+        }
+        return sb.toString();
+    }
+
     // ----------------------------- Carga Excel genérica (parametrizable) -----------------------------
 
     public ResponseEntity<String> cargarVentasDesdeExcel(MultipartFile archivo, Map<String,Integer> mapeoColumnas, int filaInicio) {
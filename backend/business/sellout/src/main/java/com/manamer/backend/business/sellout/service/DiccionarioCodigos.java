@@ -0,0 +1,37 @@
+package com.manamer.backend.business.sellout.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Códigos enteros para cod_barra / cod_pdv dentro de un lote: cada texto distinto recibe un
+ * número correlativo. Se descarta con el lote; no es un caché global. null y "" (tras trim)
+ * comparten el código 0.
+ */
+public final class DiccionarioCodigos {
+
+    private final Map<String, Integer> codigos;
+
+    public DiccionarioCodigos() {
+        this(64);
+    }
+
+    public DiccionarioCodigos(int capacidad) {
+        this.codigos = new HashMap<>(Math.max(16, capacidad * 2));
+    }
+
+    public int codigo(String texto) {
+        if (texto == null) return 0;
+        String t = texto.trim();
+        if (t.isEmpty()) return 0;
+        Integer c = codigos.get(t);
+        if (c != null) return c;
+        int nuevo = codigos.size() + 1;
+        codigos.put(t, nuevo);
+        return nuevo;
+    }
+
+    public int size() {
+        return codigos.size();
+    }
+}
@@ -0,0 +1,56 @@
+package com.manamer.backend.business.sellout.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Diccionario de textos de una carga: marca, pdv, ciudad, descripción y nombre de producto se
+ * repiten miles de veces en un archivo, y cada lectura de celda crea su propio String. Pasar el
+ * valor por {@link #comun(String)} devuelve la primera instancia vista, así las ventas del chunk
+ * comparten los textos en lugar de retener una copia por fila.
+ *
+ * Vive lo que dura la carga (no es un caché global) y lo usa solo el hilo que lee el Excel.
+ * Con {@link #MAX_TEXTOS} distintos deja de crecer: una columna casi única no infla el heap.
+ */
+public final class DiccionarioTextos {
+
+    static final int MAX_TEXTOS = 50_000;
+
+    // Cabecera del String + cabecera del byte[] (compact strings, texto Latin-1)
+    private static final int BYTES_FIJOS_STRING = 24 + 16;
+
+    private final Map<String, String> textos = new HashMap<>(1024);
+    private long reutilizados;
+    private long bytesEvitados;
+
+    /** Instancia compartida de {@code texto} (el mismo si es la primera vez que aparece). */
+    public String comun(String texto) {
+        if (texto == null) return null;
+        String previo = textos.get(texto);
+        if (previo != null) {
+            if (previo != texto) {
+                reutilizados++;
+                bytesEvitados += BYTES_FIJOS_STRING + texto.length();
+            }
+            return previo;
+        }
+        if (textos.size() < MAX_TEXTOS) textos.put(texto, texto);
+        return texto;
+    }
+
+    public int size() {
+        return textos.size();
+    }
+
+    public long reutilizados() {
+        return reutilizados;
+    }
+
+    /** Línea para el log de avance: heap de la JVM y ahorro acumulado del diccionario. */
+    public String resumen() {
+        Runtime rt = Runtime.getRuntime();
+        long usadoMb = (rt.totalMemory() - rt.freeMemory()) >> 20;
+        return String.format("heap %d/%d MB, diccionario %d textos, %d copias evitadas (~%d KB)",
+                usadoMb, rt.maxMemory() >> 20, textos.size(), reutilizados, bytesEvitados >> 10);
+    }
+}
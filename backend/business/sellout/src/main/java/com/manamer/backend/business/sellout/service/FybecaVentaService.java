@@ -7,6 +7,11 @@ import com.manamer.backend.business.sellout.models.Venta;
 import com.manamer.backend.business.sellout.repositories.VentaRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
@@ -18,12 +23,14 @@ import org.springframework.transaction.annotation.Transactional;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,29 +41,46 @@ public class FybecaVentaService {
     private static final String DEFAULT_COD_CLIENTE = "MZCL-000014";
     private static final ZoneId ZONE = ZoneId.systemDefault();
     private static final String CARPETA_CODIGOS = "/creacion-codigos";
+    private static final int CHUNK_SIZE = 10_000; // filas del Excel por chunk (una transacción cada uno)
+    private static final Logger log = Logger.getLogger(FybecaVentaService.class.getName());
 
     private final VentaRepository ventaRepository;
     private final EntityManager entityManager;
     private final ClienteService clienteService;
+    private final SapProductCatalog sapCatalog;
+    private final VentaService ventaService;
+    private final VentaBulkService ventaBulkService;
+    private final VentaResumenService ventaResumenService;
+    private final VentaCatalogoService ventaCatalogo;
+    private final VentaBorradoService ventaBorrado;
 
     @Autowired
-    public FybecaVentaService(VentaRepository ventaRepository, EntityManager entityManager, ClienteService clienteService) {
+    public FybecaVentaService(VentaRepository ventaRepository, EntityManager entityManager, ClienteService clienteService,
+                              SapProductCatalog sapCatalog, VentaService ventaService, VentaBulkService ventaBulkService,
+                              VentaResumenService ventaResumenService, VentaCatalogoService ventaCatalogo,
+                              VentaBorradoService ventaBorrado) {
         this.ventaRepository = ventaRepository;
         this.entityManager = entityManager;
         this.clienteService = clienteService;
+        this.sapCatalog = sapCatalog;
+        this.ventaService = ventaService;
+        this.ventaBulkService = ventaBulkService;
+        this.ventaResumenService = ventaResumenService;
+        this.ventaCatalogo = ventaCatalogo;
+        this.ventaBorrado = ventaBorrado;
     }
 
     // ====== Helpers ======
     private Cliente getClienteOrThrow(String codCliente) {
         return clienteService.findByCodCliente(codCliente)
-                .orElseThrow(() -> new IllegalStateException("Cliente no existe: " + codCliente));
+                .orElseThrow(() -> new ClienteNoEncontradoException(codCliente));
     }
 
     // ====== Consultas CRUD ======
 
     /** Genérico: obtener todas las ventas por codCliente */
     public List<Venta> obtenerTodasLasVentasPorCodCliente(String codCliente) {
-        String jpql = "SELECT v FROM Venta v WHERE v.cliente.codCliente = :cod";
+        String jpql = "SELECT v FROM Venta v JOIN FETCH v.cliente c LEFT JOIN FETCH v.producto WHERE c.codCliente = :cod";
         return entityManager.createQuery(jpql, Venta.class)
                 .setParameter("cod", codCliente)
                 .getResultList();
@@ -69,7 +93,7 @@ public class FybecaVentaService {
 
     /** Genérico: obtener una venta por id y codCliente */
     public Optional<Venta> obtenerVentaPorIdYCodCliente(Long id, String codCliente) {
-        String jpql = "SELECT v FROM Venta v WHERE v.id = :id AND v.cliente.codCliente = :cod";
+        String jpql = "SELECT v FROM Venta v JOIN FETCH v.cliente c LEFT JOIN FETCH v.producto WHERE v.id = :id AND c.codCliente = :cod";
         List<Venta> res = entityManager.createQuery(jpql, Venta.class)
                 .setParameter("id", id)
                 .setParameter("cod", codCliente)
@@ -86,15 +110,21 @@ public class FybecaVentaService {
     public boolean eliminarVenta(Long id) {
         return ventaRepository.findById(id).map(v -> {
             ventaRepository.delete(v);
+            ventaResumenService.recalcularSinFallar(VentaResumenService.periodosDe(List.of(v)));
+            ventaCatalogo.invalidar(VentaService.clienteIdsDe(List.of(v)));
             return true;
         }).orElse(false);
     }
 
+    /** Borrado masivo por IDs restringido al cliente: los ids de otro cliente se ignoran. */
+    public VentaBorradoService.Resultado eliminarVentasDeCliente(String codCliente, List<Long> ids) {
+        return ventaBorrado.eliminarPorIds(ids, getClienteOrThrow(codCliente).getId());
+    }
+
     /** Eliminar ventas masivo por IDs (sin depender del cliente) */
     public boolean eliminarVentas(List<Long> ids) {
         try {
-            List<Venta> ventas = ventaRepository.findAllById(ids);
-            ventaRepository.deleteAll(ventas);
+            ventaBorrado.eliminarPorIds(ids, null);
             return true;
         } catch (Exception e) {
             return false;
@@ -109,6 +139,9 @@ public class FybecaVentaService {
         Cliente cliente = getClienteOrThrow(codCliente);
         nuevaVenta.setCliente(cliente); // garantiza ID correcto
         return ventaRepository.findById(id).map(v -> {
+            // Periodo anterior y nuevo: cambiar año, mes o cliente mueve totales de uno a otro
+            Set<VentaResumenService.Periodo> periodos = new HashSet<>(VentaResumenService.periodosDe(List.of(v)));
+            Set<Long> clientes = VentaService.clienteIdsDe(List.of(v));
             v.setAnio(nuevaVenta.getAnio());
             v.setMes(nuevaVenta.getMes());
             v.setDia(nuevaVenta.getDia());
@@ -126,7 +159,13 @@ public class FybecaVentaService {
             v.setCiudad(nuevaVenta.getCiudad());
             v.setCliente(cliente);
             v.setProducto(nuevaVenta.getProducto());
-            return ventaRepository.save(v);
+            Venta guardada = ventaRepository.save(v);
+            periodos.addAll(VentaResumenService.periodosDe(List.of(guardada)));
+            clientes.add(cliente.getId());
+            ventaResumenService.recalcularTrasCommit(periodos);
+            // La marca o el periodo anterior pueden haber quedado sin ventas: se recargan ambos clientes
+            TrasCommit.ejecutar(() -> ventaCatalogo.invalidar(clientes));
+            return guardada;
         }).orElseThrow(() -> new RuntimeException("Venta no encontrada con el ID: " + id));
     }
 
@@ -155,8 +194,10 @@ public class FybecaVentaService {
                         nuevaVenta.getCodPdv()
                 );
 
+        boolean marcaCambiada = false;
         if (existente.isPresent()) {
             Venta v = existente.get();
+            marcaCambiada = !Objects.equals(v.getMarca(), nuevaVenta.getMarca());
             v.setVentaDolares(nuevaVenta.getVentaDolares());
             v.setVentaUnidad(nuevaVenta.getVentaUnidad());
             v.setStockDolares(nuevaVenta.getStockDolares());
@@ -173,6 +214,14 @@ public class FybecaVentaService {
         } else {
             ventaRepository.save(nuevaVenta);
         }
+        // La clave (cliente, año, mes) no cambia en el upsert: basta el periodo de la venta
+        ventaResumenService.recalcularTrasCommit(VentaResumenService.periodosDe(List.of(nuevaVenta)));
+        // Una marca distinta sobre una fila existente puede dejar sobrando la anterior: se recarga el cliente
+        boolean recargar = marcaCambiada;
+        TrasCommit.ejecutar(() -> {
+            ventaCatalogo.registrar(List.of(nuevaVenta));
+            if (recargar) ventaCatalogo.invalidar(List.of(cliente.getId()));
+        });
     }
 
     /** Genérico: Upsert recibiendo codCliente */
@@ -201,13 +250,8 @@ public class FybecaVentaService {
                 SELECT TOP 1
                     p.id            AS IdProducto,
                     p.cod_Item      AS CodItem,
-                    p.cod_Barra_Sap AS CodBarraSap,
-                    sp.CodProd      AS CodProd,
-                    sp.CodBarra     AS CodBarra,
-                    sp.Descripcion  AS Descripcion,
-                    sp.Marca        AS Marca
+                    p.cod_Barra_Sap AS CodBarraSap
                 FROM SELLOUT.dbo.producto p
-                LEFT JOIN SAPHANA..CG3_360CORP.SAP_Prod sp ON sp.CodBarra = p.cod_Barra_Sap
                 WHERE (p.cod_Item = :codigo OR p.cod_Barra_Sap = :codigo)
             """;
             Query q = entityManager.createNativeQuery(sql);
@@ -220,21 +264,24 @@ public class FybecaVentaService {
                 return false;
             }
 
+            Object[] r = rows.get(0);
+            // Datos SAP desde el catálogo en memoria
+            SapProductCatalog.SapProducto sap = sapCatalog.buscar((String) r[2]).orElse(null);
+            if (sap == null) {
+                if (codigosNoEncontrados != null) codigosNoEncontrados.add(codigo);
+                return false;
+            }
+
             // Mantiene el cliente con ID real
             venta.setCliente(cliente);
 
-            Object[] r = rows.get(0);
             Producto p = new Producto();
             p.setId(((Number) r[0]).longValue());
             p.setCodItem((String) r[1]);
             p.setCodBarraSap((String) r[2]);
             venta.setProducto(p);
 
-            venta.setCodigoSap((String) r[3]);
-            venta.setCodBarra(((String) r[4]).trim());
-            venta.setDescripcion((String) r[5]);
-            venta.setNombreProducto((String) r[5]);
-            venta.setMarca((String) r[6]);
+            VentaService.aplicarDatosSap(venta, sap);
 
             return true;
         } catch (Exception ex) {
@@ -249,6 +296,233 @@ public class FybecaVentaService {
         return cargarDatosDeProducto(cliente, venta, codigosNoEncontrados);
     }
 
+    // ====== Carga de archivo de ventas (pipeline por chunks) ======
+
+    /**
+     * Carga flexible de ventas (encabezados por alias en la fila 1).
+     * Las filas se acumulan en chunks de 10k; cada chunk se enriquece con una resolución
+     * de productos por conjuntos y se guarda con un único MERGE en su propia transacción.
+     * Devuelve conteos, códigos no encontrados y métricas de rendimiento.
+     *
+     * Los chunks acotan la persistencia, no la lectura: el workbook se abre completo con
+     * WorkbookFactory (acepta .xls y .xlsx), así que la memoria sigue creciendo con el archivo.
+     *
+     * @throws ClienteNoEncontradoException si codCliente no existe
+     */
+    public Map<String, Object> cargarArchivoVentas(InputStream in, String nombreArchivo, String codCliente) throws IOException {
+        return cargarArchivoVentas(in, nombreArchivo, codCliente, CargaProgreso.NINGUNO);
+    }
+
+    /** Igual que {@link #cargarArchivoVentas(InputStream, String, String)}, notificando el avance. */
+    public Map<String, Object> cargarArchivoVentas(InputStream in, String nombreArchivo, String codCliente,
+                                                   CargaProgreso progreso) throws IOException {
+        long t0 = System.nanoTime();
+        Cliente cliente = getClienteOrThrow(codCliente);
+
+        int filasLeidas = 0, omitidas = 0;
+        int[] totales = new int[3]; // insertados, actualizados, enviados
+        Set<String> codigosNoEncontrados = new TreeSet<>();
+        List<Map<String, Object>> detalleOmitidos = new ArrayList<>();
+        List<Long> latenciasChunkMs = new ArrayList<>();
+        Set<VentaResumenService.Periodo> periodos = new HashSet<>();
+
+        try (Workbook workbook = WorkbookFactory.create(in)) {
+            Sheet sheet = workbook.getSheetAt(0);
+            Row encabezado = sheet.getRow(0);
+            if (encabezado == null) throw new IllegalArgumentException("❌ La primera fila (encabezados) está vacía.");
+
+            HeaderMapper.Columnas<CampoVenta> columnas = mapearColumnas(encabezado);
+            progreso.totalEstimado(sheet.getLastRowNum());
+
+            List<Venta> chunk = new ArrayList<>(CHUNK_SIZE);
+            DiccionarioTextos textos = new DiccionarioTextos();
+            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
+                Row row = sheet.getRow(i);
+                if (row == null) continue;
+                filasLeidas++;
+                if (filasLeidas % 1_000 == 0) progreso.avance(filasLeidas, totales[0], totales[1], omitidas);
+
+                Venta venta = leerVenta(row, columnas, cliente, textos);
+                if (venta == null) {
+                    omitidas++;
+                    continue;
+                }
+                // Un año/mes fuera de rango (fecha mal tipeada) no entra en la clave natural: se omite la fila
+                String fueraDeRango = VentaNaturalKey.fueraDeRango(venta);
+                if (fueraDeRango != null) {
+                    omitidas++;
+                    detalleOmitidos.add(Map.of("fila", i + 1, "motivo", fueraDeRango));
+                    log.warning("Carga " + nombreArchivo + ", fila " + (i + 1) + " omitida: " + fueraDeRango);
+                    continue;
+                }
+                chunk.add(venta);
+
+                if (chunk.size() >= CHUNK_SIZE) {
+                    log.info("Carga " + nombreArchivo + ": chunk de " + chunk.size() + " filas; " + textos.resumen());
+                    periodos.addAll(VentaResumenService.periodosDe(chunk));
+                    omitidas += procesarChunk(chunk, codigosNoEncontrados, totales, latenciasChunkMs);
+                    chunk.clear();
+                    progreso.avance(filasLeidas, totales[0], totales[1], omitidas);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                periodos.addAll(VentaResumenService.periodosDe(chunk));
+                omitidas += procesarChunk(chunk, codigosNoEncontrados, totales, latenciasChunkMs);
+            }
+            progreso.avance(filasLeidas, totales[0], totales[1], omitidas);
+        } finally {
+            ventaResumenService.recalcularSinFallar(periodos);
+        }
+
+        double segundos = (System.nanoTime() - t0) / 1_000_000_000.0;
+        long latenciaMax = latenciasChunkMs.stream().mapToLong(Long::longValue).max().orElse(0);
+        double latenciaProm = latenciasChunkMs.stream().mapToLong(Long::longValue).average().orElse(0);
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("ok", true);
+        out.put("archivo", nombreArchivo);
+        out.put("codCliente", cliente.getCodCliente());
+        out.put("filasLeidas", filasLeidas);
+        out.put("filasProcesadas", totales[2]);
+        out.put("insertados", totales[0]);
+        out.put("actualizados", totales[1]);
+        out.put("omitidos", omitidas);
+        out.put("detalleOmitidos", detalleOmitidos);
+        out.put("codigosNoEncontrados", new ArrayList<>(codigosNoEncontrados));
+        out.put("chunks", latenciasChunkMs.size());
+        out.put("latenciaChunkPromedioMs", Math.round(latenciaProm));
+        out.put("latenciaChunkMaxMs", latenciaMax);
+        out.put("filasPorSegundo", segundos > 0 ? Math.round(filasLeidas / segundos) : filasLeidas);
+        out.put("tiempoSegundos", segundos);
+        log.info(String.format("Carga %s (%s): %d filas, %d insertadas, %d actualizadas, %d omitidas en %.1f s",
+                nombreArchivo, cliente.getCodCliente(), filasLeidas, totales[0], totales[1], omitidas, segundos));
+        return out;
+    }
+
+    /** Enriquecimiento por conjuntos + upsert del chunk. Devuelve las filas omitidas por falta de producto. */
+    private int procesarChunk(List<Venta> chunk, Set<String> codigosNoEncontrados, int[] totales, List<Long> latencias) {
+        long t0 = System.nanoTime();
+
+        Set<String> codigos = new HashSet<>();
+        for (Venta v : chunk) codigos.add(v.getCodBarra());
+        Map<String, VentaService.ProductoResuelto> productos = ventaService.resolverProductosPorCodigo(codigos);
+
+        List<Venta> validas = new ArrayList<>(chunk.size());
+        for (Venta v : chunk) {
+            VentaService.ProductoResuelto pr = productos.get(v.getCodBarra());
+            if (pr == null) {
+                codigosNoEncontrados.add(v.getCodBarra());
+                continue;
+            }
+            v.setProducto(pr.producto());
+            VentaService.aplicarDatosSap(v, pr.sap());
+            validas.add(v);
+        }
+
+        VentaBulkService.Resultado res = ventaBulkService.upsert(validas);
+        ventaCatalogo.registrar(validas);
+        totales[0] += res.insertados;
+        totales[1] += res.actualizados;
+        totales[2] += validas.size();
+        latencias.add((System.nanoTime() - t0) / 1_000_000);
+        return chunk.size() - validas.size();
+    }
+
+    private enum CampoVenta { ANIO, MES, COD_BARRA, COD_PDV, PDV, VENTA_DOLARES, VENTA_UNIDAD, STOCK_DOLARES, STOCK_UNIDADES }
+
+    private static final HeaderMapper<CampoVenta> ENCABEZADOS = HeaderMapper.para(CampoVenta.class)
+            .campo(CampoVenta.ANIO, "año", "anio", "Año")
+            .campo(CampoVenta.MES, "mes", "Mes")
+            .campo(CampoVenta.COD_BARRA, "codigo barra", "cod_barra", "codigobarra", "COD ITEM", "cod barra", "codbarra")
+            .campo(CampoVenta.COD_PDV, "codigo pdv", "cod_pdv", "COD LOCAL", "cod pdv")
+            .campo(CampoVenta.PDV, "pdv", "NOMBRE LOCAL", "nombre pdv")
+            .campo(CampoVenta.VENTA_DOLARES, "venta_dolares", "venta $", "venta dolares", "Venta Dolares", "venta usd")
+            .campo(CampoVenta.VENTA_UNIDAD, "venta_unidades", "venta unidades", "Venta Unidades")
+            .campo(CampoVenta.STOCK_DOLARES, "stock_dolares", "stock usd", "Stock Dolares", "stock dolares")
+            .campo(CampoVenta.STOCK_UNIDADES, "stock_unidades", "stock unidades", "Stock en Unidades")
+            .build();
+
+    private HeaderMapper.Columnas<CampoVenta> mapearColumnas(Row encabezado) {
+        HeaderMapper.Columnas<CampoVenta> columnas = ENCABEZADOS.resolver(encabezado);
+        for (CampoVenta campo : columnas.sinColumna()) {
+            log.warning("❌ No se detectó ninguna columna para el campo obligatorio: " + campo);
+        }
+        return columnas;
+    }
+
+    /** Arma la venta de una fila (sin BD). Null si la fila no tiene código de barra. */
+    private Venta leerVenta(Row row, HeaderMapper.Columnas<CampoVenta> col, Cliente cliente, DiccionarioTextos textos) {
+        Venta venta = new Venta();
+        venta.setDia(1);
+        // Asigna SIEMPRE el cliente con ID real
+        venta.setCliente(cliente);
+
+        if (col.tiene(CampoVenta.ANIO))
+            venta.setAnio(obtenerValorCelda(col.celda(row, CampoVenta.ANIO), Integer.class));
+        if (col.tiene(CampoVenta.MES))
+            venta.setMes(obtenerValorCelda(col.celda(row, CampoVenta.MES), Integer.class));
+        if (col.tiene(CampoVenta.VENTA_DOLARES))
+            venta.setVentaDolares(obtenerValorCelda(col.celda(row, CampoVenta.VENTA_DOLARES), Double.class));
+        if (col.tiene(CampoVenta.VENTA_UNIDAD))
+            venta.setVentaUnidad(obtenerValorCelda(col.celda(row, CampoVenta.VENTA_UNIDAD), Double.class));
+        if (col.tiene(CampoVenta.COD_BARRA))
+            venta.setCodBarra(obtenerValorCelda(col.celda(row, CampoVenta.COD_BARRA), String.class));
+        if (col.tiene(CampoVenta.COD_PDV))
+            venta.setCodPdv(obtenerValorCelda(col.celda(row, CampoVenta.COD_PDV), String.class));
+        if (col.tiene(CampoVenta.PDV))
+            venta.setPdv(textos.comun(obtenerValorCelda(col.celda(row, CampoVenta.PDV), String.class)));
+        if (col.tiene(CampoVenta.STOCK_DOLARES))
+            venta.setStockDolares(obtenerValorCelda(col.celda(row, CampoVenta.STOCK_DOLARES), Double.class));
+        if (col.tiene(CampoVenta.STOCK_UNIDADES))
+            venta.setStockUnidades(obtenerValorCelda(col.celda(row, CampoVenta.STOCK_UNIDADES), Double.class));
+
+        if (venta.getCodBarra() == null || venta.getCodBarra().trim().isEmpty()) return null;
+
+        // Mismo recorte que aplicaba guardarOActualizarVenta antes de buscar por clave
+        venta.setCodBarra(venta.getCodBarra().trim());
+        if (venta.getCodPdv() != null) venta.setCodPdv(venta.getCodPdv().trim());
+        return venta;
+    }
+
+    private <T> T obtenerValorCelda(Cell cell, Class<T> clazz) {
+        if (cell == null) {
+            if (clazz == Integer.class) return clazz.cast(0);
+            if (clazz == Double.class) return clazz.cast(0.0);
+            return null;
+        }
+        try {
+            switch (cell.getCellType()) {
+                case NUMERIC:
+                    if (clazz == Integer.class) return clazz.cast((int) cell.getNumericCellValue());
+                    if (clazz == Double.class) return clazz.cast(cell.getNumericCellValue());
+                    if (clazz == String.class) return clazz.cast(String.valueOf((int) cell.getNumericCellValue()));
+                    break;
+                case STRING:
+                    String value = cell.getStringCellValue().trim();
+                    if (clazz == Integer.class) {
+                        try { return clazz.cast(Integer.parseInt(value)); } catch (NumberFormatException e) { return clazz.cast(0); }
+                    } else if (clazz == Double.class) {
+                        try { return clazz.cast(Double.parseDouble(value)); } catch (NumberFormatException e) { return clazz.cast(0.0); }
+                    } else {
+                        return clazz.cast(value);
+                    }
+                case BLANK:
+                    if (clazz == Integer.class) return clazz.cast(0);
+                    if (clazz == Double.class) return clazz.cast(0.0);
+                    return null;
+                default:
+                    if (clazz == Integer.class) return clazz.cast(0);
+                    if (clazz == Double.class) return clazz.cast(0.0);
+                    return null;
+            }
+        } catch (Exception e) {
+            log.warning("Error al convertir celda: " + cell + " | " + e.getMessage());
+            if (clazz == Integer.class) return clazz.cast(0);
+            if (clazz == Double.class) return clazz.cast(0.0);
+        }
+        return null;
+    }
+
     // ====== Archivo de incidencias (códigos no encontrados) ======
 
     private void guardarCodigoNoEncontradoLocal(String cod) {
@@ -261,6 +535,19 @@ public class FybecaVentaService {
     }
 
     public ResponseEntity<Resource> obtenerArchivoCodigosNoEncontrados(List<String> codigosNoEncontrados) {
+        byte[] bytes = construirTxtCodigosNoEncontrados(codigosNoEncontrados).getBytes(StandardCharsets.UTF_8);
+        InputStreamResource resource = new InputStreamResource(new ByteArrayInputStream(bytes));
+        String filename = "codigos_no_encontrados_" +
+                LocalDateTime.now(ZONE).format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                .contentType(MediaType.TEXT_PLAIN)
+                .contentLength(bytes.length)
+                .body(resource);
+    }
+
+    public String construirTxtCodigosNoEncontrados(List<String> codigosNoEncontrados) {
         List<String> depurados = (codigosNoEncontrados == null ? List.<String>of() : codigosNoEncontrados).stream()
                 .filter(Objects::nonNull)
                 .map(String::trim)
@@ -277,27 +564,14 @@ public class FybecaVentaService {
         } else {
             depurados.forEach(c -> sb.append(c).append(System.lineSeparator()));
         }
-
-        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
-        InputStreamResource resource = new InputStreamResource(new ByteArrayInputStream(bytes));
-        String filename = "codigos_no_encontrados_" +
-                LocalDateTime.now(ZONE).format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
-
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
-                .contentType(MediaType.TEXT_PLAIN)
-                .contentLength(bytes.length)
-                .body(resource);
+        return sb.toString();
     }
 
     // ====== Catálogos ======
 
-    /** Genérico: marcas por codCliente */
+    /** Genérico: marcas por codCliente (catálogo en memoria) */
     public List<String> obtenerMarcasDisponibles(String codCliente) {
-        String jpql = "SELECT DISTINCT v.marca FROM Venta v WHERE v.marca IS NOT NULL AND v.cliente.codCliente = :cod";
-        return entityManager.createQuery(jpql, String.class)
-                .setParameter("cod", codCliente)
-                .getResultList();
+        return ventaCatalogo.catalogo(codCliente).listaMarcas();
     }
 
     /** Wrapper: default (MZCL-000014) */
@@ -305,12 +579,9 @@ public class FybecaVentaService {
         return obtenerMarcasDisponibles(DEFAULT_COD_CLIENTE);
     }
 
-    /** Genérico: años por codCliente */
+    /** Genérico: años por codCliente, de mayor a menor (catálogo en memoria) */
     public List<Integer> obtenerAniosDisponibles(String codCliente) {
-        String jpql = "SELECT DISTINCT v.anio FROM Venta v WHERE v.cliente.codCliente = :cod ORDER BY v.anio DESC";
-        return entityManager.createQuery(jpql, Integer.class)
-                .setParameter("cod", codCliente)
-                .getResultList();
+        return ventaCatalogo.catalogo(codCliente).listaAnios();
     }
 
     /** Wrapper: default (MZCL-000014) */
@@ -318,19 +589,9 @@ public class FybecaVentaService {
         return obtenerAniosDisponibles(DEFAULT_COD_CLIENTE);
     }
 
-    /** Genérico: meses por codCliente (y opcional año) */
+    /** Genérico: meses por codCliente (y opcional año), ascendentes (catálogo en memoria) */
     public List<Integer> obtenerMesesDisponibles(String codCliente, Integer anio) {
-        if (anio == null) {
-            String jpql = "SELECT DISTINCT v.mes FROM Venta v WHERE v.cliente.codCliente = :cod ORDER BY v.mes";
-            return entityManager.createQuery(jpql, Integer.class)
-                    .setParameter("cod", codCliente)
-                    .getResultList();
-        }
-        String jpql = "SELECT DISTINCT v.mes FROM Venta v WHERE v.anio = :anio AND v.cliente.codCliente = :cod ORDER BY v.mes";
-        return entityManager.createQuery(jpql, Integer.class)
-                .setParameter("anio", anio)
-                .setParameter("cod", codCliente)
-                .getResultList();
+        return ventaCatalogo.catalogo(codCliente).listaMeses(anio);
     }
 
     /** Wrapper: default (MZCL-000014) */
@@ -340,41 +601,9 @@ public class FybecaVentaService {
 
     // ====== Reporte (opcional) ======
 
-    /** Genérico: reporte crudo por codCliente */
+    /** Genérico: reporte crudo por codCliente (lee de venta_resumen_mensual) */
     public List<Object[]> obtenerReporteVentasCrudo(String codCliente) {
-        String sql = """
-            WITH VentasMensuales AS (
-                SELECT v.cod_Pdv, v.pdv,
-                       FORMAT(v.anio, '0000') + '-' + FORMAT(v.mes, '00') AS periodo,
-                       SUM(CAST(v.venta_Unidad AS INT)) AS total_unidades
-                FROM [SELLOUT].[dbo].[venta] v
-                JOIN [SELLOUT].[dbo].[cliente] c ON c.id = v.cliente_id
-                WHERE c.cod_Cliente = :codCliente
-                GROUP BY v.cod_Pdv, v.pdv, v.anio, v.mes
-            ),
-            PromedioUnidades AS (
-                SELECT cod_Pdv, AVG(total_unidades) AS promedio_mensual
-                FROM VentasMensuales
-                WHERE periodo IN (
-                    SELECT DISTINCT TOP 3 periodo FROM VentasMensuales ORDER BY periodo DESC
-                )
-                GROUP BY cod_Pdv
-            )
-            SELECT vm.cod_Pdv, vm.pdv, tm.ciudad,
-                   tm.tipo_Display_Essence, tm.tipo_Mueble_Display_Catrice,
-                   COALESCE(SUM(vm.total_unidades), 0) AS total_unidades_mes,
-                   COALESCE(pu.promedio_mensual, 0) AS promedio_mes,
-                   ROUND(COALESCE(pu.promedio_mensual, 0) / 30, 2) AS unidad_diaria
-            FROM VentasMensuales vm
-            INNER JOIN [SELLOUT].[dbo].[tipo_mueble] tm ON vm.cod_Pdv = tm.cod_Pdv
-            LEFT JOIN PromedioUnidades pu ON vm.cod_Pdv = pu.cod_Pdv
-            GROUP BY vm.cod_Pdv, vm.pdv, tm.ciudad, tm.tipo_Display_Essence, tm.tipo_Mueble_Display_Catrice, pu.promedio_mensual;
-        """;
-        Query q = entityManager.createNativeQuery(sql);
-        q.setParameter("codCliente", codCliente);
-        @SuppressWarnings("unchecked")
-        List<Object[]> res = q.getResultList();
-        return res;
+        return ventaResumenService.obtenerReporteVentas(codCliente);
     }
 
     /** Wrapper: default (MZCL-000014) */
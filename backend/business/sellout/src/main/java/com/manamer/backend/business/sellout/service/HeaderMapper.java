@@ -0,0 +1,140 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mapeo de encabezados de Excel a campos de un formato de carga.
+ *
+ * Los alias de cada campo se normalizan una sola vez ({@link TextNormalizer#clave}) al construir
+ * el mapper (una constante por formato) y quedan en un HashMap alias → campo; resolver una fila
+ * de encabezados es una pasada por sus celdas con una búsqueda por celda. El resultado es
+ * {@link Columnas}: índice de columna por campo del enum del formato.
+ *
+ * Si dos columnas del archivo apuntan al mismo campo gana la última, como hacían los bucles
+ * de encabezados que reemplaza.
+ */
+public final class HeaderMapper<C extends Enum<C>> {
+
+    private final Class<C> campos;
+    private final Map<String, C> porAlias;
+    private final Set<C> obligatorios;
+
+    private HeaderMapper(Class<C> campos, Map<String, C> porAlias, Set<C> obligatorios) {
+        this.campos = campos;
+        this.porAlias = porAlias;
+        this.obligatorios = obligatorios;
+    }
+
+    public static <C extends Enum<C>> Builder<C> para(Class<C> campos) {
+        return new Builder<>(campos);
+    }
+
+    /** Resuelve la fila de encabezados en una pasada. */
+    public Columnas<C> resolver(Row encabezado) {
+        int[] indices = new int[campos.getEnumConstants().length];
+        Arrays.fill(indices, -1);
+        if (encabezado != null) {
+            for (Cell celda : encabezado) {
+                String texto = texto(celda);
+                if (texto == null) continue;
+                C campo = porAlias.get(TextNormalizer.clave(texto));
+                if (campo != null) indices[campo.ordinal()] = celda.getColumnIndex();
+            }
+        }
+        return new Columnas<>(campos, indices, obligatorios);
+    }
+
+    /** Campo al que corresponde un texto de encabezado, o null. */
+    public C campoDe(String encabezado) {
+        return encabezado == null ? null : porAlias.get(TextNormalizer.clave(encabezado));
+    }
+
+    private static String texto(Cell celda) {
+        return switch (celda.getCellType()) {
+            case STRING -> celda.getStringCellValue();
+            case NUMERIC -> String.valueOf((long) celda.getNumericCellValue());
+            case FORMULA -> celda.getCachedFormulaResultType() == CellType.STRING ? celda.getStringCellValue() : null;
+            default -> null;
+        };
+    }
+
+    // =========================
+    //        RESULTADO
+    // =========================
+
+    /** Índice de columna (0-based) de cada campo; -1 si el archivo no lo trae. */
+    public record Columnas<C extends Enum<C>>(Class<C> campos, int[] indices, Set<C> obligatorios) {
+
+        public int indice(C campo) {
+            return indices[campo.ordinal()];
+        }
+
+        public boolean tiene(C campo) {
+            return indices[campo.ordinal()] >= 0;
+        }
+
+        /** Celda del campo en la fila, o null si el campo no está mapeado. */
+        public Cell celda(Row fila, C campo) {
+            int i = indices[campo.ordinal()];
+            return i < 0 ? null : fila.getCell(i);
+        }
+
+        /** Obligatorios sin columna, en el orden del enum. */
+        public List<C> faltantes() {
+            List<C> out = new ArrayList<>();
+            for (C c : obligatorios) if (!tiene(c)) out.add(c);
+            return out;
+        }
+
+        /** Todos los campos del enum que no vienen en el archivo. */
+        public List<C> sinColumna() {
+            List<C> out = new ArrayList<>();
+            for (C c : campos.getEnumConstants()) if (!tiene(c)) out.add(c);
+            return out;
+        }
+    }
+
+    // =========================
+    //         BUILDER
+    // =========================
+
+    public static final class Builder<C extends Enum<C>> {
+        private final Class<C> campos;
+        private final Map<String, C> porAlias = new HashMap<>();
+        private final EnumSet<C> obligatorios;
+
+        private Builder(Class<C> campos) {
+            this.campos = campos;
+            this.obligatorios = EnumSet.noneOf(campos);
+        }
+
+        public Builder<C> campo(C campo, String... alias) {
+            for (String a : alias) {
+                C previo = porAlias.put(TextNormalizer.clave(a), campo);
+                if (previo != null && previo != campo) {
+                    throw new IllegalArgumentException("Alias '" + a + "' asignado a " + previo + " y a " + campo);
+                }
+            }
+            return this;
+        }
+
+        public Builder<C> obligatorio(C campo, String... alias) {
+            obligatorios.add(campo);
+            return campo(campo, alias);
+        }
+
+        public HeaderMapper<C> build() {
+            return new HeaderMapper<>(campos, Map.copyOf(porAlias), EnumSet.copyOf(obligatorios));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.manamer.backend.business.sellout.service;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mapa de {@link VentaNaturalKey} (dos long) a valor, con direccionamiento abierto y sondeo lineal.
+ *
+ * Las claves viven en arreglos de long, sin objetos por entrada ni boxing; la tabla guarda el
+ * índice de la entrada, así los valores conservan el orden de inserción (como LinkedHashMap) y
+ * un put sobre una clave existente reemplaza el valor en su lugar. No admite borrado.
+ */
+public final class MapaClaveVenta<V> {
+
+    private static final int VACIO = -1;
+
+    private long[] numeros;
+    private long[] codigos;
+    private Object[] valores;
+    private int size;
+
+    private int[] tabla;   // índice de entrada o VACIO
+    private int mascara;
+
+    public MapaClaveVenta() {
+        this(16);
+    }
+
+    public MapaClaveVenta(int capacidadEsperada) {
+        int n = Math.max(16, capacidadEsperada);
+        numeros = new long[n];
+        codigos = new long[n];
+        valores = new Object[n];
+        crearTabla(Integer.highestOneBit(n * 2 - 1) << 1); // carga máxima 0.5
+    }
+
+    /** Asocia el valor a la clave; devuelve el anterior o null. */
+    @SuppressWarnings("unchecked")
+    public V put(long num, long cod, V valor) {
+        int pos = buscar(num, cod);
+        int idx = tabla[pos];
+        if (idx != VACIO) {
+            V anterior = (V) valores[idx];
+            valores[idx] = valor;
+            return anterior;
+        }
+        if (size == numeros.length) crecer();
+        numeros[size] = num;
+        codigos[size] = cod;
+        valores[size] = valor;
+        if ((size + 1) * 2 > tabla.length) {
+            size++;
+            crearTabla(tabla.length * 2);
+            reindexar();
+        } else {
+            tabla[pos] = size++;
+        }
+        return null;
+    }
+
+    public V put(VentaNaturalKey k, V valor) {
+        return put(k.numeros(), k.codigos(), valor);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long num, long cod) {
+        int idx = tabla[buscar(num, cod)];
+        return idx == VACIO ? null : (V) valores[idx];
+    }
+
+    public V get(VentaNaturalKey k) {
+        return get(k.numeros(), k.codigos());
+    }
+
+    public boolean containsKey(long num, long cod) {
+        return tabla[buscar(num, cod)] != VACIO;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Clave de la i-ésima entrada (orden de inserción). */
+    public long numerosEn(int i) {
+        return numeros[i];
+    }
+
+    public long codigosEn(int i) {
+        return codigos[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valorEn(int i) {
+        return (V) valores[i];
+    }
+
+    /** Vista de los valores en orden de inserción (sin copiar). */
+    public List<V> valores() {
+        return new AbstractList<>() {
+            @Override public V get(int i) {
+                if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+                return valorEn(i);
+            }
+            @Override public int size() {
+                return size;
+            }
+        };
+    }
+
+    // =========================
+    //         INTERNOS
+    // =========================
+
+    /** Posición en la tabla de la clave, o del hueco donde iría. */
+    private int buscar(long num, long cod) {
+        int pos = VentaNaturalKey.hash(num, cod) & mascara;
+        while (true) {
+            int idx = tabla[pos];
+            if (idx == VACIO || (numeros[idx] == num && codigos[idx] == cod)) return pos;
+            pos = (pos + 1) & mascara;
+        }
+    }
+
+    private void crecer() {
+        int n = numeros.length * 2;
+        numeros = Arrays.copyOf(numeros, n);
+        codigos = Arrays.copyOf(codigos, n);
+        valores = Arrays.copyOf(valores, n);
+    }
+
+    private void crearTabla(int capacidad) {
+        tabla = new int[capacidad];
+        Arrays.fill(tabla, VACIO);
+        mascara = capacidad - 1;
+    }
+
+    private void reindexar() {
+        for (int i = 0; i < size; i++) {
+            int pos = VentaNaturalKey.hash(numeros[i], codigos[i]) & mascara;
+            while (tabla[pos] != VACIO) pos = (pos + 1) & mascara;
+            tabla[pos] = i;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Pool compartido para la persistencia paralela de ventas (Template General por carriles y
+ * escritura masiva por particiones). Uno solo por aplicación: el paralelismo total hacia la BD
+ * queda acotado por aquí y no por cuántas cargas lleguen a la vez.
+ */
+@Configuration
+public class PersistenciaExecutorConfig {
+
+    public static final String EXECUTOR = "persistenciaVentasExecutor";
+
+    /**
+     * Hilos por defecto: un tercio del pool de Hikari (deja conexiones libres para el resto de la API),
+     * acotado a los cores. Con la cola llena la tarea corre en el hilo que la envía (backpressure).
+     */
+    @Bean(name = EXECUTOR)
+    public ThreadPoolTaskExecutor persistenciaVentasExecutor(
+            @Value("${sellout.persistencia.hilos:0}") int hilos,
+            @Value("${sellout.persistencia.cola:100}") int cola,
+            @Value("${spring.datasource.hikari.maximumPoolSize:10}") int poolConexiones) {
+
+        int n = hilos > 0 ? hilos
+                : Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), poolConexiones / 3));
+
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(n);
+        ex.setMaxPoolSize(n);
+        ex.setQueueCapacity(cola);
+        ex.setThreadNamePrefix("persistencia-ventas-");
+        ex.setDaemon(true);
+        ex.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        ex.setWaitForTasksToCompleteOnShutdown(true);
+        ex.setAwaitTerminationSeconds(60);
+        ex.initialize();
+        return ex;
+    }
+}
@@ -0,0 +1,289 @@
+package com.manamer.backend.business.sellout.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Purgas de ventas por filtros en segundo plano.
+ *
+ * Cada purga es un trabajo con id: borra con DELETE TOP (n) en transacciones cortas y duerme
+ * una pausa entre tandas, así no retiene el request HTTP ni mantiene bloqueos largos sobre venta
+ * que frenen las cargas. La tanda por defecto queda bajo las 5000 filas en que SQL Server escala
+ * a bloqueo de tabla. El avance se consulta por polling y la purga se puede cancelar entre tandas.
+ */
+@Service
+public class PurgaVentasService {
+
+    private static final Logger log = Logger.getLogger(PurgaVentasService.class.getName());
+
+    public enum EstadoPurga { EN_COLA, PROCESANDO, COMPLETADA, CANCELADA, FALLIDA }
+
+    private final EntityManager em;
+    private final TransactionTemplate txTemplate;
+    private final VentaResumenService ventaResumenService;
+    private final VentaCatalogoService ventaCatalogo;
+
+    private final ThreadPoolExecutor executor;
+    private final int tandaDefecto;
+    private final long pausaDefectoMs;
+    private final long retencionMs;
+    private final Map<String, PurgaJob> trabajos = new ConcurrentHashMap<>();
+
+    public PurgaVentasService(EntityManager entityManager,
+                              PlatformTransactionManager ptm,
+                              VentaResumenService ventaResumenService,
+                              VentaCatalogoService ventaCatalogo,
+                              @Value("${sellout.purgas.hilos:1}") int hilos,
+                              @Value("${sellout.purgas.cola:10}") int cola,
+                              @Value("${sellout.purgas.tanda:4000}") int tanda,
+                              @Value("${sellout.purgas.pausa-ms:250}") long pausaMs,
+                              @Value("${sellout.jobs.retencion-ms:86400000}") long retencionMs) {
+        this.em = entityManager;
+        this.txTemplate = new TransactionTemplate(ptm);
+        this.ventaResumenService = ventaResumenService;
+        this.ventaCatalogo = ventaCatalogo;
+        this.tandaDefecto = tanda;
+        this.pausaDefectoMs = pausaMs;
+        this.retencionMs = retencionMs;
+
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cola),
+                r -> {
+                    Thread t = new Thread(r, "purga-ventas-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void detener() {
+        trabajos.values().forEach(j -> j.cancelada = true);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Filtros de la purga. El cliente es obligatorio: con (cliente_id, anio, mes) el DELETE entra
+     * por el índice de la clave natural de venta en lugar de recorrer la tabla.
+     */
+    public record FiltroPurga(Long clienteId, Integer anio, Integer mes, String marca, String codPdv) {}
+
+    // =========================
+    //        ENCOLAR
+    // =========================
+
+    /**
+     * Registra la purga y la encola.
+     * @param tanda    filas por DELETE (null = sellout.purgas.tanda)
+     * @param pausaMs  espera entre tandas (null = sellout.purgas.pausa-ms)
+     * @param maxTotal tope de filas a borrar (null = sin tope)
+     * @throws IllegalArgumentException si falta el cliente o los parámetros no son válidos
+     * @throws RejectedExecutionException si la cola está llena
+     */
+    public PurgaJob encolar(FiltroPurga filtro, Integer tanda, Long pausaMs, Integer maxTotal) {
+        if (filtro == null || filtro.clienteId() == null) {
+            throw new IllegalArgumentException("Debe indicar el clienteId de la purga.");
+        }
+        if (filtro.mes() != null && filtro.anio() == null) {
+            throw new IllegalArgumentException("El filtro por mes requiere el año.");
+        }
+        int t = tanda == null ? tandaDefecto : tanda;
+        long p = pausaMs == null ? pausaDefectoMs : pausaMs;
+        if (t <= 0) throw new IllegalArgumentException("La tanda debe ser mayor a 0.");
+        if (p < 0) throw new IllegalArgumentException("La pausa no puede ser negativa.");
+        if (maxTotal != null && maxTotal <= 0) throw new IllegalArgumentException("maxTotal debe ser mayor a 0.");
+
+        PurgaJob job = new PurgaJob(UUID.randomUUID().toString(), filtro, t, p, maxTotal);
+        trabajos.put(job.id, job);
+        try {
+            executor.execute(job.tarea);
+        } catch (RejectedExecutionException e) {
+            trabajos.remove(job.id);
+            throw e;
+        }
+        log.info("Purga de ventas encolada: " + job.id + " " + filtro + " (tanda " + t + ", pausa " + p + " ms)");
+        return job;
+    }
+
+    public Optional<PurgaJob> obtener(String id) {
+        return Optional.ofNullable(trabajos.get(id));
+    }
+
+    public List<PurgaJob> listar() {
+        List<PurgaJob> out = new ArrayList<>(trabajos.values());
+        out.sort(Comparator.comparing((PurgaJob j) -> j.creado).reversed());
+        return out;
+    }
+
+    /** Pide la cancelación; surte efecto al terminar la tanda en curso. */
+    public Optional<PurgaJob> cancelar(String id) {
+        PurgaJob job = trabajos.get(id);
+        if (job == null) return Optional.empty();
+        if (job.isTerminada()) return Optional.of(job);
+        job.cancelada = true;
+        if (executor.remove(job.tarea)) { // aún en cola: no llega a ejecutarse
+            job.estado = EstadoPurga.CANCELADA;
+            job.finalizado = LocalDateTime.now();
+        }
+        return Optional.of(job);
+    }
+
+    // =========================
+    //        EJECUCIÓN
+    // =========================
+
+    private void ejecutar(PurgaJob job) {
+        job.estado = EstadoPurga.PROCESANDO;
+        job.iniciado = LocalDateTime.now();
+        VentaBorradoService.Salida salida = new VentaBorradoService.Salida();
+
+        try {
+            List<Object> params = new ArrayList<>();
+            String where = where(job.filtro, params);
+
+            while (!job.cancelada) {
+                int limite = job.maxTotal == null ? job.tanda : Math.min(job.tanda, job.maxTotal - job.eliminados);
+                if (limite <= 0) break;
+
+                long t0 = System.nanoTime();
+                int afectadas = borrarTanda(limite, where, params, salida);
+                long ms = (System.nanoTime() - t0) / 1_000_000;
+
+                job.tandas++;
+                job.eliminados += afectadas;
+                job.ultimaTandaMs = ms;
+                log.info(String.format("Purga %s: tanda %d, %d filas en %d ms (acumulado %d)",
+                        job.id, job.tandas, afectadas, ms, job.eliminados));
+
+                if (afectadas < limite) break;
+                if (job.pausaMs > 0) Thread.sleep(job.pausaMs);
+            }
+            job.estado = job.cancelada ? EstadoPurga.CANCELADA : EstadoPurga.COMPLETADA;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.estado = EstadoPurga.CANCELADA;
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Purga " + job.id + " fallida: " + e.getMessage(), e);
+            job.error = e.getMessage();
+            job.estado = EstadoPurga.FALLIDA;
+        } finally {
+            // Lo ya borrado queda confirmado tanda a tanda: el resumen y el catálogo se ajustan siempre
+            if (!salida.periodos.isEmpty()) ventaResumenService.recalcularSinFallar(salida.periodos);
+            if (!salida.clientes.isEmpty()) ventaCatalogo.invalidar(salida.clientes);
+            job.finalizado = LocalDateTime.now();
+            log.info("Purga " + job.id + " " + job.estado + ": " + job.eliminados + " filas en " + job.tandas
+                    + " tandas, " + Duration.between(job.iniciado, job.finalizado).toMillis() + " ms");
+        }
+    }
+
+    /** Una tanda en su propia transacción; el OUTPUT da los periodos tocados. */
+    private int borrarTanda(int limite, String where, List<Object> params, VentaBorradoService.Salida salida) {
+        String sql = "DELETE TOP (" + limite + ") FROM [SELLOUT].[dbo].[venta] " +
+                     "OUTPUT deleted.cliente_id, deleted.anio, deleted.mes" + where;
+        Integer n = txTemplate.execute(status -> em.unwrap(Session.class).doReturningWork(con -> {
+            int antes = salida.eliminados;
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                for (int i = 0; i < params.size(); i++) ps.setObject(i + 1, params.get(i));
+                VentaBorradoService.leerSalida(ps, salida);
+            }
+            return salida.eliminados - antes;
+        }));
+        return n == null ? 0 : n;
+    }
+
+    private static String where(FiltroPurga f, List<Object> params) {
+        // cliente_id, anio, mes: mismo orden que el índice de la clave natural
+        StringBuilder where = new StringBuilder(" WHERE cliente_id = ?");
+        params.add(f.clienteId());
+        if (f.anio() != null)      { where.append(" AND anio = ?");       params.add(f.anio()); }
+        if (f.mes() != null)       { where.append(" AND mes = ?");        params.add(f.mes()); }
+        if (!isBlank(f.marca()))   { where.append(" AND marca = ?");      params.add(f.marca().trim()); }
+        if (!isBlank(f.codPdv()))  { where.append(" AND cod_pdv = ?");    params.add(f.codPdv().trim()); }
+        return where.toString();
+    }
+
+    /** Limpia purgas terminadas una vez vencida la retención. */
+    @Scheduled(fixedDelayString = "${sellout.jobs.limpieza-ms:900000}")
+    public void purgarVencidas() {
+        LocalDateTime limite = LocalDateTime.now().minus(Duration.ofMillis(retencionMs));
+        trabajos.values().removeIf(j -> j.finalizado != null && j.finalizado.isBefore(limite));
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    // =========================
+    //     Trabajo de purga
+    // =========================
+
+    public final class PurgaJob {
+        private final String id;
+        private final FiltroPurga filtro;
+        private final int tanda;
+        private final long pausaMs;
+        private final Integer maxTotal;
+        private final LocalDateTime creado = LocalDateTime.now();
+        private final Runnable tarea = () -> ejecutar(this);
+
+        private volatile EstadoPurga estado = EstadoPurga.EN_COLA;
+        private volatile boolean cancelada;
+        private volatile LocalDateTime iniciado;
+        private volatile LocalDateTime finalizado;
+        private volatile int eliminados;
+        private volatile int tandas;
+        private volatile long ultimaTandaMs;
+        private volatile String error;
+
+        PurgaJob(String id, FiltroPurga filtro, int tanda, long pausaMs, Integer maxTotal) {
+            this.id = id;
+            this.filtro = filtro;
+            this.tanda = tanda;
+            this.pausaMs = pausaMs;
+            this.maxTotal = maxTotal;
+        }
+
+        public String getId() { return id; }
+
+        public EstadoPurga getEstado() { return estado; }
+
+        public boolean isTerminada() { return finalizado != null; }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("id", id);
+            out.put("filtro", filtro);
+            out.put("estado", estado);
+            out.put("cancelacionSolicitada", cancelada);
+            out.put("tanda", tanda);
+            out.put("pausaMs", pausaMs);
+            if (maxTotal != null) out.put("maxTotal", maxTotal);
+            out.put("creado", creado);
+            out.put("iniciado", iniciado);
+            out.put("finalizado", finalizado);
+            out.put("eliminados", eliminados);
+            out.put("tandas", tandas);
+            out.put("ultimaTandaMs", ultimaTandaMs);
+            if (maxTotal != null) out.put("porcentaje", Math.min(100, Math.round(100.0 * eliminados / maxTotal)));
+            if (error != null) out.put("error", error);
+            return out;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.manamer.backend.business.sellout.service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+/**
+ * Lee fechas de texto de una columna de Excel sin DateTimeFormatter ni excepciones.
+ *
+ * Clasifica la forma del texto (separador y largo de cada campo), lee los dígitos directamente y
+ * guarda la última forma reconocida: como una columna suele venir entera con el mismo formato,
+ * las filas siguientes validan esa forma y parsean en una sola rama. Un reconocedor por columna
+ * y por carga; no es thread-safe.
+ *
+ * Acepta lo mismo que las listas de DateTimeFormatter que reemplaza, en el mismo orden de
+ * prioridad, y resuelve igual que su ResolverStyle.SMART: día 1..31 y ajuste al último día del
+ * mes (31/04 → 30/04). La forma ISO (yyyy-MM-dd) del perfil general es estricta, como
+ * ISO_LOCAL_DATE.
+ */
+public final class ReconocedorFechas {
+
+    /** Formatos de cada carga. */
+    public enum Perfil {
+        /** dd/MM/uuuu, d/M/uuuu, dd-MM-uuuu, d-M-uuuu, ISO, MM/dd/uuuu, M/d/uuuu (VentaService, Template General). */
+        GENERAL,
+        /** dd.MM.yyyy, dd/MM/yyyy, dd-MM-yyyy, yyyy-MM-dd, yyyy/MM/dd, d-MMM-yyyy en inglés (Deprati). */
+        DEPRATI
+    }
+
+    private enum Orden { DIA_MES_ANIO, MES_DIA_ANIO, ANIO_MES_DIA, DIA_NOMBREMES_ANIO }
+
+    /** Forma reconocida: separador, largo de los dos primeros campos (el tercero es el resto) y orden. */
+    private record Forma(char sep, int largo1, int largo2, int largoTotal, Orden orden) {}
+
+    private static final String[] MESES_EN = {"Jan", "Feb", "Mar", "Apr", "May", "Jun",
+                                              "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private final Perfil perfil;
+    private Forma ultima;
+
+    public ReconocedorFechas(Perfil perfil) {
+        this.perfil = perfil;
+    }
+
+    /** Fecha del texto o null si no tiene ninguno de los formatos del perfil. */
+    public LocalDate leer(String s) {
+        if (s == null || s.isEmpty()) return null;
+
+        Forma f = ultima;
+        if (f != null && coincide(s, f)) {
+            LocalDate d = parsear(s, f);
+            // "x/y/aaaa": día primero tiene prioridad; mes primero solo vale si y > 12 (no puede ser mes)
+            if (d != null && (f.orden != Orden.MES_DIA_ANIO || d.getDayOfMonth() > 12)) {
+                return d;
+            }
+        }
+
+        int p1 = indiceSeparador(s, 0);
+        if (p1 < 0) return null;
+        char sep = s.charAt(p1);
+        int p2 = s.indexOf(sep, p1 + 1);
+        if (p2 < 0 || s.indexOf(sep, p2 + 1) >= 0) return null;
+
+        int l1 = p1, l2 = p2 - p1 - 1, l3 = s.length() - p2 - 1;
+        for (Orden o : candidatos(sep, l1, l2, l3)) {
+            Forma cand = new Forma(sep, l1, l2, s.length(), o);
+            LocalDate d = parsear(s, cand);
+            if (d != null) {
+                ultima = cand;
+                return d;
+            }
+        }
+        return null;
+    }
+
+    // =========================
+    //        CLASIFICACIÓN
+    // =========================
+
+    /** Órdenes posibles para la forma, en la prioridad de la lista de formatos del perfil. */
+    private Orden[] candidatos(char sep, int l1, int l2, int l3) {
+        if (perfil == Perfil.GENERAL) {
+            boolean cortos = l1 >= 1 && l1 <= 2 && l2 >= 1 && l2 <= 2 && l3 == 4;
+            if (sep == '/' && cortos) return new Orden[]{Orden.DIA_MES_ANIO, Orden.MES_DIA_ANIO};
+            if (sep == '-' && cortos) return new Orden[]{Orden.DIA_MES_ANIO};
+            if (sep == '-' && l1 == 4 && l2 == 2 && l3 == 2) return new Orden[]{Orden.ANIO_MES_DIA};
+            return new Orden[0];
+        }
+        if ((sep == '.' || sep == '/' || sep == '-') && l1 == 2 && l2 == 2 && l3 == 4) return new Orden[]{Orden.DIA_MES_ANIO};
+        if ((sep == '-' || sep == '/') && l1 == 4 && l2 == 2 && l3 == 2) return new Orden[]{Orden.ANIO_MES_DIA};
+        if (sep == '-' && l1 >= 1 && l1 <= 2 && l2 == 3 && l3 == 4) return new Orden[]{Orden.DIA_NOMBREMES_ANIO};
+        return new Orden[0];
+    }
+
+    private static int indiceSeparador(String s, int desde) {
+        for (int i = desde; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '/' || c == '-' || c == '.') return i;
+        }
+        return -1;
+    }
+
+    private static boolean coincide(String s, Forma f) {
+        return s.length() == f.largoTotal
+                && s.charAt(f.largo1) == f.sep
+                && s.charAt(f.largo1 + 1 + f.largo2) == f.sep;
+    }
+
+    // =========================
+    //          PARSEO
+    // =========================
+
+    private LocalDate parsear(String s, Forma f) {
+        int i2 = f.largo1 + 1, i3 = i2 + f.largo2 + 1;
+        int a = digitos(s, 0, f.largo1);
+        int c = digitos(s, i3, f.largoTotal);
+        return switch (f.orden) {
+            case DIA_MES_ANIO -> fecha(c, digitos(s, i2, i3 - 1), a, true);
+            case MES_DIA_ANIO -> fecha(c, a, digitos(s, i2, i3 - 1), true);
+            case ANIO_MES_DIA -> fecha(a, digitos(s, i2, i3 - 1), c, perfil == Perfil.DEPRATI);
+            case DIA_NOMBREMES_ANIO -> fecha(c, mesIngles(s, i2), a, true);
+        };
+    }
+
+    /** Entero de s[desde, hasta) o -1 si hay algo que no es dígito. */
+    private static int digitos(String s, int desde, int hasta) {
+        int v = 0;
+        for (int i = desde; i < hasta; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    private static int mesIngles(String s, int desde) {
+        for (int m = 0; m < 12; m++) {
+            if (s.startsWith(MESES_EN[m], desde)) return m + 1;
+        }
+        return -1;
+    }
+
+    /** Con {@code ajustar} (SMART) un día 29..31 que no existe en el mes pasa al último día del mes. */
+    private static LocalDate fecha(int anio, int mes, int dia, boolean ajustar) {
+        if (anio < 0 || mes < 1 || mes > 12 || dia < 1 || dia > 31) return null;
+        int ultimo = YearMonth.of(anio, mes).lengthOfMonth();
+        if (dia > ultimo) {
+            if (!ajustar) return null;
+            dia = ultimo;
+        }
+        return LocalDate.of(anio, mes, dia);
+    }
+}
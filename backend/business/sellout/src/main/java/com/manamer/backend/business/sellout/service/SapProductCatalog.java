@@ -0,0 +1,209 @@
+package com.manamer.backend.business.sellout.service;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Catálogo en memoria de SAP_Prod (CodBarra -> CodProd, Descripcion, Marca).
+ *
+ * Se carga en una sola pasada por streaming desde el linked server y se refresca
+ * periódicamente; el índice se reemplaza de forma atómica, así que las lecturas nunca
+ * ven una carga a medias. Mientras no haya una carga exitosa, las búsquedas caen a la
+ * consulta puntual contra SAPHANA (comportamiento anterior).
+ */
+@Component
+public class SapProductCatalog {
+
+    private static final Logger log = Logger.getLogger(SapProductCatalog.class.getName());
+
+    private static final int FETCH_SIZE = 5_000;
+
+    private static final String SQL_CARGA =
+            "SELECT CodBarra, CodProd, Descripcion, Marca " +
+            "FROM SAPHANA..CG3_360CORP.SAP_Prod " +
+            "WHERE CodBarra IS NOT NULL";
+
+    private static final String SQL_PUNTUAL =
+            "SELECT TOP 1 CodBarra, CodProd, Descripcion, Marca " +
+            "FROM SAPHANA..CG3_360CORP.SAP_Prod " +
+            "WHERE CodBarra = :cb ORDER BY CodProd DESC";
+
+    /** Entrada del catálogo. */
+    public record SapProducto(String codBarra, String codProd, String descripcion, String marca) {}
+
+    private final EntityManager em;
+    private final TransactionTemplate txLectura;
+    private final boolean habilitado;
+
+    private volatile Map<String, SapProducto> indice; // null => aún no cargado
+    private volatile LocalDateTime cargadoEn;
+    private volatile long duracionUltimaCargaMs;
+    private volatile String ultimoError;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong consultasDirectas = new AtomicLong();
+
+    public SapProductCatalog(EntityManager entityManager, PlatformTransactionManager ptm,
+                             @Value("${sellout.sap-catalogo.habilitado:true}") boolean habilitado) {
+        this.em = entityManager;
+        this.txLectura = new TransactionTemplate(ptm);
+        this.txLectura.setReadOnly(true);
+        this.habilitado = habilitado;
+    }
+
+    // =========================
+    //        CONSULTAS
+    // =========================
+
+    /**
+     * Busca por código de barras (trim). Vacío si no existe en SAP; si el catálogo aún no está
+     * cargado y la consulta puntual falla, la excepción se propaga.
+     */
+    public Optional<SapProducto> buscar(String codBarra) {
+        if (codBarra == null || codBarra.isBlank()) return Optional.empty();
+        String cb = codBarra.trim();
+
+        Map<String, SapProducto> actual = indice;
+        if (actual == null) {
+            consultasDirectas.incrementAndGet();
+            return buscarEnSap(cb);
+        }
+
+        SapProducto p = actual.get(cb);
+        if (p != null) aciertos.incrementAndGet(); else fallos.incrementAndGet();
+        return Optional.ofNullable(p);
+    }
+
+    public boolean existe(String codBarra) {
+        return buscar(codBarra).isPresent();
+    }
+
+    public boolean isCargado() {
+        return indice != null;
+    }
+
+    public Map<String, Object> metricas() {
+        Map<String, SapProducto> actual = indice;
+        long hits = aciertos.get(), miss = fallos.get();
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("habilitado", habilitado);
+        out.put("cargado", actual != null);
+        out.put("productos", actual == null ? 0 : actual.size());
+        out.put("cargadoEn", cargadoEn);
+        out.put("duracionUltimaCargaMs", duracionUltimaCargaMs);
+        out.put("aciertos", hits);
+        out.put("fallos", miss);
+        out.put("tasaAcierto", (hits + miss) == 0 ? 0.0 : (double) hits / (hits + miss));
+        out.put("consultasDirectasSap", consultasDirectas.get());
+        if (ultimoError != null) out.put("ultimoError", ultimoError);
+        return out;
+    }
+
+    // =========================
+    //     CARGA / REFRESCO
+    // =========================
+
+    /** Warmup al arrancar (initialDelay 0) y refresco cada TTL. */
+    @Scheduled(initialDelayString = "${sellout.sap-catalogo.espera-inicial-ms:0}",
+               fixedDelayString = "${sellout.sap-catalogo.refresco-ms:3600000}")
+    public void refrescarProgramado() {
+        if (!habilitado) return;
+        refrescar();
+    }
+
+    /** Recarga completa; si falla se conserva el índice anterior. */
+    public synchronized boolean refrescar() {
+        long t0 = System.nanoTime();
+        try {
+            Map<String, SapProducto> nuevo = txLectura.execute(status ->
+                    em.unwrap(Session.class).doReturningWork(con -> {
+                        Map<String, SapProducto> mapa = new HashMap<>(Math.max(16, tamanioEsperado()));
+                        Map<String, String> marcas = new HashMap<>(); // las marcas se repiten mucho: una sola instancia
+
+                        try (PreparedStatement ps = con.prepareStatement(SQL_CARGA)) {
+                            ps.setFetchSize(FETCH_SIZE);
+                            try (ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) {
+                                    String cb = recortar(rs.getString(1));
+                                    if (cb == null) continue;
+                                    String codProd = recortar(rs.getString(2));
+                                    String marca = rs.getString(4);
+                                    if (marca != null) marca = marcas.computeIfAbsent(marca, m -> m);
+
+                                    SapProducto previo = mapa.get(cb);
+                                    // mismo criterio que MAX(CodProd) GROUP BY CodBarra
+                                    if (previo == null || mayor(codProd, previo.codProd())) {
+                                        mapa.put(cb, new SapProducto(cb, codProd, rs.getString(3), marca));
+                                    }
+                                }
+                            }
+                        }
+                        return mapa;
+                    }));
+
+            indice = nuevo;
+            cargadoEn = LocalDateTime.now();
+            duracionUltimaCargaMs = (System.nanoTime() - t0) / 1_000_000;
+            ultimoError = null;
+            log.info("Catálogo SAP cargado: " + nuevo.size() + " productos en " + duracionUltimaCargaMs + " ms");
+            return true;
+        } catch (Exception e) {
+            ultimoError = e.getMessage();
+            log.warning("No se pudo cargar el catálogo SAP (se mantiene el anterior): " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Optional<SapProducto> buscarEnSap(String cb) {
+        try {
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = em.createNativeQuery(SQL_PUNTUAL)
+                    .setParameter("cb", cb)
+                    .getResultList();
+            if (rows.isEmpty()) return Optional.empty();
+            Object[] r = rows.get(0);
+            return Optional.of(new SapProducto(
+                    recortar((String) r[0]), recortar((String) r[1]), (String) r[2], (String) r[3]));
+        } catch (RuntimeException e) {
+            // Solo "sin filas" es ausencia: un fallo del linked server no puede pasar por "no existe en SAP"
+            ultimoError = e.getMessage();
+            log.warning("Consulta puntual a SAP_Prod fallida para CodBarra " + cb + ": " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private int tamanioEsperado() {
+        Map<String, SapProducto> actual = indice;
+        return actual == null ? 0 : (int) (actual.size() / 0.75f) + 1;
+    }
+
+    private static boolean mayor(String a, String b) {
+        if (a == null) return false;
+        if (b == null) return true;
+        return a.compareTo(b) > 0;
+    }
+
+    private static String recortar(String s) {
+        if (s == null) return null;
+        String t = s.trim();
+        return t.isEmpty() ? null : t;
+    }
+}
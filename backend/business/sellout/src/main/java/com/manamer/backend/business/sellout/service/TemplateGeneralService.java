@@ -5,17 +5,35 @@ import com.manamer.backend.business.sellout.models.Venta;
 import com.manamer.backend.business.sellout.repositories.VentaRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.util.IOUtils;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.File;
 import java.io.InputStream;
-import java.text.Normalizer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 @Service
@@ -29,9 +47,8 @@ public class TemplateGeneralService {
 
     // === Límites para borrado masivo ===
     private static final int DELETE_UI_BATCH       = 5_000; // objetivo por acción del usuario
-    private static final int SQLSERVER_PARAM_LIMIT = 2_100; // límite duro SQL Server
-    private static final int PARAMS_POR_FILA       = 4;     // anio, mes, codBarra, codPdv
-    private static final int FILAS_POR_SENTENCIA   = 500;   // 500*4 = 2000 < 2100 (seguro)
+    // 6 parámetros por fila (cliente, anio, mes, dia, codBarra, codPdv): 300*6 = 1800 < 2100 de SQL Server
+    private static final int FILAS_POR_SENTENCIA   = 300;
 
     private static final String HOJA = "Base";
     private static final int FILA_ENCAB = 3; // 0-based => fila 4
@@ -58,23 +75,23 @@ public class TemplateGeneralService {
     private static final int IDX_VTA_UNIDADES  = 11; // M
     private static final int IDX_VTA_DOLARES   = 12; // N
 
-    private static final List<java.time.format.DateTimeFormatter> DATE_FORMATS = List.of(
-            java.time.format.DateTimeFormatter.ofPattern("dd/MM/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("d/M/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("dd-MM-uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("d-M-uuuu"),
-            java.time.format.DateTimeFormatter.ISO_LOCAL_DATE,
-            java.time.format.DateTimeFormatter.ofPattern("MM/dd/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("M/d/uuuu")
-    );
-
     private final VentaRepository ventaRepository;
     private final ClienteService clienteService; // compatibilidad
     private final EntityManager em;
     private final TransactionTemplate txTemplate;
+    private final SapProductCatalog sapCatalog;
+    private final VentaResumenService ventaResumenService;
+    private final VentaCatalogoService ventaCatalogo;
+    private final VentaBulkService ventaBulkService;
+
+    // === Persistencia paralela por carriles ===
+    private final int hilos;          // carriles (1 => modo secuencial)
+    private final int chunksEnVuelo;  // tope de chunks despachados sin terminar (backpressure)
+    private final Executor workers;   // pool compartido de persistencia
+    private final Object bloqueoClientes = new Object(); // creación de clientes: un worker a la vez
 
     static {
-        // Permitir Excels grandes
+        // Permitir Excels grandes en el modo DOM (.xls); los .xlsx se leen por eventos
         IOUtils.setByteArrayMaxOverride(200 * 1024 * 1024);
     }
 
@@ -82,184 +99,356 @@ public class TemplateGeneralService {
             VentaRepository ventaRepository,
             EntityManager entityManager,
             ClienteService clienteService,
-            PlatformTransactionManager ptm
+            PlatformTransactionManager ptm,
+            SapProductCatalog sapCatalog,
+            VentaResumenService ventaResumenService,
+            VentaCatalogoService ventaCatalogo,
+            VentaBulkService ventaBulkService,
+            @Value("${sellout.template-general.hilos:0}") int hilos,
+            @Value("${sellout.template-general.chunks-en-vuelo:0}") int chunksEnVuelo,
+            @Qualifier(PersistenciaExecutorConfig.EXECUTOR) ThreadPoolTaskExecutor workers
     ) {
         this.ventaRepository = ventaRepository;
         this.em = entityManager;
         this.clienteService = clienteService;
         this.txTemplate = new TransactionTemplate(ptm);
+        this.sapCatalog = sapCatalog;
+        this.ventaResumenService = ventaResumenService;
+        this.ventaCatalogo = ventaCatalogo;
+        this.ventaBulkService = ventaBulkService;
+
+        // Por defecto un carril por hilo del pool compartido
+        this.hilos = hilos > 0 ? hilos : workers.getMaxPoolSize();
+        this.chunksEnVuelo = chunksEnVuelo > 0 ? chunksEnVuelo : this.hilos * 2;
+        this.workers = workers;
+        log.info("Template General: " + this.hilos + " carril(es) de persistencia, " + this.chunksEnVuelo + " chunks en vuelo");
     }
 
     // =========================
     //       CARGA EXCEL
     // =========================
+
+    /**
+     * Carga la hoja "Base". Los .xlsx se leen por eventos (SAX) sin construir el workbook,
+     * de modo que el heap no crece con el tamaño del archivo; los .xls (HSSF) usan el modelo DOM.
+     * El archivo se vuelca primero a un temporal para poder abrir el paquete en modo lectura.
+     *
+     * Con más de un worker, la lectura y la escritura se solapan: cada fila va a un carril según
+     * el hash de su clave natural y cada carril se persiste en orden (nunca dos workers sobre la
+     * misma clave); el número de chunks en vuelo está acotado, así que el parser se frena si la
+     * BD no da abasto.
+     */
     public Map<String, Object> cargarTemplateGeneral(InputStream excelStream, String nombreArchivo) {
-        int insertados = 0, actualizados = 0, omitidos = 0;
-        int filasLeidas = 0, filasConCodCliente = 0;
+        return cargarTemplateGeneral(excelStream, nombreArchivo, CargaProgreso.NINGUNO);
+    }
 
-        List<String> incidencias = new ArrayList<>();
-        List<Map<String, Object>> codigosNoEncontrados = new ArrayList<>();
-        List<Map<String, Object>> detalleOmitidos = new ArrayList<>();
-        List<Map<String, Object>> detalleInsertados = new ArrayList<>();
-        List<Map<String, Object>> detalleActualizados = new ArrayList<>();
-        Set<String> codigosAfectados = new TreeSet<>();
+    /** Igual que {@link #cargarTemplateGeneral(InputStream, String)}, notificando el avance por chunk. */
+    public Map<String, Object> cargarTemplateGeneral(InputStream excelStream, String nombreArchivo, CargaProgreso progreso) {
+        EstadoCarga st = new EstadoCarga(progreso, hilos, chunksEnVuelo);
+        Path temporal = null;
 
-        try (Workbook wb = WorkbookFactory.create(excelStream)) {
-            Sheet sheet = getHojaBase(wb).orElseThrow(() ->
-                    new IllegalArgumentException("Falta la hoja 'Base'."));
+        try {
+            temporal = Files.createTempFile("template-general-", ".upload");
+            Files.copy(excelStream, temporal, StandardCopyOption.REPLACE_EXISTING);
 
-            List<String> headers = leerEncabezados(sheet);
-            if (!headers.equals(HEADERS)) {
-                String msg = "Encabezados en B4:N4 no coinciden (se normaliza a MAYÚSCULAS, sin tildes, espacios colapsados).";
-                incidencias.add(msg);
-                codigosNoEncontrados.add(Map.of("codigo", "ENCABEZADOS", "motivo", msg));
+            if (FileMagic.valueOf(temporal.toFile()) == FileMagic.OOXML) {
+                leerHojaBaseStreaming(temporal.toFile(), st);
+            } else {
+                leerHojaBaseWorkbook(temporal.toFile(), st);
             }
 
-            List<RegistroFila> buffer = new ArrayList<>(CHUNK_SIZE);
-            int vaciosConsecutivos = 0;
-
-            for (int r = FILA_DATOS; r <= sheet.getLastRowNum(); r++) {
-                Row row = sheet.getRow(r);
-                filasLeidas++;
-
-                String codClienteRaw    = getCellText(row, COL_INI + IDX_CODCLIENTE);
-                String nombreClienteRaw = getCellText(row, COL_INI + IDX_CLIENTE);
-
-                String codCliente    = safeTrim(codClienteRaw);
-                String nombreCliente = safeTrim(nombreClienteRaw);
-
-                if (isBlank(codCliente) && isBlank(nombreCliente)) {
-                    vaciosConsecutivos++;
-                    if (vaciosConsecutivos >= 2) break;
-                    else continue;
-                } else {
-                    vaciosConsecutivos = 0;
-                    filasConCodCliente++;
-                }
-
-                int excelFila = r + 1;
-
-                LocalDate fecha    = getCellDate(row, COL_INI + IDX_MES);
-                String codBarra    = safeTrim(getCellText(row, COL_INI + IDX_COD_BARRA));
-                String descripcion = safeTrim(getCellText(row, COL_INI + IDX_DESCRIPCION));
-                String marca       = safeTrim(getCellText(row, COL_INI + IDX_MARCA));
-                Integer codLocal   = getCellInteger(row, COL_INI + IDX_COD_LOCAL);
-                String codPdv      = codLocal == null ? null : String.valueOf(codLocal).trim();
-                String ciudad      = safeTrim(getCellText(row, COL_INI + IDX_CIUDAD));
-                String pdv         = safeTrim(getCellText(row, COL_INI + IDX_NOMBRE_LOCAL));
-
-                Integer ventaUnidades = getCellInteger(row, COL_INI + IDX_VTA_UNIDADES);
-                Double  ventaUSD      = getCellDouble(row,  COL_INI + IDX_VTA_DOLARES);
-                Integer stockUnidades = getCellInteger(row, COL_INI + IDX_STOCK_PDV);
-
-                if (fecha == null) {
-                    omitidos++;
-                    detalleOmitidos.add(Map.of(
-                            "fila", excelFila, "codBarra", Objects.toString(codBarra, ""),
-                            "codPdv", Objects.toString(codPdv, ""),
-                            "motivo", "Columna MES inválida (esperado dd/MM/yyyy o fecha Excel)."
-                    ));
-                    codigosNoEncontrados.add(Map.of(
-                            "codigo", Objects.toString(codBarra, "SIN_COD_BARRA"),
-                            "motivo", "Fecha (MES) inválida. Fila: " + excelFila
-                    ));
-                    continue;
-                }
-                if (isBlank(codBarra)) {
-                    omitidos++;
-                    detalleOmitidos.add(Map.of(
-                            "fila", excelFila, "codBarra", "", "codPdv", Objects.toString(codPdv, ""),
-                            "motivo", "CODBARRA vacío."
-                    ));
-                    codigosNoEncontrados.add(Map.of("codigo", "CODBARRA_VACIO", "motivo", "CODBARRA vacío. Fila: " + excelFila));
-                    continue;
-                }
-                if (isBlank(pdv) && isBlank(codPdv)) {
-                    omitidos++;
-                    detalleOmitidos.add(Map.of(
-                            "fila", excelFila, "codBarra", Objects.toString(codBarra, ""),
-                            "codPdv", "", "motivo", "Faltan datos de PDV (NOMBRE LOCAL y COD LOCAL)."
-                    ));
-                    codigosNoEncontrados.add(Map.of(
-                            "codigo", codBarra,
-                            "motivo", "Faltan datos de PDV (NOMBRE LOCAL y COD LOCAL). Fila: " + excelFila
-                    ));
-                    continue;
-                }
-                if (isBlank(codPdv)) codPdv = null;
-
-                RegistroFila rf = new RegistroFila(
-                        excelFila, codCliente, nombreCliente, fecha,
-                        codBarra, descripcion, marca, codPdv, ciudad, pdv,
-                        ventaUnidades, ventaUSD, stockUnidades
-                );
-                buffer.add(rf);
-
-                if (buffer.size() >= CHUNK_SIZE) {
-                    int[] res = txTemplate.execute(status ->
-                            procesarChunk(buffer, detalleInsertados, detalleActualizados,
-                                    detalleOmitidos, codigosAfectados, codigosNoEncontrados)
-                    );
-                    insertados += res[0];
-                    actualizados += res[1];
-                    omitidos += res[2];
-                    buffer.clear();
+            if (st.carriles == null) {
+                if (!st.buffer.isEmpty()) procesarBuffer(st);
+            } else {
+                for (int c = 0; c < st.carriles.size(); c++) {
+                    if (!st.carriles.get(c).isEmpty()) despacharCarril(st, c);
                 }
-            }
-
-            if (!buffer.isEmpty()) {
-                int[] res = txTemplate.execute(status ->
-                        procesarChunk(buffer, detalleInsertados, detalleActualizados,
-                                detalleOmitidos, codigosAfectados, codigosNoEncontrados)
-                );
-                insertados += res[0];
-                actualizados += res[1];
-                omitidos += res[2];
-                buffer.clear();
+                esperarCarriles(st);
+                verificarFalla(st);
             }
 
         } catch (Exception ex) {
             log.severe("Error al procesar CU4: " + ex.getMessage());
-            incidencias.add("ERROR FATAL: " + ex.getMessage());
-            codigosNoEncontrados.add(Map.of(
+            st.incidencias.add("ERROR FATAL: " + ex.getMessage());
+            st.noEncontradosLectura.add(Map.of(
                     "codigo", "GENERAL",
                     "motivo", "ERROR FATAL: " + String.valueOf(ex.getMessage())
             ));
+        } finally {
+            if (st.carriles != null) esperarCarriles(st); // ante un error, deja terminar lo ya despachado
+            if (temporal != null) {
+                try { Files.deleteIfExists(temporal); } catch (Exception ignored) {}
+            }
+        }
+        st.volcarLectura();
+        st.progreso.avance(st.filasLeidas, st.insertados, st.actualizados, st.omitidos);
+
+        // Aun con error, lo ya guardado debe reflejarse en el resumen mensual
+        ventaResumenService.recalcularSinFallar(st.periodos);
+
+        // Las omisiones del parser se vuelcan al final y los carriles terminan en cualquier orden:
+        // el detalle se devuelve por número de fila
+        Comparator<Map<String, Object>> porFila = Comparator.comparingInt(m -> (Integer) m.getOrDefault("fila", 0));
+        st.detalleOmitidos.sort(porFila);
+        if (st.carriles != null) {
+            st.detalleInsertados.sort(porFila);
+            st.detalleActualizados.sort(porFila);
         }
 
         Map<String, Object> out = new LinkedHashMap<>();
-        out.put("ok", incidencias.stream().noneMatch(s -> s.startsWith("ERROR")));
+        out.put("ok", st.incidencias.stream().noneMatch(s -> s.startsWith("ERROR")));
         out.put("archivo", nombreArchivo);
-        out.put("filasLeidas", filasLeidas);
-        out.put("filasConCodCliente", filasConCodCliente);
-        out.put("insertados", insertados);
-        out.put("actualizados", actualizados);
-        out.put("omitidos", omitidos);
-        out.put("errores", (int) incidencias.stream().filter(s -> s.startsWith("Error") || s.startsWith("ERROR")).count());
-        if (!incidencias.isEmpty()) out.put("incidencias", incidencias);
-        out.put("codigosNoEncontrados", codigosNoEncontrados);
-        out.put("detalleOmitidos", detalleOmitidos);
-        out.put("detalleInsertados", detalleInsertados);
-        out.put("detalleActualizados", detalleActualizados);
-        out.put("codigosAfectados", new ArrayList<>(codigosAfectados));
+        out.put("filasLeidas", st.filasLeidas);
+        out.put("filasConCodCliente", st.filasConCodCliente);
+        out.put("insertados", st.insertados);
+        out.put("actualizados", st.actualizados);
+        out.put("omitidos", st.omitidos);
+        out.put("errores", (int) st.incidencias.stream().filter(s -> s.startsWith("Error") || s.startsWith("ERROR")).count());
+        if (!st.incidencias.isEmpty()) out.put("incidencias", st.incidencias);
+        out.put("codigosNoEncontrados", st.codigosNoEncontrados);
+        out.put("detalleOmitidos", st.detalleOmitidos);
+        out.put("detalleInsertados", st.detalleInsertados);
+        out.put("detalleActualizados", st.detalleActualizados);
+        out.put("codigosAfectados", new ArrayList<>(st.codigosAfectados));
         return out;
     }
 
-    /** Procesa un chunk con validación de existencia en SAP por CODBARRA y asigna el cliente_id correcto. */
-    private int[] procesarChunk(
-            List<RegistroFila> chunk,
-            List<Map<String, Object>> detalleInsertados,
-            List<Map<String, Object>> detalleActualizados,
-            List<Map<String, Object>> detalleOmitidos,
-            Set<String> codigosAfectados,
-            List<Map<String, Object>> codigosNoEncontrados
-    ) {
-        // 1) Recolectar dominios y map (codCliente -> nombre) para precrear/obtener ID
-        Set<String> codBarras   = new HashSet<>();
-        Set<String> codPdvs     = new HashSet<>();
-        Set<Integer> anios      = new HashSet<>();
-        Set<Integer> meses      = new HashSet<>();
+    /** Modo por eventos (.xlsx): solo la fila en curso y el buffer del chunk viven en memoria. */
+    private void leerHojaBaseStreaming(File archivo, EstadoCarga st) throws Exception {
+        int[] siguiente = {FILA_DATOS};
+
+        boolean encontrada = XlsxStreamingReader.leerHoja(archivo,
+                nombre -> "BASE".equals(TextNormalizer.mayusculas(nombre)), COL_FIN,
+                ultimaFila -> st.progreso.totalEstimado(Math.max(0, ultimaFila - FILA_DATOS + 1)),
+                (r, celdas) -> {
+                    if (r == FILA_ENCAB) {
+                        validarEncabezados(celdas, st);
+                        return;
+                    }
+                    if (r < FILA_DATOS) return;
+                    if (!st.encabezadosValidados) validarEncabezados(null, st);
+
+                    // Las filas ausentes en el XML cuentan como vacías (igual que sheet.getRow(r) == null)
+                    for (; siguiente[0] < r; siguiente[0]++) {
+                        if (!consumirFila(siguiente[0], null, st)) throw new XlsxStreamingReader.Detener();
+                    }
+                    siguiente[0] = r + 1;
+                    if (!consumirFila(r, celdas, st)) throw new XlsxStreamingReader.Detener();
+                });
+
+        if (!encontrada) throw new IllegalArgumentException("Falta la hoja 'Base'.");
+        if (!st.encabezadosValidados) validarEncabezados(null, st);
+    }
+
+    /** Modo DOM (.xls u otros formatos que no son OOXML). */
+    private void leerHojaBaseWorkbook(File archivo, EstadoCarga st) throws Exception {
+        try (Workbook wb = WorkbookFactory.create(archivo, null, true)) {
+            Sheet sheet = getHojaBase(wb).orElseThrow(() ->
+                    new IllegalArgumentException("Falta la hoja 'Base'."));
+
+            validarEncabezados(leerCeldas(sheet.getRow(FILA_ENCAB)), st);
+            st.progreso.totalEstimado(Math.max(0, sheet.getLastRowNum() - FILA_DATOS + 1));
+
+            for (int r = FILA_DATOS; r <= sheet.getLastRowNum(); r++) {
+                if (!consumirFila(r, leerCeldas(sheet.getRow(r)), st)) break;
+            }
+        }
+    }
+
+    private void validarEncabezados(Object[] celdas, EstadoCarga st) {
+        st.encabezadosValidados = true;
+        List<String> headers = new ArrayList<>();
+        for (int c = COL_INI; c <= COL_FIN; c++) {
+            headers.add(TextNormalizer.mayusculas(textoDe(celda(celdas, c))));
+        }
+        if (!headers.equals(HEADERS)) {
+            String msg = "Encabezados en B4:N4 no coinciden (se normaliza a MAYÚSCULAS, sin tildes, espacios colapsados).";
+            st.incidencias.add(msg);
+            st.noEncontradosLectura.add(Map.of("codigo", "ENCABEZADOS", "motivo", msg));
+        }
+    }
+
+    /**
+     * Valida una fila de datos y la agrega al buffer; al llenarse el chunk lo procesa.
+     * @return false cuando se detecta el fin de los datos (2 filas vacías consecutivas).
+     */
+    private boolean consumirFila(int r, Object[] celdas, EstadoCarga st) {
+        st.filasLeidas++;
+        if (st.filasLeidas % 1_000 == 0) {
+            synchronized (st) {
+                st.progreso.avance(st.filasLeidas, st.insertados, st.actualizados, st.omitidos + st.omitidosLectura);
+            }
+        }
+        if (st.filasLeidas % CHUNK_SIZE == 0) {
+            log.info("Template General: " + st.filasLeidas + " filas leídas; " + st.textos.resumen());
+        }
+
+        String codCliente    = safeTrim(textoDe(celda(celdas, COL_INI + IDX_CODCLIENTE)));
+        String nombreCliente = safeTrim(textoDe(celda(celdas, COL_INI + IDX_CLIENTE)));
+
+        if (isBlank(codCliente) && isBlank(nombreCliente)) {
+            st.vaciosConsecutivos++;
+            return st.vaciosConsecutivos < 2;
+        } else {
+            st.vaciosConsecutivos = 0;
+            st.filasConCodCliente++;
+        }
+
+        int excelFila = r + 1;
+
+        LocalDate fecha    = fechaDe(celda(celdas, COL_INI + IDX_MES), st.fechas);
+        String codBarra    = safeTrim(textoDe(celda(celdas, COL_INI + IDX_COD_BARRA)));
+        String descripcion = st.textos.comun(safeTrim(textoDe(celda(celdas, COL_INI + IDX_DESCRIPCION))));
+        String marca       = st.textos.comun(safeTrim(textoDe(celda(celdas, COL_INI + IDX_MARCA))));
+        Integer codLocal   = enteroDe(celda(celdas, COL_INI + IDX_COD_LOCAL));
+        String codPdv      = codLocal == null ? null : String.valueOf(codLocal).trim();
+        String ciudad      = st.textos.comun(safeTrim(textoDe(celda(celdas, COL_INI + IDX_CIUDAD))));
+        String pdv         = st.textos.comun(safeTrim(textoDe(celda(celdas, COL_INI + IDX_NOMBRE_LOCAL))));
+
+        Integer ventaUnidades = enteroDe(celda(celdas, COL_INI + IDX_VTA_UNIDADES));
+        Double  ventaUSD      = decimalDe(celda(celdas, COL_INI + IDX_VTA_DOLARES));
+        Integer stockUnidades = enteroDe(celda(celdas, COL_INI + IDX_STOCK_PDV));
+
+        if (fecha == null) {
+            st.omitidosLectura++;
+            st.detalleOmitidosLectura.add(Map.of(
+                    "fila", excelFila, "codBarra", Objects.toString(codBarra, ""),
+                    "codPdv", Objects.toString(codPdv, ""),
+                    "motivo", "Columna MES inválida (esperado dd/MM/yyyy o fecha Excel)."
+            ));
+            st.noEncontradosLectura.add(Map.of(
+                    "codigo", Objects.toString(codBarra, "SIN_COD_BARRA"),
+                    "motivo", "Fecha (MES) inválida. Fila: " + excelFila
+            ));
+            return true;
+        }
+        if (isBlank(codBarra)) {
+            st.omitidosLectura++;
+            st.detalleOmitidosLectura.add(Map.of(
+                    "fila", excelFila, "codBarra", "", "codPdv", Objects.toString(codPdv, ""),
+                    "motivo", "CODBARRA vacío."
+            ));
+            st.noEncontradosLectura.add(Map.of("codigo", "CODBARRA_VACIO", "motivo", "CODBARRA vacío. Fila: " + excelFila));
+            return true;
+        }
+        if (isBlank(pdv) && isBlank(codPdv)) {
+            st.omitidosLectura++;
+            st.detalleOmitidosLectura.add(Map.of(
+                    "fila", excelFila, "codBarra", Objects.toString(codBarra, ""),
+                    "codPdv", "", "motivo", "Faltan datos de PDV (NOMBRE LOCAL y COD LOCAL)."
+            ));
+            st.noEncontradosLectura.add(Map.of(
+                    "codigo", codBarra,
+                    "motivo", "Faltan datos de PDV (NOMBRE LOCAL y COD LOCAL). Fila: " + excelFila
+            ));
+            return true;
+        }
+        if (isBlank(codPdv)) codPdv = null;
+
+        RegistroFila rf = new RegistroFila(
+                excelFila, codCliente, nombreCliente, fecha,
+                codBarra, descripcion, marca, codPdv, ciudad, pdv,
+                ventaUnidades, ventaUSD, stockUnidades
+        );
+
+        if (st.carriles == null) {
+            st.buffer.add(rf);
+            if (st.buffer.size() >= CHUNK_SIZE) {
+                procesarBuffer(st);
+            }
+        } else {
+            int c = carrilDe(rf, st.carriles.size());
+            List<RegistroFila> carril = st.carriles.get(c);
+            carril.add(rf);
+            if (carril.size() >= st.tamanioChunkCarril) {
+                despacharCarril(st, c);
+            }
+        }
+        return true;
+    }
+
+    private void procesarBuffer(EstadoCarga st) {
+        procesarLote(st.buffer, st);
+        st.buffer.clear();
+    }
 
+    // ==== Modo paralelo: carriles por clave natural ====
+
+    /** Carril de la fila: mismo (cliente, anio, mes, codBarra, codPdv) => mismo carril, y con él la misma clave natural. */
+    private static int carrilDe(RegistroFila rf, int carriles) {
+        int h = Objects.hash(soloCod(rf.codCliente), rf.fecha.getYear(), rf.fecha.getMonthValue(), rf.codBarra, rf.codPdv);
+        return Math.floorMod(h, carriles);
+    }
+
+    /**
+     * Encadena el chunk del carril detrás del anterior del mismo carril y lo ejecuta en el pool.
+     * Bloquea al parser mientras haya {@code chunksEnVuelo} chunks sin terminar.
+     */
+    private void despacharCarril(EstadoCarga st, int c) {
+        verificarFalla(st);
+        List<RegistroFila> chunk = st.carriles.set(c, new ArrayList<>(st.tamanioChunkCarril));
+
+        st.enVuelo.acquireUninterruptibly();
+        st.colas.set(c, st.colas.get(c).thenRunAsync(() -> {
+            try {
+                if (st.falla.get() == null) procesarLote(chunk, st);
+            } catch (Throwable t) {
+                st.falla.compareAndSet(null, t);
+            } finally {
+                st.enVuelo.release();
+            }
+        }, workers));
+    }
+
+    private static void esperarCarriles(EstadoCarga st) {
+        CompletableFuture.allOf(st.colas.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static void verificarFalla(EstadoCarga st) {
+        Throwable t = st.falla.get();
+        if (t == null) return;
+        if (t instanceof RuntimeException re) throw re;
+        throw new IllegalStateException(t.getMessage(), t);
+    }
+
+    /**
+     * Persiste un lote: primero resuelve/crea sus clientes (serializado y confirmado en su propia
+     * transacción, para que otro worker no cree el mismo cliente), luego el upsert del chunk en otra
+     * transacción. El detalle se acumula en listas locales y se vuelca al estado compartido al final.
+     */
+    private void procesarLote(List<RegistroFila> chunk, EstadoCarga st) {
+        List<Map<String, Object>> insertados = new ArrayList<>();
+        List<Map<String, Object>> actualizados = new ArrayList<>();
+        List<Map<String, Object>> omitidos = new ArrayList<>();
+        List<Map<String, Object>> noEncontrados = new ArrayList<>();
+        Set<String> afectados = new HashSet<>();
+        Set<VentaResumenService.Periodo> periodos = new HashSet<>();
+        List<Venta> escritas = new ArrayList<>(chunk.size());
+
+        ClientesChunk clientes;
+        synchronized (bloqueoClientes) {
+            clientes = txTemplate.execute(status -> resolverClientesChunk(chunk, noEncontrados));
+        }
+        int[] res = txTemplate.execute(status ->
+                procesarChunk(chunk, clientes, insertados, actualizados, omitidos, afectados, periodos, escritas, noEncontrados)
+        );
+        ventaCatalogo.registrar(escritas);
+
+        synchronized (st) {
+            st.insertados += res[0];
+            st.actualizados += res[1];
+            st.omitidos += res[2];
+            st.detalleInsertados.addAll(insertados);
+            st.detalleActualizados.addAll(actualizados);
+            st.detalleOmitidos.addAll(omitidos);
+            st.codigosNoEncontrados.addAll(noEncontrados);
+            st.codigosAfectados.addAll(afectados);
+            st.periodos.addAll(periodos);
+        }
+    }
+
+    /** Clientes del chunk con su ID real, por par (COD|NOMBRE) y por solo código. */
+    private ClientesChunk resolverClientesChunk(List<RegistroFila> chunk, List<Map<String, Object>> codigosNoEncontrados) {
         Map<String, String> codClienteToNombre = new LinkedHashMap<>();
         for (RegistroFila rf : chunk) {
             if (!isBlank(rf.codCliente)) {
@@ -270,16 +459,8 @@ public class TemplateGeneralService {
                     codClienteToNombre.put(codeUpper, rf.nombreCliente.trim());
                 }
             }
-            if (rf.codBarra != null) codBarras.add(rf.codBarra);
-            if (rf.codPdv != null)   codPdvs.add(rf.codPdv);
-            anios.add(rf.fecha.getYear());
-            meses.add(rf.fecha.getMonthValue());
         }
 
-        // 2) Prefetch SAP por codBarra
-        Map<String, String> sapByCb = prefetchSapByCodBarra(codBarras);
-
-        // 3) Resolver/crear clientes y obtener sus IDs
         Map<String, Cliente> clientes = prefetchClientes(codClienteToNombre, codigosNoEncontrados);
         // Mapa auxiliar: codCliente (UPPER TRIM) -> Cliente (si solo viene código sin nombre en alguna fila)
         Map<String, Cliente> clientesPorCodigo = new HashMap<>();
@@ -293,13 +474,54 @@ public class TemplateGeneralService {
                 clienteService.findByCodCliente(codeUpper).ifPresent(c -> clientesPorCodigo.put(codeUpper, c));
             }
         }
+        return new ClientesChunk(clientes, clientesPorCodigo);
+    }
+
+    /** Procesa un chunk con validación de existencia en SAP por CODBARRA y asigna el cliente_id correcto. */
+    private int[] procesarChunk(
+            List<RegistroFila> chunk,
+            ClientesChunk clientesChunk,
+            List<Map<String, Object>> detalleInsertados,
+            List<Map<String, Object>> detalleActualizados,
+            List<Map<String, Object>> detalleOmitidos,
+            Set<String> codigosAfectados,
+            Set<VentaResumenService.Periodo> periodos,
+            List<Venta> escritas,
+            List<Map<String, Object>> codigosNoEncontrados
+    ) {
+        // 1) Recolectar dominios
+        Set<String> codBarras   = new HashSet<>();
+        Set<String> codPdvs     = new HashSet<>();
+        Set<Integer> anios      = new HashSet<>();
+        Set<Integer> meses      = new HashSet<>();
+        Set<Integer> dias       = new HashSet<>();
+
+        for (RegistroFila rf : chunk) {
+            if (rf.codBarra != null) codBarras.add(rf.codBarra);
+            if (rf.codPdv != null)   codPdvs.add(rf.codPdv);
+            anios.add(rf.fecha.getYear());
+            meses.add(rf.fecha.getMonthValue());
+            dias.add(rf.fecha.getDayOfMonth());
+        }
+
+        // 2) Prefetch SAP por codBarra
+        Map<String, String> sapByCb = prefetchSapByCodBarra(codBarras);
+
+        // 3) Clientes ya resueltos/creados (con ID) antes de abrir la transacción del chunk
+        Map<String, Cliente> clientes = clientesChunk.porPar;
+        Map<String, Cliente> clientesPorCodigo = clientesChunk.porCodigo;
 
         // 4) Prefetch de ventas EXISTENTES por clienteId
         Set<Long> clienteIds = new HashSet<>();
         for (Cliente c : clientesPorCodigo.values()) if (c.getId() != null) clienteIds.add(c.getId());
-        Map<String, Venta> ventasExistentes = prefetchVentas(anios, meses, codBarras, codPdvs, clienteIds);
+        // Claves empaquetadas con el día, igual que UX_venta_clave_natural; los códigos valen solo para este chunk
+        DiccionarioCodigos codigos = new DiccionarioCodigos(codBarras.size() + codPdvs.size());
+        MapaClaveVenta<Long> idsExistentes = prefetchIdsVentas(anios, meses, dias, codBarras, codPdvs, clienteIds, codigos);
+        List<Venta> pendientesUpdate = new ArrayList<>();
+        // Altas del chunk por clave: van juntas a VentaBulkService.insertar (bulk copy) al final
+        MapaClaveVenta<Venta> nuevas = new MapaClaveVenta<>(chunk.size());
 
-        int insertados = 0, actualizados = 0, omitidos = 0, i = 0;
+        int insertados = 0, actualizados = 0, omitidos = 0;
 
         for (RegistroFila rf : chunk) {
             // 4.1 Resolver cliente para la fila (ID real)
@@ -344,23 +566,32 @@ public class TemplateGeneralService {
                 continue;
             }
 
-            // 4.3 Upsert *por cliente_id* + (anio, mes, codBarra, codPdv)
-            String key = buildKey(rf.fecha.getYear(), rf.fecha.getMonthValue(), rf.codBarra, rf.codPdv, clienteFila.getId());
-            Venta v = ventasExistentes.get(key);
-            boolean esNuevo = false;
-
-            if (v == null) {
-                v = new Venta();
-                v.setAnio(rf.fecha.getYear());
-                v.setMes(rf.fecha.getMonthValue());
-                v.setCodBarra(rf.codBarra);
-                v.setCodPdv(rf.codPdv);
-                v.setCliente(clienteFila); // <<< CLAVE: asigna cliente con ID real
-                esNuevo = true;
-            } else {
-                // reafirma cliente por si la entidad estaba detach/limpia
-                v.setCliente(clienteFila);
+            // 4.3 Upsert *por cliente_id* + (anio, mes, dia, codBarra, codPdv)
+            String fueraDeRango = VentaNaturalKey.fueraDeRango(clienteFila.getId(),
+                    rf.fecha.getYear(), rf.fecha.getMonthValue(), rf.fecha.getDayOfMonth());
+            if (fueraDeRango != null) {
+                omitidos++;
+                detalleOmitidos.add(Map.of(
+                        "fila", rf.excelFila,
+                        "codBarra", rf.codBarra,
+                        "codPdv", Objects.toString(rf.codPdv, ""),
+                        "motivo", fueraDeRango
+                ));
+                continue;
             }
+            long num = numerosFila(clienteFila.getId(), rf.fecha);
+            long cod = VentaNaturalKey.codigos(codigos.codigo(rf.codBarra), codigos.codigo(rf.codPdv));
+            Long idExistente = idsExistentes.get(num, cod);
+            boolean esNuevo = idExistente == null && !nuevas.containsKey(num, cod);
+
+            // Existentes: solo se conoce el id; la fila se actualiza por id en bloque al final del chunk
+            Venta v = new Venta();
+            v.setId(idExistente);
+            v.setAnio(rf.fecha.getYear());
+            v.setMes(rf.fecha.getMonthValue());
+            v.setCodBarra(rf.codBarra);
+            v.setCodPdv(rf.codPdv);
+            v.setCliente(clienteFila); // <<< CLAVE: asigna cliente con ID real
 
             v.setDia(rf.fecha.getDayOfMonth());
             v.setMarca(rf.marca);
@@ -375,9 +606,13 @@ public class TemplateGeneralService {
             v.setUnidadesDiarias("0");
             v.setCodigoSap(sap);
 
+            if (idExistente == null) {
+                nuevas.put(num, cod, v); // repetida en el chunk: gana la última, como el UPDATE de antes
+            } else {
+                pendientesUpdate.add(v);
+            }
+
             if (esNuevo) {
-                em.persist(v);
-                ventasExistentes.put(key, v);
                 insertados++;
                 detalleInsertados.add(Map.of(
                         "fila", rf.excelFila,
@@ -398,29 +633,63 @@ public class TemplateGeneralService {
             }
 
             codigosAfectados.add(rf.codBarra);
-
-            if (++i % BATCH_SIZE == 0) {
-                em.flush();
-                em.clear();
-            }
+            periodos.add(new VentaResumenService.Periodo(clienteFila.getId(), rf.fecha.getYear(), rf.fecha.getMonthValue()));
+            escritas.add(v);
         }
 
-        em.flush();
+        ventaBulkService.insertar(new ArrayList<>(nuevas.valores()));
+        actualizarPorId(pendientesUpdate);
         em.clear();
 
         return new int[]{insertados, actualizados, omitidos};
     }
 
+    // Sin columnas de la clave natural: la fila se encontró por esa clave y no cambia de día
+    private static final String SQL_UPDATE_POR_ID =
+            "UPDATE [SELLOUT].[dbo].[venta] SET cliente_id = ?, marca = ?, nombre_producto = ?, " +
+            "descripcion = ?, pdv = ?, ciudad = ?, venta_unidad = ?, venta_dolares = ?, stock_unidades = ?, " +
+            "stock_dolares = ?, unidades_diarias = ?, codigo_sap = ? WHERE id = ?";
+
+    /** UPDATE por id en lotes JDBC, dentro de la transacción del chunk (no toca producto_id). */
+    private void actualizarPorId(List<Venta> ventas) {
+        if (ventas.isEmpty()) return;
+        em.unwrap(Session.class).doWork(con -> {
+            try (PreparedStatement ps = con.prepareStatement(SQL_UPDATE_POR_ID)) {
+                int n = 0;
+                for (Venta v : ventas) {
+                    ps.setLong(1, v.getCliente().getId());
+                    ps.setString(2, v.getMarca());
+                    ps.setString(3, v.getNombreProducto());
+                    ps.setString(4, v.getDescripcion());
+                    ps.setString(5, v.getPdv());
+                    ps.setString(6, v.getCiudad());
+                    ps.setDouble(7, v.getVentaUnidad());
+                    ps.setDouble(8, v.getVentaDolares());
+                    ps.setDouble(9, v.getStockUnidades());
+                    ps.setDouble(10, v.getStockDolares());
+                    ps.setString(11, v.getUnidadesDiarias());
+                    ps.setString(12, v.getCodigoSap());
+                    ps.setLong(13, v.getId());
+                    ps.addBatch();
+                    if (++n % BATCH_SIZE == 0) ps.executeBatch();
+                }
+                if (n % BATCH_SIZE != 0) ps.executeBatch();
+            }
+        });
+    }
+
     // ==== Prefetch helpers (ahora con cliente_id en la clave) ====
 
-    @SuppressWarnings("unchecked")
-    private Map<String, Venta> prefetchVentas(Set<Integer> anios, Set<Integer> meses, Set<String> codBarras,
-                                              Set<String> codPdvs, Set<Long> clienteIds) {
-        Map<String, Venta> out = new HashMap<>();
+    /** Clave natural -> id de las ventas existentes; proyección escalar, sin hidratar entidades. */
+    private MapaClaveVenta<Long> prefetchIdsVentas(Set<Integer> anios, Set<Integer> meses, Set<Integer> dias,
+                                                   Set<String> codBarras, Set<String> codPdvs, Set<Long> clienteIds,
+                                                   DiccionarioCodigos codigos) {
+        MapaClaveVenta<Long> out = new MapaClaveVenta<>();
         if (anios.isEmpty() || meses.isEmpty() || codBarras.isEmpty() || clienteIds.isEmpty()) return out;
 
         List<Integer> aniosL = new ArrayList<>(anios);
         List<Integer> mesesL = new ArrayList<>(meses);
+        List<Integer> diasL  = new ArrayList<>(dias);
         List<String> barrasL = new ArrayList<>(codBarras);
         List<String> pdvsL   = new ArrayList<>(codPdvs);
         List<Long>   clientesL = new ArrayList<>(clienteIds);
@@ -430,43 +699,52 @@ public class TemplateGeneralService {
             for (List<String> pdvSub : partitions(pdvsChunk, IN_LIMIT)) {
                 for (List<Long> clientesSub : partitions(clientesL, IN_LIMIT)) {
                     String jpql =
-                            "SELECT v FROM Venta v " +
-                            "WHERE v.anio IN :anios AND v.mes IN :meses " +
+                            "SELECT v.id, v.anio, v.mes, v.dia, v.codBarra, v.codPdv, v.cliente.id FROM Venta v " +
+                            "WHERE v.anio IN :anios AND v.mes IN :meses AND v.dia IN :dias " +
                             "AND v.codBarra IN :barras " +
                             (codPdvs.isEmpty()
                                     ? "AND v.codPdv IS NULL "
                                     : "AND (v.codPdv IN :pdvs OR v.codPdv IS NULL) ") +
                             "AND v.cliente.id IN :clientes";
 
-                    var q = em.createQuery(jpql, Venta.class)
+                    var q = em.createQuery(jpql, Object[].class)
                             .setParameter("anios", aniosL)
                             .setParameter("meses", mesesL)
+                            .setParameter("dias", diasL)
                             .setParameter("barras", barrasChunk)
                             .setParameter("clientes", clientesSub);
 
                     if (!codPdvs.isEmpty()) q.setParameter("pdvs", pdvSub);
 
-                    List<Venta> res = q.getResultList();
-                    for (Venta v : res) {
-                        String k = buildKey(v.getAnio(), v.getMes(), v.getCodBarra(), v.getCodPdv(),
-                                (v.getCliente() != null ? v.getCliente().getId() : null));
-                        out.put(k, v);
-                    }
-                    em.clear();
+                    indexarExistentes(q.getResultList(), codigos, out);
                 }
             }
         }
         return out;
     }
 
-    private static String buildKey(Integer anio, Integer mes, String codBarra, String codPdv, Long clienteId) {
-        return (anio == null ? "" : anio) + "|" +
-               (mes == null ? "" : mes) + "|" +
-               (codBarra == null ? "" : codBarra.trim()) + "|" +
-               (codPdv == null ? "" : codPdv.trim()) + "|" +
-               (clienteId == null ? "" : clienteId);
+    /**
+     * Filas (id, anio, mes, dia, codBarra, codPdv, clienteId) por su clave natural completa, la misma
+     * que {@link #numerosFila} arma para cada fila del Excel.
+     */
+    static void indexarExistentes(List<Object[]> filas, DiccionarioCodigos codigos, MapaClaveVenta<Long> out) {
+        for (Object[] r : filas) {
+            Integer dia = (Integer) r[3];
+            // Una fila antigua fuera de rango no puede coincidir con ninguna clave válida del Excel
+            int d = dia == null ? 0 : dia;
+            if (VentaNaturalKey.fueraDeRango((Long) r[6], (Integer) r[1], (Integer) r[2], d) != null) continue;
+            out.put(VentaNaturalKey.numeros((Long) r[6], (Integer) r[1], (Integer) r[2], d),
+                    VentaNaturalKey.codigos(codigos.codigo((String) r[4]), codigos.codigo((String) r[5])),
+                    (Long) r[0]);
+        }
     }
 
+    /** Parte numérica de la clave natural de una fila: (cliente, anio, mes, dia) de su fecha. */
+    static long numerosFila(Long clienteId, LocalDate fecha) {
+        return VentaNaturalKey.numeros(clienteId, fecha.getYear(), fecha.getMonthValue(), fecha.getDayOfMonth());
+    }
+
+
     private static String soloCod(String codCliente) {
         return codCliente == null ? null : codCliente.trim().toUpperCase(Locale.ROOT);
     }
@@ -476,6 +754,16 @@ public class TemplateGeneralService {
         Map<String, String> out = new HashMap<>();
         if (codBarras.isEmpty()) return out;
 
+        // Catálogo en memoria: evita la consulta al linked server
+        if (sapCatalog.isCargado()) {
+            for (String cb : codBarras) {
+                sapCatalog.buscar(cb).ifPresent(p -> {
+                    if (p.codProd() != null) out.put(cb, p.codProd());
+                });
+            }
+            return out;
+        }
+
         List<String> barrasL = new ArrayList<>(codBarras);
 
         for (List<String> chunk : partitions(barrasL, IN_LIMIT)) {
@@ -650,29 +938,32 @@ public class TemplateGeneralService {
     private Optional<Sheet> getHojaBase(Workbook wb) {
         for (int i = 0; i < wb.getNumberOfSheets(); i++) {
             Sheet s = wb.getSheetAt(i);
-            if ("BASE".equals(normalizar(s.getSheetName()))) return Optional.of(s);
+            if ("BASE".equals(TextNormalizer.mayusculas(s.getSheetName()))) return Optional.of(s);
         }
         return Optional.ofNullable(wb.getSheet(HOJA));
     }
 
-    private List<String> leerEncabezados(Sheet sheet) {
-        Row row = sheet.getRow(FILA_ENCAB);
-        List<String> headers = new ArrayList<>();
+    /** Copia las celdas B..N de una fila DOM al mismo arreglo que entrega el lector por eventos. */
+    private Object[] leerCeldas(Row row) {
+        if (row == null) return null;
+        Object[] celdas = new Object[COL_FIN + 1];
         for (int c = COL_INI; c <= COL_FIN; c++) {
-            headers.add(normalizar(getCellText(row, c)));
+            celdas[c] = getCellRaw(row, c);
         }
-        return headers;
+        return celdas;
+    }
+
+    private static Object celda(Object[] celdas, int colIndex) {
+        return (celdas == null || colIndex >= celdas.length) ? null : celdas[colIndex];
     }
 
-    private String getCellText(Row row, int colIndex) {
-        Object raw = getCellRaw(row, colIndex);
+    private static String textoDe(Object raw) {
         if (raw == null) return null;
         String s = String.valueOf(raw).trim();
         return s.isEmpty() ? null : s;
     }
 
-    private Integer getCellInteger(Row row, int colIndex) {
-        Object raw = getCellRaw(row, colIndex);
+    private static Integer enteroDe(Object raw) {
         if (raw == null) return null;
         try {
             if (raw instanceof Number) return ((Number) raw).intValue();
@@ -684,8 +975,7 @@ public class TemplateGeneralService {
         }
     }
 
-    private Double getCellDouble(Row row, int colIndex) {
-        Object raw = getCellRaw(row, colIndex);
+    private static Double decimalDe(Object raw) {
         if (raw == null) return null;
         try {
             if (raw instanceof Number) return ((Number) raw).doubleValue();
@@ -719,8 +1009,7 @@ public class TemplateGeneralService {
         }
     }
 
-    private LocalDate getCellDate(Row row, int colIndex) {
-        Object raw = getCellRaw(row, colIndex);
+    private LocalDate fechaDe(Object raw, ReconocedorFechas fechas) {
         if (raw == null) return null;
         try {
             if (raw instanceof Date) {
@@ -736,26 +1025,12 @@ public class TemplateGeneralService {
             if (spaceIdx > 0) s = s.substring(0, spaceIdx);
             int tIdx = s.indexOf('T');
             if (tIdx > 0) s = s.substring(0, tIdx);
-            return tryParseLocalDate(s);
+            return fechas.leer(s);
         } catch (Exception e) {
             return null;
         }
     }
 
-    private LocalDate tryParseLocalDate(String s) {
-        for (var f : DATE_FORMATS) {
-            try { return LocalDate.parse(s, f); } catch (Exception ignore) {}
-        }
-        return null;
-    }
-
-    private static String normalizar(String s) {
-        if (s == null) return null;
-        return Normalizer.normalize(s.trim().replaceAll("\\s+", " "), Normalizer.Form.NFD)
-                .replaceAll("\\p{InCombiningDiacriticalMarks}+", "")
-                .toUpperCase(Locale.ROOT);
-    }
-
     private static boolean isBlank(String s) { return s == null || s.trim().isEmpty(); }
     private static String safeTrim(String s) { return s == null ? null : s.trim(); }
 
@@ -768,18 +1043,125 @@ public class TemplateGeneralService {
         return out;
     }
 
+    // =========================
+    //   TXT DE INCIDENCIAS
+    // =========================
+
+    /** TXT de incidencias de una carga (resumen, omitidos, insertados, actualizados y códigos afectados). */
+    public String construirIncidenciasTxt(Map<String, Object> res, String nombreArchivo) {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+
+        // Portada
+        sb.append("INCIDENCIAS DETECTADAS - TEMPLATE GENERAL (CU4)").append(nl);
+        sb.append("Archivo: ").append(nombreArchivo).append(nl);
+        sb.append("Generado: ")
+        .append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
+        .append(nl);
+        sb.append("----").append(nl);
+
+        // Resumen
+        sb.append("[RESUMEN]").append(nl);
+        sb.append("ok=").append(res.getOrDefault("ok", false)).append(nl);
+        sb.append("filasLeidas=").append(res.getOrDefault("filasLeidas", 0)).append(nl);
+        sb.append("filasConCodCliente=").append(res.getOrDefault("filasConCodCliente", 0)).append(nl);
+        sb.append("insertados=").append(res.getOrDefault("insertados", 0)).append(nl);
+        sb.append("actualizados=").append(res.getOrDefault("actualizados", 0)).append(nl);
+        sb.append("omitidos=").append(res.getOrDefault("omitidos", 0)).append(nl);
+        sb.append("errores=").append(res.getOrDefault("errores", 0)).append(nl);
+        sb.append("----").append(nl).append(nl);
+
+        // Errores/advertencias generales
+        sb.append("[INCIDENCIAS GENERALES]").append(nl);
+        Object inc = res.get("incidencias");
+        if (inc instanceof List<?> lst && !lst.isEmpty()) {
+            for (Object it : lst) sb.append("- ").append(String.valueOf(it)).append(nl);
+        } else {
+            sb.append("Sin incidencias.").append(nl);
+        }
+        sb.append(nl);
+
+        // Detalle: Omitidos
+        sb.append("[DETALLE DE FILAS OMITIDAS]").append(nl);
+        List<?> omitidos = (List<?>) res.getOrDefault("detalleOmitidos", List.of());
+        if (omitidos.isEmpty()) {
+            sb.append("Sin filas omitidas.").append(nl);
+        } else {
+            sb.append("Fila\tCODBARRA\tCOD_PDV\tMotivo").append(nl);
+            for (Object o : omitidos) {
+                if (o instanceof Map<?, ?> m) {
+                    sb.append(Objects.toString(m.get("fila"), ""))
+                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
+                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
+                    .append('\t').append(Objects.toString(m.get("motivo"), ""))
+                    .append(nl);
+                }
+            }
+        }
+        sb.append(nl);
+
+        // Detalle: Insertados
+        sb.append("[DETALLE DE FILAS INSERTADAS]").append(nl);
+        List<?> insertados = (List<?>) res.getOrDefault("detalleInsertados", List.of());
+        if (insertados.isEmpty()) {
+            sb.append("Sin filas insertadas.").append(nl);
+        } else {
+            sb.append("Fila\tCODBARRA\tCOD_PDV\tVentaUnd\tVentaUSD").append(nl);
+            for (Object o : insertados) {
+                if (o instanceof Map<?, ?> m) {
+                    sb.append(Objects.toString(m.get("fila"), ""))
+                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
+                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
+                    .append('\t').append(Objects.toString(m.get("ventaUnidades"), ""))
+                    .append('\t').append(Objects.toString(m.get("ventaUSD"), ""))
+                    .append(nl);
+                }
+            }
+        }
+        sb.append(nl);
+
+        // Detalle: Actualizados
+        sb.append("[DETALLE DE FILAS ACTUALIZADAS]").append(nl);
+        List<?> actualizados = (List<?>) res.getOrDefault("detalleActualizados", List.of());
+        if (actualizados.isEmpty()) {
+            sb.append("Sin filas actualizadas.").append(nl);
+        } else {
+            sb.append("Fila\tCODBARRA\tCOD_PDV\tVentaUnd\tVentaUSD").append(nl);
+            for (Object o : actualizados) {
+                if (o instanceof Map<?, ?> m) {
+                    sb.append(Objects.toString(m.get("fila"), ""))
+                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
+                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
+                    .append('\t').append(Objects.toString(m.get("ventaUnidades"), ""))
+                    .append('\t').append(Objects.toString(m.get("ventaUSD"), ""))
+                    .append(nl);
+                }
+            }
+        }
+        sb.append(nl);
+
+        // Listado de códigos afectados
+        sb.append("[CÓDIGOS AFECTADOS EN ESTA CARGA (CODBARRA)]").append(nl);
+        List<?> codigos = (List<?>) res.getOrDefault("codigosAfectados", List.of());
+        if (codigos.isEmpty()) {
+            sb.append("Ninguno.").append(nl);
+        } else {
+            for (Object c : codigos) sb.append("- ").append(String.valueOf(c)).append(nl);
+        }
+
+        return sb.toString();
+    }
+
     // =========================
     //   BORRADO MASIVO 5000
     // =========================
 
     /**
-     * Elimina HASTA 5000 ventas según una selección explícita del front (claves).
-     * Internamente divide en sublotes de 500 filas por sentencia (2k params) dentro
+     * Elimina HASTA 5000 ventas según una selección explícita del front (claves naturales).
+     * Cada clave trae su cliente: el JOIN entra por (cliente_id, anio, mes, ...) sobre el índice
+     * de la clave natural en lugar de recorrer venta, y nunca borra ventas de otro cliente.
+     * Internamente divide en sublotes de 300 filas por sentencia (1800 params) dentro
      * de UNA sola transacción.
-     *
-     * Nota: mantiene la firma original con KeyVenta (sin cliente),
-     *       ya que este flujo es usado desde UI de selección. Si necesitas
-     *       discriminar por cliente aquí también, podemos añadir una variante.
      */
     public Map<String, Object> eliminarVentasSeleccionadas(List<KeyVenta> seleccion) {
         Map<String, Object> out = new LinkedHashMap<>();
@@ -789,125 +1171,93 @@ public class TemplateGeneralService {
             out.put("mensaje", "No hay registros seleccionados.");
             return out;
         }
+        for (KeyVenta k : seleccion) {
+            if (k.clienteId == null || k.codBarra == null || k.codBarra.isBlank()) {
+                throw new IllegalArgumentException("Cada clave debe indicar clienteId y codBarra.");
+            }
+        }
         int objetivo = Math.min(seleccion.size(), DELETE_UI_BATCH);
 
-        int[] totalEliminados = new int[]{0};
-        txTemplate.execute(status -> {
+        VentaBorradoService.Salida salida = new VentaBorradoService.Salida();
+        txTemplate.executeWithoutResult(status -> em.unwrap(Session.class).doWork(con -> {
             List<KeyVenta> ventana = seleccion.subList(0, objetivo);
             for (List<KeyVenta> chunk : partitions(ventana, FILAS_POR_SENTENCIA)) {
-                totalEliminados[0] += deleteChunkByValues(chunk);
-                if (totalEliminados[0] >= objetivo) break;
+                deleteChunkByValues(con, chunk, salida);
             }
-            return null;
-        });
+        }));
+        if (salida.eliminados > 0) {
+            ventaResumenService.recalcularSinFallar(salida.periodos);
+            ventaCatalogo.invalidar(salida.clientes);
+        }
 
         out.put("ok", true);
         out.put("solicitados", seleccion.size());
         out.put("procesadosMaximo", objetivo);
-        out.put("eliminados", totalEliminados[0]);
+        out.put("eliminados", salida.eliminados);
         out.put("mensaje", "Eliminación masiva por selección realizada en tandas internas (máx. 5000).");
         return out;
     }
 
-    /** Borra un sublote usando tabla derivada VALUES y JOIN (sin cliente para mantener compatibilidad actual). */
-    private int deleteChunkByValues(List<KeyVenta> chunk) {
-        if (chunk == null || chunk.isEmpty()) return 0;
-
-        int maxFilasSeguras = Math.min(chunk.size(), SQLSERVER_PARAM_LIMIT / PARAMS_POR_FILA);
-        List<KeyVenta> safe = chunk.subList(0, maxFilasSeguras);
+    /**
+     * Borra un sublote con una tabla derivada VALUES unida por la clave natural
+     * (cliente_id, anio, mes, dia, cod_barra, cod_pdv); dia null = todos los días del mes.
+     */
+    private static void deleteChunkByValues(Connection con, List<KeyVenta> chunk,
+                                            VentaBorradoService.Salida salida) throws SQLException {
+        if (chunk == null || chunk.isEmpty()) return;
 
         StringBuilder sb = new StringBuilder();
         sb.append("DELETE v ")
-          .append("FROM Venta v ")
+          .append("OUTPUT deleted.cliente_id, deleted.anio, deleted.mes ")
+          .append("FROM [SELLOUT].[dbo].[venta] v ")
           .append("JOIN (VALUES ");
 
-        for (int i = 0; i < safe.size(); i++) {
+        for (int i = 0; i < chunk.size(); i++) {
             if (i > 0) sb.append(",");
-            sb.append("(?, ?, ?, ?)");
+            sb.append("(?, ?, ?, ?, ?, ?)");
         }
-        sb.append(") AS T(anio, mes, codBarra, codPdv) ")
-          .append("ON v.anio = T.anio ")
+        sb.append(") AS T(cliente_id, anio, mes, dia, cod_barra, cod_pdv) ")
+          .append("ON v.cliente_id = T.cliente_id ")
+          .append("AND v.anio = T.anio ")
           .append("AND v.mes = T.mes ")
-          .append("AND v.codBarra = T.codBarra ")
-          .append("AND ( (v.codPdv = T.codPdv) OR (v.codPdv IS NULL AND T.codPdv IS NULL) )");
-
-        Query q = em.createNativeQuery(sb.toString());
-
-        int idx = 1;
-        for (KeyVenta k : safe) {
-            q.setParameter(idx++, k.anio);
-            q.setParameter(idx++, k.mes);
-            q.setParameter(idx++, k.codBarra);
-            if (k.codPdv == null || k.codPdv.trim().isEmpty()) {
-                q.setParameter(idx++, null);
-            } else {
-                q.setParameter(idx++, k.codPdv);
+          .append("AND (T.dia IS NULL OR v.dia = T.dia) ")
+          .append("AND v.cod_barra = T.cod_barra ")
+          .append("AND ( (v.cod_pdv = T.cod_pdv) OR (v.cod_pdv IS NULL AND T.cod_pdv IS NULL) )");
+
+        try (PreparedStatement ps = con.prepareStatement(sb.toString())) {
+            int idx = 1;
+            for (KeyVenta k : chunk) {
+                ps.setLong(idx++, k.clienteId);
+                ps.setInt(idx++, k.anio);
+                ps.setInt(idx++, k.mes);
+                if (k.dia == null) ps.setNull(idx++, Types.INTEGER);
+                else ps.setInt(idx++, k.dia);
+                ps.setString(idx++, k.codBarra.trim());
+                if (k.codPdv == null || k.codPdv.trim().isEmpty()) ps.setNull(idx++, Types.VARCHAR);
+                else ps.setString(idx++, k.codPdv.trim());
             }
+            VentaBorradoService.leerSalida(ps, salida);
         }
-        int afectadas = q.executeUpdate();
-        em.clear();
-        return afectadas;
-    }
-
-    /**
-     * Elimina por filtros (año/mes/marca/pdv) en tandas de TOP (5000),
-     * repitiendo hasta que no queden más o hasta alcanzar maxTotal (si se indica).
-     */
-    public Map<String, Object> eliminarPorFiltros(
-            Integer anio, Integer mes, String marca, String codPdv,
-            Integer maxTotal // puede ser null => sin tope, sólo por tandas de 5000
-    ) {
-        Map<String, Object> out = new LinkedHashMap<>();
-        int total = 0;
-        boolean seguir = true;
-
-        while (seguir) {
-            StringBuilder where = new StringBuilder(" WHERE 1=1 ");
-            List<Object> params = new ArrayList<>();
-
-            if (anio != null) { where.append(" AND v.anio = ? "); params.add(anio); }
-            if (mes  != null)  { where.append(" AND v.mes  = ? "); params.add(mes); }
-            if (marca != null && !marca.isBlank()) {
-                where.append(" AND v.marca = ? "); params.add(marca.trim());
-            }
-            if (codPdv != null && !codPdv.isBlank()) {
-                where.append(" AND v.codPdv = ? "); params.add(codPdv.trim());
-            }
-
-            String sql = "DELETE TOP (" + DELETE_UI_BATCH + ") FROM Venta v " + where;
-            Query q = em.createNativeQuery(sql);
-            for (int i = 0; i < params.size(); i++) q.setParameter(i + 1, params.get(i));
-
-            int afectadas = txTemplate.execute(status -> {
-                int n = q.executeUpdate();
-                em.clear();
-                return n;
-            });
-
-            total += afectadas;
-            boolean alcanzadoTope = (maxTotal != null && total >= maxTotal);
-            seguir = (afectadas == DELETE_UI_BATCH) && !alcanzadoTope;
-        }
-
-        out.put("ok", true);
-        out.put("eliminados", total);
-        out.put("mensaje", "Eliminación por filtros completada en tandas de 5000.");
-        return out;
     }
 
     // =========================
     //   Tipos auxiliares
     // =========================
 
+    /** Clave natural de una venta para el borrado por selección; dia null = todo el mes. */
     public static final class KeyVenta {
+        final Long clienteId;
         final int anio;
         final int mes;
+        final Integer dia;
         final String codBarra;
         final String codPdv;
 
-        public KeyVenta(int anio, int mes, String codBarra, String codPdv) {
+        public KeyVenta(Long clienteId, int anio, int mes, Integer dia, String codBarra, String codPdv) {
+            this.clienteId = clienteId;
             this.anio = anio;
             this.mes = mes;
+            this.dia = dia;
             this.codBarra = codBarra;
             this.codPdv = codPdv;
         }
@@ -918,12 +1268,89 @@ public class TemplateGeneralService {
             KeyVenta k = (KeyVenta) o;
             return anio == k.anio &&
                     mes == k.mes &&
+                    Objects.equals(clienteId, k.clienteId) &&
+                    Objects.equals(dia, k.dia) &&
                     Objects.equals(codBarra, k.codBarra) &&
                     Objects.equals(codPdv, k.codPdv);
         }
 
         @Override public int hashCode() {
-            return Objects.hash(anio, mes, codBarra, codPdv);
+            return Objects.hash(clienteId, anio, mes, dia, codBarra, codPdv);
+        }
+    }
+
+    /** Acumuladores de una carga; compartidos por el modo DOM y el modo por eventos. */
+    private static final class EstadoCarga {
+        final CargaProgreso progreso;
+
+        // Modo paralelo (null => secuencial)
+        final List<List<RegistroFila>> carriles;
+        final List<CompletableFuture<Void>> colas;
+        final Semaphore enVuelo;
+        final int tamanioChunkCarril;
+        final AtomicReference<Throwable> falla = new AtomicReference<>();
+
+        int insertados, actualizados, omitidos;
+        int filasLeidas, filasConCodCliente;
+        int vaciosConsecutivos;
+        boolean encabezadosValidados;
+
+        final List<String> incidencias = new ArrayList<>();
+        final List<Map<String, Object>> codigosNoEncontrados = new ArrayList<>();
+        final List<Map<String, Object>> detalleOmitidos = new ArrayList<>();
+        final List<Map<String, Object>> detalleInsertados = new ArrayList<>();
+        final List<Map<String, Object>> detalleActualizados = new ArrayList<>();
+        final Set<String> codigosAfectados = new TreeSet<>();
+        final Set<VentaResumenService.Periodo> periodos = new HashSet<>();
+        final List<RegistroFila> buffer = new ArrayList<>(CHUNK_SIZE);
+        // Omisiones detectadas al parsear: solo las toca el hilo que parsea y se vuelcan al estado
+        // compartido con volcarLectura, cuando los carriles ya terminaron
+        int omitidosLectura;
+        final List<Map<String, Object>> detalleOmitidosLectura = new ArrayList<>();
+        final List<Map<String, Object>> noEncontradosLectura = new ArrayList<>();
+        // Solo lo usa el hilo que parsea (consumirFila); los carriles reciben filas ya armadas
+        final DiccionarioTextos textos = new DiccionarioTextos();
+        final ReconocedorFechas fechas = new ReconocedorFechas(ReconocedorFechas.Perfil.GENERAL);
+
+        EstadoCarga(CargaProgreso progreso, int carriles, int chunksEnVuelo) {
+            this.progreso = progreso;
+            if (carriles <= 1) {
+                this.carriles = null;
+                this.colas = null;
+                this.enVuelo = null;
+                this.tamanioChunkCarril = CHUNK_SIZE;
+                return;
+            }
+            // El CHUNK_SIZE se reparte entre carriles: en memoria hay ~CHUNK_SIZE filas acumulándose
+            // más, como máximo, chunksEnVuelo chunks de carril despachados.
+            this.tamanioChunkCarril = Math.max(BATCH_SIZE, CHUNK_SIZE / carriles);
+            this.carriles = new ArrayList<>(carriles);
+            this.colas = new ArrayList<>(carriles);
+            for (int c = 0; c < carriles; c++) {
+                this.carriles.add(new ArrayList<>(tamanioChunkCarril));
+                this.colas.add(CompletableFuture.completedFuture(null));
+            }
+            this.enVuelo = new Semaphore(chunksEnVuelo);
+        }
+
+        /** Suma las omisiones del parser al estado compartido; llamar después de esperar los carriles. */
+        void volcarLectura() {
+            omitidos += omitidosLectura;
+            detalleOmitidos.addAll(detalleOmitidosLectura);
+            codigosNoEncontrados.addAll(0, noEncontradosLectura);
+            omitidosLectura = 0;
+            detalleOmitidosLectura.clear();
+            noEncontradosLectura.clear();
+        }
+    }
+
+    private static final class ClientesChunk {
+        final Map<String, Cliente> porPar;
+        final Map<String, Cliente> porCodigo;
+
+        ClientesChunk(Map<String, Cliente> porPar, Map<String, Cliente> porCodigo) {
+            this.porPar = porPar;
+            this.porCodigo = porCodigo;
         }
     }
 
@@ -0,0 +1,123 @@
+package com.manamer.backend.business.sellout.service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Normalización de textos (encabezados, códigos y nombres de cliente) en una sola pasada.
+ *
+ * Cada modo tiene una tabla precalculada para Latin-1 y Latin Extended-A/B (U+0000..U+024F) con
+ * el carácter ya plegado: sin tilde y en la caja del modo. La tabla se arma al cargar la clase
+ * aplicando carácter por carácter la misma cadena NFD + replaceAll + toXxxCase que se usaba antes,
+ * así el resultado es el mismo sin regex ni Normalizer por llamada. Las marcas combinantes
+ * (U+0300..U+036F) se descartan. Un carácter fuera de la tabla, o que se expande al cambiar de caja
+ * (ß → SS), manda el texto completo por la implementación original.
+ */
+public final class TextNormalizer {
+
+    private static final int TABLA = 0x250;
+    private static final char DESCARTAR = '\uFFFF';
+    private static final char LENTO = '\uFFFE';
+
+    private static final Modo CLAVE = new Modo(
+            c -> {
+                if (Character.isWhitespace(c) || Character.isSpaceChar(c) || c == '_') return " ";
+                if (c == '.' || c == ',' || c == '"' || c == '\'') return "";
+                String t = sinMarcas(Character.toString(c)).toLowerCase(Locale.ROOT);
+                return (t.length() == 1 && t.charAt(0) > 0x20 && t.charAt(0) < 0x7F) ? t : "";
+            },
+            null, true);
+
+    private static final Modo MAYUSCULAS = new Modo(
+            c -> sinMarcas(Character.toString(c)).toUpperCase(Locale.ROOT),
+            TextNormalizer::mayusculasLento, true);
+
+    private static final Modo MINUSCULAS = new Modo(
+            c -> sinMarcas(Character.toString(c)).toLowerCase(Locale.ROOT),
+            TextNormalizer::minusculasLento, false);
+
+    private TextNormalizer() {}
+
+    /**
+     * Clave de encabezado: minúsculas ASCII sin tildes, sin {@code . , " '} ni otros no ASCII,
+     * espacios y '_' colapsados en uno, sin espacios en los extremos.
+     */
+    public static String clave(String s) {
+        return s == null ? "" : plegar(s, CLAVE);
+    }
+
+    /** Sin tildes, MAYÚSCULAS, trim y espacios colapsados (claves de par cliente, nombres de hoja). */
+    public static String mayusculas(String s) {
+        return s == null ? null : plegar(s, MAYUSCULAS);
+    }
+
+    /** Sin tildes, minúsculas y trim (búsqueda de códigos de cliente). */
+    public static String minusculas(String s) {
+        return s == null ? null : plegar(s, MINUSCULAS);
+    }
+
+    // =========================
+    //          MOTOR
+    // =========================
+
+    private static String plegar(String s, Modo m) {
+        char[] out = new char[s.length()];
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            char f;
+            if (c < TABLA) f = m.tabla[c];
+            else if (c >= 0x300 && c <= 0x36F) f = DESCARTAR;
+            else f = m.lento == null ? DESCARTAR : LENTO;
+
+            if (f == DESCARTAR) continue;
+            if (f == LENTO) return m.lento.apply(s);
+            if (m.colapsar && esEspacio(f)) {
+                if (n > 0 && out[n - 1] == ' ') continue;
+                f = ' ';
+            }
+            out[n++] = f;
+        }
+        // trim() sobre la salida
+        int ini = 0;
+        while (ini < n && out[ini] <= ' ') ini++;
+        while (n > ini && out[n - 1] <= ' ') n--;
+        return new String(out, ini, n - ini);
+    }
+
+    /** Espacio en el sentido de {@code \s} de java.util.regex. */
+    private static boolean esEspacio(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    private static String sinMarcas(String s) {
+        return Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+    }
+
+    // Implementaciones originales: el camino lento y la definición de lo que calculan las tablas
+
+    private static String mayusculasLento(String s) {
+        return sinMarcas(s).trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+    }
+
+    private static String minusculasLento(String s) {
+        return sinMarcas(s).toLowerCase(Locale.ROOT).trim();
+    }
+
+    private static final class Modo {
+        final char[] tabla = new char[TABLA];
+        final UnaryOperator<String> lento;
+        final boolean colapsar;
+
+        Modo(IntFunction<String> plegarCaracter, UnaryOperator<String> lento, boolean colapsar) {
+            this.lento = lento;
+            this.colapsar = colapsar;
+            for (int c = 0; c < TABLA; c++) {
+                String t = plegarCaracter.apply(c);
+                tabla[c] = t.isEmpty() ? DESCARTAR : t.length() == 1 ? t.charAt(0) : LENTO;
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Acciones que deben ver lo ya confirmado (resumen mensual, catálogo): si hay una transacción en
+ * curso se ejecutan al confirmarse, y se descartan si hace rollback; sin transacción, de inmediato.
+ *
+ * En afterCommit la conexión del llamador sigue asociada al hilo: lo que acceda a la BD desde la
+ * acción debe abrir su propia transacción (REQUIRES_NEW).
+ */
+final class TrasCommit {
+
+    private TrasCommit() {}
+
+    static void ejecutar(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accion.run();
+            }
+        });
+    }
+}
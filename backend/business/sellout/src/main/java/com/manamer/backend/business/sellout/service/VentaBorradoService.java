@@ -0,0 +1,180 @@
+package com.manamer.backend.business.sellout.service;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Borrado masivo de ventas por lista de ids, por conjuntos.
+ *
+ * Hasta {@link #UMBRAL_TABLA_TEMPORAL} ids se usan DELETE ... WHERE id IN (...) de 2000 parámetros
+ * (por debajo del tope de 2100 de SQL Server); por encima, los ids se vuelcan a #ids y se borra
+ * con un JOIN en tandas. Con clienteId solo se borran las ventas de ese cliente: los ids de otro
+ * cliente se ignoran y se cuentan aparte. El OUTPUT del DELETE da los periodos tocados, con los
+ * que se recalcula el resumen mensual y se invalida el catálogo.
+ */
+@Service
+public class VentaBorradoService {
+
+    private static final Logger log = Logger.getLogger(VentaBorradoService.class.getName());
+
+    private static final int IDS_POR_SENTENCIA = 2_000;     // + 1 parámetro de cliente < 2100
+    static final int UMBRAL_TABLA_TEMPORAL = 20_000;
+    private static final int BORRADO_POR_TANDA = 50_000;    // filas por DELETE contra #ids
+
+    private final EntityManager em;
+    private final TransactionTemplate txTemplate;
+    private final VentaResumenService ventaResumenService;
+    private final VentaCatalogoService ventaCatalogo;
+
+    public VentaBorradoService(EntityManager entityManager,
+                               PlatformTransactionManager ptm,
+                               VentaResumenService ventaResumenService,
+                               VentaCatalogoService ventaCatalogo) {
+        this.em = entityManager;
+        this.txTemplate = new TransactionTemplate(ptm);
+        this.ventaResumenService = ventaResumenService;
+        this.ventaCatalogo = ventaCatalogo;
+    }
+
+    /** Conteos de un borrado masivo. */
+    public record Resultado(int solicitados, int eliminados, int sentencias, long ms) {
+
+        /** Ids que no existían o eran de otro cliente. */
+        public int ignorados() {
+            return solicitados - eliminados;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("ok", true);
+            out.put("solicitados", solicitados);
+            out.put("eliminados", eliminados);
+            out.put("ignorados", ignorados());
+            out.put("sentencias", sentencias);
+            out.put("tiempoMs", ms);
+            return out;
+        }
+    }
+
+    /** Acumulado de las filas devueltas por OUTPUT deleted.cliente_id, deleted.anio, deleted.mes. */
+    static final class Salida {
+        int eliminados, sentencias;
+        final Set<VentaResumenService.Periodo> periodos = new HashSet<>();
+        final Set<Long> clientes = new HashSet<>();
+    }
+
+    // =========================
+    //         BORRADO
+    // =========================
+
+    /**
+     * Borra las ventas con esos ids, en una transacción.
+     * @param clienteId si no es null, solo se borran las ventas de ese cliente
+     */
+    public Resultado eliminarPorIds(Collection<Long> ids, Long clienteId) {
+        List<Long> unicos = ids == null ? List.of()
+                : ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (unicos.isEmpty()) return new Resultado(0, 0, 0, 0);
+        long t0 = System.nanoTime();
+
+        Salida salida = txTemplate.execute(status -> em.unwrap(Session.class).doReturningWork(con ->
+                unicos.size() <= UMBRAL_TABLA_TEMPORAL
+                        ? borrarConIn(con, unicos, clienteId)
+                        : borrarConTablaTemporal(con, unicos, clienteId)));
+
+        if (salida.eliminados > 0) {
+            ventaResumenService.recalcularSinFallar(salida.periodos);
+            ventaCatalogo.invalidar(salida.clientes);
+        }
+
+        Resultado r = new Resultado(unicos.size(), salida.eliminados, salida.sentencias,
+                (System.nanoTime() - t0) / 1_000_000);
+        log.info(String.format("Borrado masivo de ventas%s: %d solicitados, %d eliminados, %d sentencias, %d ms",
+                clienteId != null ? " (cliente " + clienteId + ")" : "",
+                r.solicitados(), r.eliminados(), r.sentencias(), r.ms()));
+        return r;
+    }
+
+    private Salida borrarConIn(Connection con, List<Long> ids, Long clienteId) throws SQLException {
+        Salida salida = new Salida();
+        for (int i = 0; i < ids.size(); i += IDS_POR_SENTENCIA) {
+            List<Long> sub = ids.subList(i, Math.min(i + IDS_POR_SENTENCIA, ids.size()));
+            String sql = "DELETE FROM [SELLOUT].[dbo].[venta] " +
+                         "OUTPUT deleted.cliente_id, deleted.anio, deleted.mes " +
+                         "WHERE id IN (" + String.join(",", Collections.nCopies(sub.size(), "?")) + ")" +
+                         (clienteId != null ? " AND cliente_id = ?" : "");
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                int p = 1;
+                for (Long id : sub) ps.setLong(p++, id);
+                if (clienteId != null) ps.setLong(p, clienteId);
+                leerSalida(ps, salida);
+            }
+        }
+        return salida;
+    }
+
+    private Salida borrarConTablaTemporal(Connection con, List<Long> ids, Long clienteId) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute("IF OBJECT_ID('tempdb..#ids') IS NOT NULL DROP TABLE #ids; " +
+                       "CREATE TABLE #ids (id BIGINT NOT NULL PRIMARY KEY)");
+        }
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO #ids (id) VALUES (?)")) {
+            int n = 0;
+            for (Long id : ids) {
+                ps.setLong(1, id);
+                ps.addBatch();
+                if (++n % IDS_POR_SENTENCIA == 0) ps.executeBatch();
+            }
+            if (n % IDS_POR_SENTENCIA != 0) ps.executeBatch();
+        }
+
+        Salida salida = new Salida();
+        String sql = "DELETE TOP (" + BORRADO_POR_TANDA + ") v " +
+                     "OUTPUT deleted.cliente_id, deleted.anio, deleted.mes " +
+                     "FROM [SELLOUT].[dbo].[venta] v JOIN #ids i ON i.id = v.id" +
+                     (clienteId != null ? " WHERE v.cliente_id = ?" : "");
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            if (clienteId != null) ps.setLong(1, clienteId);
+            int antes;
+            do {
+                antes = salida.eliminados;
+                leerSalida(ps, salida);
+            } while (salida.eliminados - antes == BORRADO_POR_TANDA);
+        }
+        try (Statement st = con.createStatement()) {
+            st.execute("DROP TABLE #ids");
+        }
+        return salida;
+    }
+
+    /** Ejecuta un DELETE con OUTPUT deleted.cliente_id, deleted.anio, deleted.mes y acumula lo borrado. */
+    static void leerSalida(PreparedStatement ps, Salida salida) throws SQLException {
+        salida.sentencias++;
+        boolean hayResultado = ps.execute();
+        while (!hayResultado && ps.getUpdateCount() != -1) hayResultado = ps.getMoreResults();
+        if (!hayResultado) return;
+        try (ResultSet rs = ps.getResultSet()) {
+            while (rs.next()) {
+                salida.eliminados++;
+                long cli = rs.getLong(1);
+                Long clienteId = rs.wasNull() ? null : cli;
+                salida.clientes.add(clienteId);
+                int anio = rs.getInt(2);
+                boolean sinAnio = rs.wasNull();
+                int mes = rs.getInt(3);
+                if (!sinAnio && !rs.wasNull()) salida.periodos.add(new VentaResumenService.Periodo(clienteId, anio, mes));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Venta;
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fuente para SQLServerBulkCopy sobre las ventas ya parseadas: entrega cada fila (id reservado y
+ * luego {@link VentaBulkService#COLUMNAS}) sin pasar por un ResultSet ni por un archivo intermedio.
+ */
+class VentaBulkData implements ISQLServerBulkData {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int LARGO_TEXTO = 255; // varchar(255) de las columnas de texto de venta
+
+    private final transient Iterator<Venta> filas;
+    private transient Venta actual;
+    private long siguienteId;
+
+    /** Las filas reciben ids consecutivos desde {@code primerId} (ya reservados). */
+    VentaBulkData(List<Venta> filas, long primerId) {
+        this.filas = filas.iterator();
+        this.siguienteId = primerId;
+    }
+
+    @Override
+    public Set<Integer> getColumnOrdinals() {
+        Set<Integer> out = new LinkedHashSet<>();
+        for (int i = 1; i <= VentaBulkService.TIPOS.length + 1; i++) out.add(i);
+        return out;
+    }
+
+    @Override
+    public String getColumnName(int columna) {
+        return columna == 1 ? "id" : VentaBulkService.COLUMNAS.get(columna - 2);
+    }
+
+    @Override
+    public int getColumnType(int columna) {
+        return columna == 1 ? Types.BIGINT : VentaBulkService.TIPOS[columna - 2];
+    }
+
+    @Override
+    public int getPrecision(int columna) {
+        return switch (getColumnType(columna)) {
+            case Types.BIGINT -> 19;
+            case Types.INTEGER -> 10;
+            case Types.DOUBLE -> 15;
+            default -> LARGO_TEXTO;
+        };
+    }
+
+    @Override
+    public int getScale(int columna) {
+        return 0;
+    }
+
+    @Override
+    public boolean next() {
+        if (!filas.hasNext()) return false;
+        actual = filas.next();
+        return true;
+    }
+
+    @Override
+    public Object[] getRowData() {
+        Object[] valores = VentaBulkService.valores(actual);
+        Object[] fila = new Object[valores.length + 1];
+        fila[0] = siguienteId++;
+        System.arraycopy(valores, 0, fila, 1, valores.length);
+        return fila;
+    }
+}
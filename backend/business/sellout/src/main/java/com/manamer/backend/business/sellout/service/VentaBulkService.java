@@ -0,0 +1,382 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Venta;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Upsert masivo de ventas basado en conjuntos.
+ *
+ * Cada lote se vuelca a una tabla temporal (#venta_stage) con un INSERT por lotes JDBC
+ * y luego se aplica un único MERGE sobre la clave natural
+ * (cliente_id, anio, mes, dia, cod_barra, cod_pdv). Un chunk de 10k filas cuesta
+ * unos pocos round-trips en lugar de un save() por entidad.
+ *
+ * Las filas de periodos (cliente, año, mes) que aún no tienen ventas son todas altas: esas
+ * van directo a venta con SQLServerBulkCopy (protocolo de carga masiva, sin staging ni MERGE).
+ * El MERGE queda solo para los periodos que ya tienen filas.
+ *
+ * Los tres caminos escriben el id explícito: se reservan bloques de venta_id_seq con
+ * sp_sequence_get_range, igual que el optimizador pooled-lo de Hibernate. El DEFAULT de la
+ * columna gasta un bloque entero por fila y queda solo para INSERT manuales.
+ */
+@Service
+public class VentaBulkService {
+
+    private static final Logger log = Logger.getLogger(VentaBulkService.class.getName());
+
+    private static final int STAGE_BATCH = 1_000; // filas por executeBatch al llenar #venta_stage
+
+    /** Ids por valor de venta_id_seq: su INCREMENT BY y el allocationSize de {@code Venta.id}. */
+    static final int BLOQUE_IDS = 1_000;
+
+    /** Columnas persistidas de venta (todas excepto id, que va siempre primero), en el orden en que se bindean. */
+    static final List<String> COLUMNAS = List.of(
+            "cliente_id", "producto_id", "anio", "mes", "dia", "cod_barra", "cod_pdv",
+            "ciudad", "marca", "venta_dolares", "venta_unidad", "nombre_producto", "codigo_sap",
+            "descripcion", "pdv", "stock_dolares", "stock_unidades", "unidades_diarias"
+    );
+
+    /** Tipo JDBC de cada columna de {@link #COLUMNAS}, mismo orden. */
+    static final int[] TIPOS = {
+            Types.BIGINT, Types.BIGINT, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.VARCHAR, Types.DOUBLE, Types.DOUBLE, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.VARCHAR, Types.DOUBLE, Types.DOUBLE, Types.VARCHAR
+    };
+
+    /** Columnas que forman la clave natural (no se actualizan en el MERGE). */
+    private static final List<String> CLAVE = List.of(
+            "cliente_id", "anio", "mes", "dia", "cod_barra", "cod_pdv"
+    );
+
+    private static final String SQL_CREAR_STAGE =
+            "IF OBJECT_ID('tempdb..#venta_stage') IS NOT NULL DROP TABLE #venta_stage; " +
+            "SELECT TOP 0 id, " + String.join(", ", COLUMNAS) + " INTO #venta_stage FROM [SELLOUT].[dbo].[venta]";
+
+    private static final String SQL_INSERT_STAGE =
+            "INSERT INTO #venta_stage (id, " + String.join(", ", COLUMNAS) + ") VALUES (?, " +
+            String.join(", ", COLUMNAS.stream().map(c -> "?").toList()) + ")";
+
+    private static final String SQL_MERGE = construirMerge();
+
+    private static final String SQL_INSERT_VENTA =
+            "INSERT INTO [SELLOUT].[dbo].[venta] (id, " + String.join(", ", COLUMNAS) + ") VALUES (?, " +
+            String.join(", ", COLUMNAS.stream().map(c -> "?").toList()) + ")";
+
+    private static final String SQL_RESERVAR_IDS =
+            "SET NOCOUNT ON; DECLARE @primero SQL_VARIANT; " +
+            "EXEC [SELLOUT].sys.sp_sequence_get_range @sequence_name = N'dbo.venta_id_seq', " +
+            "@range_size = ?, @range_first_value = @primero OUTPUT; " +
+            "SELECT CAST(@primero AS BIGINT);";
+
+    // UPDLOCK + HOLDLOCK: bloquea el rango de la clave natural hasta el commit, así dos cargas
+    // del mismo periodo nuevo no hacen bulk copy a la vez (la segunda espera y termina en MERGE)
+    private static final String SQL_PERIODO_CON_FILAS =
+            "SELECT TOP 1 1 FROM [SELLOUT].[dbo].[venta] WITH (UPDLOCK, HOLDLOCK) " +
+            "WHERE cliente_id = ? AND anio = ? AND mes = ?";
+
+    private final EntityManager em;
+    private final TransactionTemplate txTemplate;
+    private final boolean bulkCopyHabilitado;
+    private final int bulkCopyMinimoFilas;
+
+    public VentaBulkService(EntityManager entityManager,
+                            PlatformTransactionManager ptm,
+                            @Value("${sellout.bulk-copy.habilitado:true}") boolean bulkCopyHabilitado,
+                            @Value("${sellout.bulk-copy.minimo-filas:500}") int bulkCopyMinimoFilas) {
+        this.em = entityManager;
+        this.txTemplate = new TransactionTemplate(ptm);
+        this.bulkCopyHabilitado = bulkCopyHabilitado;
+        this.bulkCopyMinimoFilas = bulkCopyMinimoFilas;
+    }
+
+    /** Resultado de un upsert: filas insertadas y actualizadas según el MERGE. */
+    public static final class Resultado {
+        public final int insertados;
+        public final int actualizados;
+
+        public Resultado(int insertados, int actualizados) {
+            this.insertados = insertados;
+            this.actualizados = actualizados;
+        }
+    }
+
+    /**
+     * Inserta o actualiza el lote por clave natural. Si hay filas repetidas en el lote,
+     * gana la última (mismo criterio que el upsert anterior). Participa de la transacción
+     * en curso si existe; si no, abre una propia.
+     */
+    public Resultado upsert(List<Venta> lote) {
+        if (lote == null || lote.isEmpty()) return new Resultado(0, 0);
+
+        List<Venta> unicos = deduplicar(lote);
+        long t0 = System.nanoTime();
+
+        Resultado res = txTemplate.execute(status -> {
+            em.flush();
+            Resultado r = em.unwrap(Session.class).doReturningWork(con -> escribir(con, unicos));
+            em.clear();
+            return r;
+        });
+
+        long ms = (System.nanoTime() - t0) / 1_000_000;
+        log.info(String.format("Upsert masivo de ventas: %d filas (%d insertadas, %d actualizadas) en %d ms",
+                unicos.size(), res.insertados, res.actualizados, ms));
+        return res;
+    }
+
+    /**
+     * Altas que el llamador ya sabe nuevas (su prefetch no encontró la clave): bulk copy si el lote
+     * llega a sellout.bulk-copy.minimo-filas, INSERT por lotes JDBC si no. Usa la transacción en curso.
+     */
+    public int insertar(List<Venta> nuevas) {
+        if (nuevas == null || nuevas.isEmpty()) return 0;
+        Integer n = txTemplate.execute(status -> {
+            em.flush();
+            return em.unwrap(Session.class).doReturningWork(con ->
+                    bulkCopyHabilitado && nuevas.size() >= bulkCopyMinimoFilas
+                            ? bulkCopy(con, nuevas)
+                            : insertarPorLotes(con, nuevas));
+        });
+        return n == null ? 0 : n;
+    }
+
+    /**
+     * Upsert de una lista grande en tandas; cada tanda es un MERGE en su propia transacción
+     * (o en la del llamador si existe). Devuelve los totales acumulados.
+     */
+    public Resultado upsertEnTandas(List<Venta> ventas, int tamanioTanda) {
+        if (ventas == null || ventas.isEmpty()) return new Resultado(0, 0);
+        int insertados = 0, actualizados = 0;
+        for (int i = 0; i < ventas.size(); i += tamanioTanda) {
+            Resultado r = upsert(ventas.subList(i, Math.min(i + tamanioTanda, ventas.size())));
+            insertados += r.insertados;
+            actualizados += r.actualizados;
+        }
+        return new Resultado(insertados, actualizados);
+    }
+
+    /** Bulk copy para las filas de periodos sin ventas; MERGE para el resto. */
+    private Resultado escribir(Connection con, List<Venta> filas) throws SQLException {
+        if (!bulkCopyHabilitado || filas.size() < bulkCopyMinimoFilas) return mergeJdbc(con, filas);
+
+        Map<VentaResumenService.Periodo, List<Venta>> porPeriodo = new LinkedHashMap<>();
+        List<Venta> aMerge = new ArrayList<>();
+        for (Venta v : filas) {
+            Long clienteId = v.getCliente() != null ? v.getCliente().getId() : null;
+            if (clienteId == null || v.getAnio() == null || v.getMes() == null) {
+                aMerge.add(v); // sin periodo completo no se puede probar que sea alta
+                continue;
+            }
+            porPeriodo.computeIfAbsent(new VentaResumenService.Periodo(clienteId, v.getAnio(), v.getMes()),
+                    k -> new ArrayList<>()).add(v);
+        }
+
+        List<Venta> nuevas = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(SQL_PERIODO_CON_FILAS)) {
+            for (Map.Entry<VentaResumenService.Periodo, List<Venta>> e : porPeriodo.entrySet()) {
+                ps.setLong(1, e.getKey().clienteId());
+                ps.setInt(2, e.getKey().anio());
+                ps.setInt(3, e.getKey().mes());
+                try (ResultSet rs = ps.executeQuery()) {
+                    (rs.next() ? aMerge : nuevas).addAll(e.getValue());
+                }
+            }
+        }
+
+        int insertados = 0, actualizados = 0;
+        if (!nuevas.isEmpty()) {
+            long t0 = System.nanoTime();
+            insertados += bulkCopy(con, nuevas);
+            log.info(String.format("Bulk copy de ventas (periodos nuevos): %d filas en %d ms",
+                    nuevas.size(), (System.nanoTime() - t0) / 1_000_000));
+        }
+        if (!aMerge.isEmpty()) {
+            Resultado r = mergeJdbc(con, aMerge);
+            insertados += r.insertados;
+            actualizados += r.actualizados;
+        }
+        return new Resultado(insertados, actualizados);
+    }
+
+    /** INSERT BULK directo sobre venta, en la transacción de la conexión, con ids reservados. */
+    private static int bulkCopy(Connection con, List<Venta> filas) throws SQLException {
+        long primerId = reservarIds(con, filas.size());
+        SQLServerBulkCopyOptions opciones = new SQLServerBulkCopyOptions();
+        opciones.setBatchSize(0);             // un solo lote: la transacción es la del chunk
+        opciones.setBulkCopyTimeout(0);
+        opciones.setCheckConstraints(true);   // las FK a cliente/producto siguen confiables
+        opciones.setFireTriggers(true);
+
+        try (SQLServerBulkCopy bulk = new SQLServerBulkCopy(con.unwrap(SQLServerConnection.class))) {
+            bulk.setBulkCopyOptions(opciones);
+            bulk.setDestinationTableName("[SELLOUT].[dbo].[venta]");
+            bulk.addColumnMapping(1, "id");
+            for (int i = 0; i < COLUMNAS.size(); i++) bulk.addColumnMapping(i + 2, COLUMNAS.get(i));
+            bulk.writeToServer(new VentaBulkData(filas, primerId));
+        }
+        return filas.size();
+    }
+
+    private static int insertarPorLotes(Connection con, List<Venta> filas) throws SQLException {
+        long primerId = reservarIds(con, filas.size());
+        try (PreparedStatement ps = con.prepareStatement(SQL_INSERT_VENTA)) {
+            int n = 0;
+            for (Venta v : filas) {
+                bindVenta(ps, primerId + n, v);
+                ps.addBatch();
+                if (++n % STAGE_BATCH == 0) ps.executeBatch();
+            }
+            if (n % STAGE_BATCH != 0) ps.executeBatch();
+            return n;
+        }
+    }
+
+    private Resultado mergeJdbc(Connection con, List<Venta> filas) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute(SQL_CREAR_STAGE);
+        }
+
+        // Cada fila lleva un id reservado; las que terminan en UPDATE dejan el suyo sin usar
+        long primerId = reservarIds(con, filas.size());
+        try (PreparedStatement ps = con.prepareStatement(SQL_INSERT_STAGE)) {
+            int n = 0;
+            for (Venta v : filas) {
+                bindVenta(ps, primerId + n, v);
+                ps.addBatch();
+                if (++n % STAGE_BATCH == 0) ps.executeBatch();
+            }
+            if (n % STAGE_BATCH != 0) ps.executeBatch();
+        }
+
+        try (Statement st = con.createStatement()) {
+            boolean hayResultado = st.execute(SQL_MERGE);
+            while (!hayResultado && st.getUpdateCount() != -1) {
+                hayResultado = st.getMoreResults();
+            }
+            if (!hayResultado) return new Resultado(0, 0);
+            try (ResultSet rs = st.getResultSet()) {
+                if (!rs.next()) return new Resultado(0, 0);
+                return new Resultado(rs.getInt(1), rs.getInt(2));
+            }
+        }
+    }
+
+    private static void bindVenta(PreparedStatement ps, long id, Venta v) throws SQLException {
+        ps.setLong(1, id);
+        Object[] valores = valores(v);
+        for (int i = 0; i < valores.length; i++) {
+            if (valores[i] == null) ps.setNull(i + 2, TIPOS[i]);
+            else ps.setObject(i + 2, valores[i], TIPOS[i]);
+        }
+    }
+
+    /**
+     * Reserva ids para {@code filas} filas en la transacción de la conexión y devuelve el primero.
+     * Cada valor de la secuencia es dueño de un bloque de {@link #BLOQUE_IDS} ids (pooled-lo), así
+     * que k valores consecutivos dan un rango contiguo de k * BLOQUE_IDS ids que nadie más usa.
+     */
+    static long reservarIds(Connection con, int filas) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(SQL_RESERVAR_IDS)) {
+            ps.setInt(1, bloquesPara(filas));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("sp_sequence_get_range no devolvió el primer id");
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    static int bloquesPara(int filas) {
+        return Math.max(1, (filas + BLOQUE_IDS - 1) / BLOQUE_IDS);
+    }
+
+    /** Valores de una venta en el orden de {@link #COLUMNAS}. */
+    static Object[] valores(Venta v) {
+        return new Object[]{
+                v.getCliente() != null ? v.getCliente().getId() : null,
+                v.getProducto() != null ? v.getProducto().getId() : null,
+                v.getAnio(),
+                v.getMes(),
+                v.getDia(),
+                v.getCodBarra(),
+                v.getCodPdv(),
+                v.getCiudad(),
+                v.getMarca(),
+                v.getVentaDolares(),
+                v.getVentaUnidad(),
+                v.getNombreProducto(),
+                v.getCodigoSap(),
+                v.getDescripcion(),
+                v.getPdv(),
+                v.getStockDolares(),
+                v.getStockUnidades(),
+                v.getUnidadesDiarias()
+        };
+    }
+
+    private static String construirMerge() {
+        StringBuilder on = new StringBuilder();
+        for (String c : CLAVE) {
+            if (on.length() > 0) on.append(" AND ");
+            // NULL-safe: el upsert anterior trataba los nulos como iguales
+            on.append("(t.").append(c).append(" = s.").append(c)
+              .append(" OR (t.").append(c).append(" IS NULL AND s.").append(c).append(" IS NULL))");
+        }
+
+        StringBuilder set = new StringBuilder();
+        for (String c : COLUMNAS) {
+            if (CLAVE.contains(c)) continue;
+            if (set.length() > 0) set.append(", ");
+            set.append("t.").append(c).append(" = s.").append(c);
+        }
+
+        String cols = "id, " + String.join(", ", COLUMNAS);
+        String valores = "s.id, " + String.join(", ", COLUMNAS.stream().map(c -> "s." + c).toList());
+
+        return "SET NOCOUNT ON; " +
+               "DECLARE @acciones TABLE (accion NVARCHAR(10)); " +
+               "MERGE [SELLOUT].[dbo].[venta] WITH (HOLDLOCK) AS t " +
+               "USING #venta_stage AS s ON " + on + " " +
+               "WHEN MATCHED THEN UPDATE SET " + set + " " +
+               "WHEN NOT MATCHED BY TARGET THEN INSERT (" + cols + ") VALUES (" + valores + ") " +
+               "OUTPUT $action INTO @acciones; " +
+               "DROP TABLE #venta_stage; " +
+               "SELECT ISNULL(SUM(CASE WHEN accion = 'INSERT' THEN 1 ELSE 0 END), 0), " +
+               "       ISNULL(SUM(CASE WHEN accion = 'UPDATE' THEN 1 ELSE 0 END), 0) " +
+               "FROM @acciones;";
+    }
+
+    /** Una fila por clave natural; la última ocurrencia reemplaza a las anteriores. */
+    private static List<Venta> deduplicar(List<Venta> lote) {
+        return new ArrayList<>(porClaveNatural(lote).valores());
+    }
+
+    /** Ventas por clave natural empaquetada, en orden de primera aparición. */
+    static MapaClaveVenta<Venta> porClaveNatural(List<Venta> lote) {
+        DiccionarioCodigos codigos = new DiccionarioCodigos(lote.size());
+        MapaClaveVenta<Venta> porClave = new MapaClaveVenta<>(lote.size());
+        for (Venta v : lote) {
+            porClave.put(VentaNaturalKey.numerosDe(v), VentaNaturalKey.codigosDe(v, codigos), v);
+        }
+        return porClave;
+    }
+}
@@ -0,0 +1,280 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Venta;
+import jakarta.persistence.EntityManager;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Catálogo en memoria de marcas, años y meses con ventas, por cliente.
+ *
+ * Se carga al arrancar con dos SELECT DISTINCT sobre venta y desde ahí se mantiene solo:
+ * las cargas y los upserts agregan lo que escribieron; los borrados y las ediciones marcan al
+ * cliente como vencido, que se recarga desde la BD en la siguiente consulta. Los filtros del front leen de aquí (con ETag)
+ * en lugar de recorrer la tabla de ventas en cada carga de página.
+ */
+@Service
+public class VentaCatalogoService {
+
+    private static final Logger log = Logger.getLogger(VentaCatalogoService.class.getName());
+
+    /** Clave para las ventas sin cliente (ConcurrentHashMap no admite null). */
+    private static final long SIN_CLIENTE = 0L;
+
+    private final EntityManager em;
+    private final TransactionTemplate txLectura;
+
+    private final Map<Long, Catalogo> porCliente = new ConcurrentHashMap<>();
+    private final Set<Long> vencidos = ConcurrentHashMap.newKeySet();
+    /** Clientes escritos o borrados mientras no hay catálogo cargado; pasan a vencidos al terminar la carga. */
+    private final Set<Long> pendientes = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> idPorCodCliente = new ConcurrentHashMap<>();
+    private volatile boolean cargado;
+
+    public VentaCatalogoService(EntityManager entityManager, PlatformTransactionManager ptm) {
+        this.em = entityManager;
+        this.txLectura = new TransactionTemplate(ptm);
+        this.txLectura.setReadOnly(true);
+    }
+
+    // =========================
+    //         CATÁLOGO
+    // =========================
+
+    /** Marcas y meses por año de un cliente; inmutable. */
+    public record Catalogo(SortedSet<String> marcas, SortedMap<Integer, SortedSet<Integer>> mesesPorAnio) {
+
+        static final Catalogo VACIO = new Catalogo(Collections.emptySortedSet(), Collections.emptySortedMap());
+
+        public List<String> listaMarcas() {
+            return List.copyOf(marcas);
+        }
+
+        /** Años de mayor a menor. */
+        public List<Integer> listaAnios() {
+            List<Integer> out = new ArrayList<>(mesesPorAnio.keySet());
+            Collections.reverse(out);
+            return out;
+        }
+
+        /** Meses de un año (o de todos los años si es null), ascendentes. */
+        public List<Integer> listaMeses(Integer anio) {
+            if (anio != null) return List.copyOf(mesesPorAnio.getOrDefault(anio, Collections.emptySortedSet()));
+            SortedSet<Integer> todos = new TreeSet<>();
+            mesesPorAnio.values().forEach(todos::addAll);
+            return List.copyOf(todos);
+        }
+
+        Catalogo con(Cambios c) {
+            if (c.marcas.isEmpty() && c.mesesPorAnio.isEmpty()) return this;
+            TreeSet<String> m = new TreeSet<>(marcas);
+            m.addAll(c.marcas);
+            TreeMap<Integer, SortedSet<Integer>> p = new TreeMap<>(mesesPorAnio);
+            c.mesesPorAnio.forEach((anio, meses) -> {
+                TreeSet<Integer> s = new TreeSet<>(p.getOrDefault(anio, Collections.emptySortedSet()));
+                s.addAll(meses);
+                p.put(anio, Collections.unmodifiableSortedSet(s));
+            });
+            return new Catalogo(Collections.unmodifiableSortedSet(m), Collections.unmodifiableSortedMap(p));
+        }
+
+        static Catalogo union(Collection<Catalogo> catalogos) {
+            Cambios todo = new Cambios();
+            for (Catalogo c : catalogos) {
+                todo.marcas.addAll(c.marcas);
+                c.mesesPorAnio.forEach((a, ms) -> todo.mesesPorAnio.computeIfAbsent(a, k -> new TreeSet<>()).addAll(ms));
+            }
+            return VACIO.con(todo);
+        }
+    }
+
+    /** Lo que una carga agregó para un cliente. */
+    private static final class Cambios {
+        final Set<String> marcas = new HashSet<>();
+        final Map<Integer, Set<Integer>> mesesPorAnio = new HashMap<>();
+
+        void agregar(String marca, Integer anio, Integer mes) {
+            if (marca != null) marcas.add(marca);
+            if (anio != null && mes != null) mesesPorAnio.computeIfAbsent(anio, k -> new HashSet<>()).add(mes);
+        }
+    }
+
+    // =========================
+    //         CONSULTA
+    // =========================
+
+    /** Catálogo de un cliente; con clienteId null, la unión de todos. */
+    public Catalogo catalogo(Long clienteId) {
+        if (!cargado) cargarTodo();
+        if (clienteId == null) {
+            for (Long id : List.copyOf(vencidos)) recargarVencido(id);
+            return Catalogo.union(porCliente.values());
+        }
+        recargarVencido(clienteId);
+        return porCliente.getOrDefault(clienteId, Catalogo.VACIO);
+    }
+
+    /** Catálogo por codCliente; vacío si el cliente no existe. */
+    public Catalogo catalogo(String codCliente) {
+        Long id = clienteIdDe(codCliente);
+        return id == null ? Catalogo.VACIO : catalogo(id);
+    }
+
+    /**
+     * ETag débil a partir del contenido de la respuesta: SHA-256 de los elementos (cada uno con su
+     * largo delante, así ["a, b"] y ["a", "b"] no coinciden), recortado a 128 bits.
+     */
+    public static String etag(Collection<?> contenido) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // todo JRE trae SHA-256
+        }
+        ByteBuffer largo = ByteBuffer.allocate(Integer.BYTES);
+        for (Object o : contenido) {
+            byte[] b = String.valueOf(o).getBytes(StandardCharsets.UTF_8);
+            md.update(largo.clear().putInt(b.length).array());
+            md.update(b);
+        }
+        return "W/\"" + HexFormat.of().formatHex(md.digest(), 0, 16) + "\"";
+    }
+
+    private Long clienteIdDe(String codCliente) {
+        if (codCliente == null || codCliente.isBlank()) return null;
+        String cod = codCliente.trim();
+        Long id = idPorCodCliente.get(cod);
+        if (id != null) return id;
+        List<Long> ids = txLectura.execute(s -> em.createQuery(
+                        "SELECT c.id FROM Cliente c WHERE c.codCliente = :cod", Long.class)
+                .setParameter("cod", cod)
+                .setMaxResults(1)
+                .getResultList());
+        if (ids == null || ids.isEmpty()) return null; // no se cachean los inexistentes
+        idPorCodCliente.put(cod, ids.get(0));
+        return ids.get(0);
+    }
+
+    // =========================
+    //       MANTENIMIENTO
+    // =========================
+
+    /** Agrega al catálogo lo que una carga acaba de escribir. */
+    public void registrar(Collection<Venta> ventas) {
+        if (ventas == null || ventas.isEmpty()) return;
+        Map<Long, Cambios> cambios = new HashMap<>();
+        for (Venta v : ventas) {
+            Long id = v.getCliente() != null && v.getCliente().getId() != null ? v.getCliente().getId() : SIN_CLIENTE;
+            cambios.computeIfAbsent(id, k -> new Cambios()).agregar(v.getMarca(), v.getAnio(), v.getMes());
+        }
+        if (!cargado) {
+            // La carga en curso pudo leer la BD antes de este commit: el cliente se recarga después
+            pendiente(cambios.keySet());
+            return;
+        }
+        synchronized (this) {
+            cambios.forEach((id, c) -> porCliente.put(id, porCliente.getOrDefault(id, Catalogo.VACIO).con(c)));
+        }
+    }
+
+    /** Tras un borrado: los clientes indicados se recargan en la próxima consulta (null = todos). */
+    public void invalidar(Collection<Long> clienteIds) {
+        if (clienteIds == null) {
+            cargado = false;
+            return;
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Long id : clienteIds) ids.add(id == null ? SIN_CLIENTE : id);
+        if (!cargado) pendiente(ids);
+        else vencidos.addAll(ids);
+    }
+
+    /**
+     * Anota clientes cambiados sin catálogo cargado. Si la carga terminó entre la lectura de
+     * {@code cargado} y el alta, ya no los va a volcar: se pasan a vencidos aquí mismo.
+     */
+    private void pendiente(Collection<Long> ids) {
+        pendientes.addAll(ids);
+        if (cargado) volcarPendientes();
+    }
+
+    private void volcarPendientes() {
+        for (Iterator<Long> it = pendientes.iterator(); it.hasNext(); ) {
+            vencidos.add(it.next());
+            it.remove();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        try {
+            cargarTodo();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "No se pudo precargar el catálogo de ventas; se cargará en la primera consulta: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    private synchronized void cargarTodo() {
+        if (cargado) return;
+        long t0 = System.nanoTime();
+        vencidos.clear(); // las lecturas de abajo ya los cubren
+        Map<Long, Cambios> porId = new HashMap<>();
+        txLectura.executeWithoutResult(s -> {
+            for (Object[] r : em.createQuery(
+                    "SELECT DISTINCT v.cliente.id, v.anio, v.mes FROM Venta v " +
+                    "WHERE v.anio IS NOT NULL AND v.mes IS NOT NULL", Object[].class).getResultList()) {
+                porId.computeIfAbsent(clave(r[0]), k -> new Cambios()).agregar(null, (Integer) r[1], (Integer) r[2]);
+            }
+            for (Object[] r : em.createQuery(
+                    "SELECT DISTINCT v.cliente.id, v.marca FROM Venta v WHERE v.marca IS NOT NULL", Object[].class)
+                    .getResultList()) {
+                porId.computeIfAbsent(clave(r[0]), k -> new Cambios()).agregar((String) r[1], null, null);
+            }
+        });
+        porCliente.clear();
+        porId.forEach((id, c) -> porCliente.put(id, Catalogo.VACIO.con(c)));
+        cargado = true;
+        // Lo escrito o borrado durante las lecturas no se pierde: esos clientes se recargan
+        volcarPendientes();
+        log.info("Catálogo de ventas cargado: " + porCliente.size() + " clientes en "
+                + (System.nanoTime() - t0) / 1_000_000 + " ms");
+    }
+
+    private synchronized void recargarVencido(Long clienteId) {
+        if (!vencidos.remove(clienteId)) return;
+        Cambios c = new Cambios();
+        String filtro = clienteId == SIN_CLIENTE ? "v.cliente IS NULL" : "v.cliente.id = :id";
+        txLectura.executeWithoutResult(s -> {
+            var periodos = em.createQuery("SELECT DISTINCT v.anio, v.mes FROM Venta v WHERE " + filtro +
+                    " AND v.anio IS NOT NULL AND v.mes IS NOT NULL", Object[].class);
+            var marcas = em.createQuery("SELECT DISTINCT v.marca FROM Venta v WHERE " + filtro +
+                    " AND v.marca IS NOT NULL", String.class);
+            if (clienteId != SIN_CLIENTE) {
+                periodos.setParameter("id", clienteId);
+                marcas.setParameter("id", clienteId);
+            }
+            for (Object[] r : periodos.getResultList()) c.agregar(null, (Integer) r[0], (Integer) r[1]);
+            for (String m : marcas.getResultList()) c.agregar(m, null, null);
+        });
+        Catalogo nuevo = Catalogo.VACIO.con(c);
+        if (nuevo.marcas().isEmpty() && nuevo.mesesPorAnio().isEmpty()) porCliente.remove(clienteId);
+        else porCliente.put(clienteId, nuevo);
+    }
+
+    private static Long clave(Object clienteId) {
+        return clienteId == null ? SIN_CLIENTE : ((Number) clienteId).longValue();
+    }
+}
@@ -0,0 +1,203 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.VentaRow;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Listado paginado de ventas por keyset (seek): cada página continúa desde la última fila de
+ * la anterior con un WHERE sobre las columnas de orden, así el costo no crece con el número de
+ * página y nunca se materializa la tabla completa. El cursor es opaco para el cliente.
+ */
+@Service
+public class VentaConsultaService {
+
+    public static final int LIMITE_DEFECTO = 200;
+    public static final int LIMITE_MAXIMO = 1_000;
+
+    private final EntityManager em;
+
+    public VentaConsultaService(EntityManager entityManager) {
+        this.em = entityManager;
+    }
+
+    // =========================
+    //     FILTROS Y ORDEN
+    // =========================
+
+    /** Filtros opcionales del listado (null = sin filtro). */
+    public record FiltroVentas(Long clienteId, String codCliente, Integer anio, Integer mes,
+                               String marca, String codPdv, String codBarra) {}
+
+    /**
+     * Órdenes soportados; el id siempre desempata para que el keyset sea total.
+     * Se ordena por las columnas tal cual (sin COALESCE) para que el índice sirva al ORDER BY y al
+     * seek; los NULL quedan donde los pone SQL Server: primero en ASC, al final en DESC.
+     */
+    public enum OrdenVentas {
+        ID(List.of(), Set.of()),
+        PERIODO(List.of("v.anio", "v.mes", "v.dia"), Set.of("v.anio", "v.mes")),
+        VENTA_DOLARES(List.of("v.ventaDolares"), Set.of());
+
+        final List<String> columnas;
+        final Set<String> admitenNulos;
+
+        OrdenVentas(List<String> columnas, Set<String> admitenNulos) {
+            this.columnas = columnas;
+            this.admitenNulos = admitenNulos;
+        }
+
+        public static OrdenVentas de(String s) {
+            if (s == null || s.isBlank()) return ID;
+            return switch (s.trim().toLowerCase(Locale.ROOT)) {
+                case "id" -> ID;
+                case "periodo" -> PERIODO;
+                case "ventadolares", "venta_dolares" -> VENTA_DOLARES;
+                default -> throw new IllegalArgumentException("Orden no soportado: " + s + " (id, periodo, ventaDolares)");
+            };
+        }
+    }
+
+    /** Página de resultados; {@code siguienteCursor} es null en la última página. */
+    public record PaginaVentas<T>(List<T> items, int limite, boolean hayMas, String siguienteCursor) {}
+
+    // =========================
+    //         CONSULTA
+    // =========================
+
+    @Transactional(readOnly = true)
+    public PaginaVentas<VentaRow> pagina(FiltroVentas filtro, String orden, String direccion, Integer limite, String cursor) {
+        OrdenVentas ord = OrdenVentas.de(orden);
+        boolean desc = "desc".equalsIgnoreCase(direccion);
+        int lim = (limite == null || limite <= 0) ? LIMITE_DEFECTO : Math.min(limite, LIMITE_MAXIMO);
+
+        StringBuilder jpql = new StringBuilder(VentaRow.SELECT_JPQL).append(" WHERE 1 = 1");
+        Map<String, Object> params = new LinkedHashMap<>();
+        aplicarFiltros(filtro, jpql, params);
+
+        List<String> columnas = new ArrayList<>(ord.columnas);
+        columnas.add("v.id");
+        if (cursor != null && !cursor.isBlank()) {
+            List<Object> valores = decodificarCursor(cursor, ord);
+            jpql.append(" AND ").append(predicadoKeyset(columnas, ord.admitenNulos, valores, desc, 0, params));
+        }
+
+        jpql.append(" ORDER BY ");
+        for (int i = 0; i < columnas.size(); i++) {
+            if (i > 0) jpql.append(", ");
+            jpql.append(columnas.get(i)).append(desc ? " DESC" : " ASC");
+        }
+
+        TypedQuery<VentaRow> q = em.createQuery(jpql.toString(), VentaRow.class);
+        params.forEach(q::setParameter);
+        List<VentaRow> filas = q.setMaxResults(lim + 1).getResultList();
+
+        boolean hayMas = filas.size() > lim;
+        if (hayMas) filas = new ArrayList<>(filas.subList(0, lim));
+        String siguiente = hayMas ? codificarCursor(ord, filas.get(filas.size() - 1)) : null;
+        return new PaginaVentas<>(filas, lim, hayMas, siguiente);
+    }
+
+    private static void aplicarFiltros(FiltroVentas f, StringBuilder jpql, Map<String, Object> params) {
+        if (f == null) return;
+        if (f.clienteId() != null) {
+            jpql.append(" AND c.id = :clienteId");
+            params.put("clienteId", f.clienteId());
+        }
+        if (notBlank(f.codCliente())) {
+            jpql.append(" AND c.codCliente = :codCliente");
+            params.put("codCliente", f.codCliente().trim());
+        }
+        if (f.anio() != null) {
+            jpql.append(" AND v.anio = :anio");
+            params.put("anio", f.anio());
+        }
+        if (f.mes() != null) {
+            jpql.append(" AND v.mes = :mes");
+            params.put("mes", f.mes());
+        }
+        if (notBlank(f.marca())) {
+            jpql.append(" AND v.marca = :marca");
+            params.put("marca", f.marca().trim());
+        }
+        if (notBlank(f.codPdv())) {
+            jpql.append(" AND v.codPdv = :codPdv");
+            params.put("codPdv", f.codPdv().trim());
+        }
+        if (notBlank(f.codBarra())) {
+            jpql.append(" AND v.codBarra = :codBarra");
+            params.put("codBarra", f.codBarra().trim());
+        }
+    }
+
+    /** (c0 > k0) OR (c0 = k0 AND ((c1 > k1) OR (c1 = k1 AND ...))) */
+    private static String predicadoKeyset(List<String> cols, Set<String> admitenNulos, List<Object> vals, boolean desc,
+                                          int i, Map<String, Object> params) {
+        String col = cols.get(i);
+        String despues = despues(col, admitenNulos.contains(col), vals.get(i), desc, "k" + i, params);
+        if (i == cols.size() - 1) return "(" + despues + ")";
+        String igual = vals.get(i) == null ? col + " IS NULL" : col + " = :k" + i;
+        return "(" + despues + " OR (" + igual + " AND "
+                + predicadoKeyset(cols, admitenNulos, vals, desc, i + 1, params) + "))";
+    }
+
+    /** Filas estrictamente después de k en la columna, con el NULL como el menor valor (orden de SQL Server). */
+    private static String despues(String col, boolean admiteNulos, Object k, boolean desc, String p,
+                                  Map<String, Object> params) {
+        if (k == null) return desc ? "1 = 0" : col + " IS NOT NULL";
+        params.put(p, k);
+        String cmp = col + (desc ? " < :" : " > :") + p;
+        return desc && admiteNulos ? "(" + cmp + " OR " + col + " IS NULL)" : cmp;
+    }
+
+    // =========================
+    //          CURSOR
+    // =========================
+
+    private static String codificarCursor(OrdenVentas ord, VentaRow ultima) {
+        List<Object> valores = switch (ord) {
+            case ID -> List.of(ultima.id());
+            case PERIODO -> Arrays.asList(ultima.anio(), ultima.mes(), ultima.dia(), ultima.id());
+            case VENTA_DOLARES -> List.of(ultima.ventaDolares(), ultima.id());
+        };
+        StringJoiner sj = new StringJoiner("|");
+        sj.add(ord.name());
+        valores.forEach(v -> sj.add(String.valueOf(v)));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sj.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<Object> decodificarCursor(String cursor, OrdenVentas ord) {
+        String[] partes;
+        try {
+            partes = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8).split("\\|");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor inválido.");
+        }
+        if (partes.length == 0 || !ord.name().equals(partes[0])) {
+            throw new IllegalArgumentException("El cursor no corresponde al orden solicitado.");
+        }
+        try {
+            return switch (ord) {
+                case ID -> List.of(Long.parseLong(partes[1]));
+                case PERIODO -> Arrays.asList(enteroONulo(partes[1]), enteroONulo(partes[2]),
+                        Integer.parseInt(partes[3]), Long.parseLong(partes[4]));
+                case VENTA_DOLARES -> List.of(Double.parseDouble(partes[1]), Long.parseLong(partes[2]));
+            };
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cursor inválido.");
+        }
+    }
+
+    private static Integer enteroONulo(String s) {
+        return "null".equals(s) ? null : Integer.valueOf(s);
+    }
+
+    private static boolean notBlank(String s) {
+        return s != null && !s.isBlank();
+    }
+}
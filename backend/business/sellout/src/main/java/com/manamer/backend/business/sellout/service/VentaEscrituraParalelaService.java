@@ -0,0 +1,194 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Venta;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * Escritura masiva de ventas repartida en varias conexiones.
+ *
+ * Las filas se deduplican por clave natural y se reparten en particiones por hash de esa clave,
+ * así dos particiones nunca tocan la misma fila. Cada partición corre en el pool compartido y
+ * guarda sus lotes en orden, un MERGE por lote en su propia transacción. Un lote víctima de
+ * deadlock (SQL Server 1205) se reintenta con espera creciente; cualquier otro fallo se registra
+ * y el resto de lotes sigue adelante.
+ */
+@Service
+public class VentaEscrituraParalelaService {
+
+    private static final Logger log = Logger.getLogger(VentaEscrituraParalelaService.class.getName());
+
+    private static final int SQLSERVER_DEADLOCK = 1205;
+
+    private final VentaBulkService ventaBulkService;
+    private final VentaResumenService ventaResumenService;
+    private final VentaCatalogoService ventaCatalogo;
+    private final Executor executor;
+    private final int particiones;
+    private final int tamanioLote;
+    private final int reintentos;
+
+    public VentaEscrituraParalelaService(VentaBulkService ventaBulkService,
+                                         VentaResumenService ventaResumenService,
+                                         VentaCatalogoService ventaCatalogo,
+                                         @Qualifier(PersistenciaExecutorConfig.EXECUTOR) ThreadPoolTaskExecutor executor,
+                                         @Value("${sellout.persistencia.tamanio-lote:5000}") int tamanioLote,
+                                         @Value("${sellout.persistencia.reintentos-deadlock:3}") int reintentos) {
+        this.ventaBulkService = ventaBulkService;
+        this.ventaResumenService = ventaResumenService;
+        this.ventaCatalogo = ventaCatalogo;
+        this.executor = executor;
+        this.particiones = executor.getMaxPoolSize();
+        this.tamanioLote = tamanioLote;
+        this.reintentos = reintentos;
+    }
+
+    // =========================
+    //        RESULTADO
+    // =========================
+
+    /** Tiempo de un lote. */
+    public record TiempoLote(int particion, int lote, int filas, long ms, int intentos) {}
+
+    /** Lote que no se pudo guardar (tras agotar reintentos si fue deadlock). */
+    public record FalloLote(int particion, int lote, int filas, String error) {}
+
+    public static final class Resultado {
+        private int filas, insertados, actualizados, reintentos;
+        private long ms;
+        private final List<TiempoLote> tiempos = new ArrayList<>();
+        private final List<FalloLote> fallos = new ArrayList<>();
+
+        public int getFilas() { return filas; }
+        public int getInsertados() { return insertados; }
+        public int getActualizados() { return actualizados; }
+        public int getReintentos() { return reintentos; }
+        public long getMs() { return ms; }
+        public List<TiempoLote> getTiempos() { return tiempos; }
+        public List<FalloLote> getFallos() { return fallos; }
+        public boolean isOk() { return fallos.isEmpty(); }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("ok", isOk());
+            out.put("filas", filas);
+            out.put("insertados", insertados);
+            out.put("actualizados", actualizados);
+            out.put("lotes", tiempos.size() + fallos.size());
+            out.put("reintentos", reintentos);
+            out.put("tiempoMs", ms);
+            out.put("lotesMs", tiempos);
+            if (!fallos.isEmpty()) out.put("fallos", fallos);
+            return out;
+        }
+    }
+
+    // =========================
+    //        ESCRITURA
+    // =========================
+
+    /** Guarda las ventas (upsert por clave natural; si una clave se repite gana la última). */
+    public Resultado guardar(List<Venta> ventas) {
+        Resultado total = new Resultado();
+        if (ventas == null || ventas.isEmpty()) return total;
+        long t0 = System.nanoTime();
+
+        List<List<Venta>> porParticion = particionar(ventas);
+
+        List<CompletableFuture<Resultado>> futuros = new ArrayList<>();
+        for (int p = 0; p < porParticion.size(); p++) {
+            List<Venta> filas = porParticion.get(p);
+            if (filas.isEmpty()) continue;
+            int particion = p;
+            futuros.add(CompletableFuture.supplyAsync(() -> guardarParticion(particion, filas), executor));
+        }
+
+        for (CompletableFuture<Resultado> f : futuros) {
+            Resultado r = f.join(); // guardarParticion no lanza: los fallos vienen en el resultado
+            total.filas += r.filas;
+            total.insertados += r.insertados;
+            total.actualizados += r.actualizados;
+            total.reintentos += r.reintentos;
+            total.tiempos.addAll(r.tiempos);
+            total.fallos.addAll(r.fallos);
+        }
+        // Una vez que terminaron todas las particiones: así los recálculos no compiten con los MERGE
+        ventaResumenService.recalcularSinFallar(VentaResumenService.periodosDe(ventas));
+        total.ms = (System.nanoTime() - t0) / 1_000_000;
+
+        log.info(String.format("Escritura paralela: %d filas en %d particiones, %d insertadas, %d actualizadas, "
+                        + "%d reintentos, %d lotes fallidos, %d ms",
+                total.filas, futuros.size(), total.insertados, total.actualizados,
+                total.reintentos, total.fallos.size(), total.ms));
+        return total;
+    }
+
+    /** Dedup (última ocurrencia) y reparto por hash de la clave natural. */
+    private List<List<Venta>> particionar(List<Venta> ventas) {
+        MapaClaveVenta<Venta> unicas = VentaBulkService.porClaveNatural(ventas);
+
+        List<List<Venta>> out = new ArrayList<>(particiones);
+        for (int p = 0; p < particiones; p++) out.add(new ArrayList<>(unicas.size() / particiones + 1));
+        for (int i = 0; i < unicas.size(); i++) {
+            int h = VentaNaturalKey.hash(unicas.numerosEn(i), unicas.codigosEn(i));
+            out.get(Math.floorMod(h, particiones)).add(unicas.valorEn(i));
+        }
+        return out;
+    }
+
+    private Resultado guardarParticion(int particion, List<Venta> filas) {
+        Resultado r = new Resultado();
+        int lote = 0;
+        for (int i = 0; i < filas.size(); i += tamanioLote, lote++) {
+            List<Venta> sub = filas.subList(i, Math.min(i + tamanioLote, filas.size()));
+            long t0 = System.nanoTime();
+            int intento = 0;
+            while (true) {
+                intento++;
+                try {
+                    VentaBulkService.Resultado res = ventaBulkService.upsert(sub);
+                    ventaCatalogo.registrar(sub); // los lotes fallidos no llegan al catálogo
+                    r.filas += sub.size();
+                    r.insertados += res.insertados;
+                    r.actualizados += res.actualizados;
+                    r.tiempos.add(new TiempoLote(particion, lote, sub.size(), (System.nanoTime() - t0) / 1_000_000, intento));
+                    break;
+                } catch (RuntimeException e) {
+                    if (esDeadlock(e) && intento <= reintentos) {
+                        r.reintentos++;
+                        log.warning("Deadlock en partición " + particion + ", lote " + lote + "; reintento " + intento);
+                        esperar(100L << (intento - 1));
+                        continue;
+                    }
+                    log.severe("Lote fallido (partición " + particion + ", lote " + lote + "): " + e.getMessage());
+                    r.fallos.add(new FalloLote(particion, lote, sub.size(), e.getMessage()));
+                    break;
+                }
+            }
+        }
+        return r;
+    }
+
+    static boolean esDeadlock(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql && sql.getErrorCode() == SQLSERVER_DEADLOCK) return true;
+        }
+        return false;
+    }
+
+    private static void esperar(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
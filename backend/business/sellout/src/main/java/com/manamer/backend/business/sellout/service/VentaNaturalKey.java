@@ -0,0 +1,96 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Venta;
+
+/**
+ * Clave natural de venta (cliente_id, anio, mes, dia, cod_barra, cod_pdv) en dos long.
+ *
+ * {@code numeros} empaqueta cliente_id (40 bits), anio (12), mes (4) y dia (5); {@code codigos}
+ * lleva los códigos de cod_barra y cod_pdv asignados por un {@link DiccionarioCodigos}. Los nulos
+ * van como 0, igual que el "" de las claves String anteriores. Los caminos calientes usan los
+ * métodos estáticos con {@link MapaClaveVenta} para no crear un objeto por fila.
+ */
+public record VentaNaturalKey(long numeros, long codigos) {
+
+    private static final int BITS_DIA = 5;
+    private static final int BITS_MES = 4;
+    private static final int BITS_ANIO = 12;
+    private static final int BITS_CLIENTE = 40;
+
+    private static final long MAX_CLIENTE = (1L << BITS_CLIENTE) - 1;
+
+    /** Empaqueta la parte numérica; anio/mes/cliente null = 0. Valida antes con {@link #fueraDeRango}. */
+    public static long numeros(Long clienteId, Integer anio, Integer mes, int dia) {
+        String motivo = fueraDeRango(clienteId, anio, mes, dia);
+        if (motivo != null) throw new IllegalArgumentException(motivo);
+        long c = clienteId == null ? 0 : clienteId;
+        int a = anio == null ? 0 : anio;
+        int m = mes == null ? 0 : mes;
+        return (((c << BITS_ANIO | a) << BITS_MES | m) << BITS_DIA) | dia;
+    }
+
+    /**
+     * Motivo por el que la clave no cabe en {@link #numeros} (p. ej. un año 9999 de una fecha mal
+     * tipeada), o null si cabe. Los cargadores lo usan para omitir la fila en vez de abortar el lote.
+     */
+    public static String fueraDeRango(Long clienteId, Integer anio, Integer mes, int dia) {
+        long c = clienteId == null ? 0 : clienteId;
+        int a = anio == null ? 0 : anio;
+        int m = mes == null ? 0 : mes;
+        if (c < 0 || c > MAX_CLIENTE) return "Cliente fuera de rango: " + clienteId;
+        if (a < 0 || a >= (1 << BITS_ANIO)) return "Año fuera de rango: " + anio;
+        if (m < 0 || m >= (1 << BITS_MES)) return "Mes fuera de rango: " + mes;
+        if (dia < 0 || dia >= (1 << BITS_DIA)) return "Día fuera de rango: " + dia;
+        return null;
+    }
+
+    public static String fueraDeRango(Venta v) {
+        return fueraDeRango(v.getCliente() != null ? v.getCliente().getId() : null, v.getAnio(), v.getMes(), v.getDia());
+    }
+
+    public static long codigos(int codBarra, int codPdv) {
+        return ((long) codBarra << 32) | (codPdv & 0xFFFFFFFFL);
+    }
+
+    /** Clave completa de una venta (incluye el día). */
+    public static VentaNaturalKey de(Venta v, DiccionarioCodigos dic) {
+        return new VentaNaturalKey(numerosDe(v), codigosDe(v, dic));
+    }
+
+    static long numerosDe(Venta v) {
+        return numeros(v.getCliente() != null ? v.getCliente().getId() : null, v.getAnio(), v.getMes(), v.getDia());
+    }
+
+    static long codigosDe(Venta v, DiccionarioCodigos dic) {
+        return codigos(dic.codigo(v.getCodBarra()), dic.codigo(v.getCodPdv()));
+    }
+
+    public long clienteId() {
+        return numeros >>> (BITS_ANIO + BITS_MES + BITS_DIA);
+    }
+
+    public int anio() {
+        return (int) (numeros >>> (BITS_MES + BITS_DIA)) & ((1 << BITS_ANIO) - 1);
+    }
+
+    public int mes() {
+        return (int) (numeros >>> BITS_DIA) & ((1 << BITS_MES) - 1);
+    }
+
+    public int dia() {
+        return (int) numeros & ((1 << BITS_DIA) - 1);
+    }
+
+    /** Hash de la clave (mezcla de los dos long); también reparte filas entre particiones. */
+    public static int hash(long numeros, long codigos) {
+        long h = numeros * 0x9E3779B97F4A7C15L + codigos;
+        h ^= h >>> 32;
+        h *= 0xD6E8FEB86659FD93L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash(numeros, codigos);
+    }
+}
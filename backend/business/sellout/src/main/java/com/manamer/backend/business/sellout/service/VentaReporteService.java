@@ -0,0 +1,191 @@
+package com.manamer.backend.business.sellout.service;
+
+import jakarta.persistence.EntityManager;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Reportes Excel de ventas en streaming.
+ *
+ * Las filas se leen con un cursor JDBC de solo avance (sin entidades ni contexto de persistencia)
+ * y se escriben en un SXSSFWorkbook que mantiene en memoria solo una ventana de filas; el resto
+ * va a un temporal comprimido. El libro se escribe directo al OutputStream de la respuesta, así
+ * la memoria no depende del número de ventas. Al llegar al límite de filas de una hoja .xlsx
+ * se abre otra ("Ventas 2", "Ventas 3", ...) con el mismo encabezado.
+ */
+@Service
+public class VentaReporteService {
+
+    private static final Logger log = Logger.getLogger(VentaReporteService.class.getName());
+
+    public static final String CONTENT_TYPE_XLSX = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private static final int FETCH_SIZE = 1_000;
+
+    /** Filas de datos por hoja: el límite de .xlsx menos la fila de encabezado. */
+    static final int FILAS_POR_HOJA = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+
+    private static final String SQL_BASE = """
+            SELECT v.anio, v.mes, v.dia, v.marca, v.cod_barra, v.codigo_sap, p.cod_item, v.nombre_producto,
+                   v.cod_pdv, v.pdv, v.ciudad, v.stock_dolares, v.stock_unidades, v.venta_dolares, v.venta_unidad,
+                   c.cod_cliente, c.nombre_cliente, c.ciudad AS ciudad_cliente, v.producto_id
+            FROM [SELLOUT].[dbo].[venta] v
+            LEFT JOIN [SELLOUT].[dbo].[cliente] c ON c.id = v.cliente_id
+            LEFT JOIN [SELLOUT].[dbo].[producto] p ON p.id = v.producto_id
+            """;
+
+    private static final List<String> ENCABEZADOS_GENERAL = List.of(
+            "Año", "Mes", "Día", "Marca", "Código Barra SAP", "Código SAP", "Código Item", "Nombre Producto",
+            "Código PDV", "PDV", "Ciudad", "Stock en Dólares", "Stock en Unidades", "Venta en Dólares", "Venta en Unidades");
+
+    private static final List<String> ENCABEZADOS_FYBECA = List.of(
+            "Año", "Mes", "Marca", "Código Cliente", "Nombre Cliente", "Código Barra SAP", "Código Producto SAP",
+            "Código Item", "Nombre Producto", "Código PDV", "Ciudad", "PDV", "Stock en Dólares", "Stock en Unidades",
+            "Venta en Dólares", "Venta en Unidades");
+
+    private final EntityManager em;
+    private final TransactionTemplate txLectura;
+    private final int ventanaFilas;
+    private final long timeoutMs;
+
+    public VentaReporteService(EntityManager entityManager,
+                               PlatformTransactionManager ptm,
+                               @Value("${sellout.reportes.ventana-filas:500}") int ventanaFilas,
+                               @Value("${sellout.reportes.timeout-ms:1800000}") long timeoutMs) {
+        this.em = entityManager;
+        this.txLectura = new TransactionTemplate(ptm);
+        this.txLectura.setReadOnly(true);
+        this.ventanaFilas = ventanaFilas;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /** Timeout del request asíncrono de una descarga (los controladores lo fijan por llamada). */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    @FunctionalInterface
+    private interface EscritorFila {
+        void escribir(ResultSet rs, Row row) throws SQLException;
+    }
+
+    // =========================
+    //         REPORTES
+    // =========================
+
+    /** Reporte de todas las ventas (Template General). */
+    public void escribirReporteGeneral(OutputStream out) throws IOException {
+        escribir(out, SQL_BASE + "ORDER BY v.id", null, ENCABEZADOS_GENERAL, (rs, row) -> {
+            row.createCell(0).setCellValue(rs.getInt("anio"));
+            row.createCell(1).setCellValue(rs.getInt("mes"));
+            row.createCell(2).setCellValue(rs.getInt("dia"));
+            row.createCell(3).setCellValue(texto(rs, "marca", ""));
+            row.createCell(4).setCellValue(texto(rs, "cod_barra", ""));
+            row.createCell(5).setCellValue(texto(rs, "codigo_sap", ""));
+            row.createCell(6).setCellValue(texto(rs, "cod_item", ""));
+            row.createCell(7).setCellValue(texto(rs, "nombre_producto", ""));
+            row.createCell(8).setCellValue(texto(rs, "cod_pdv", ""));
+            row.createCell(9).setCellValue(texto(rs, "pdv", ""));
+            row.createCell(10).setCellValue(texto(rs, "ciudad", ""));
+            row.createCell(11).setCellValue(rs.getDouble("stock_dolares"));
+            row.createCell(12).setCellValue(rs.getDouble("stock_unidades"));
+            row.createCell(13).setCellValue(rs.getDouble("venta_dolares"));
+            row.createCell(14).setCellValue(rs.getDouble("venta_unidad"));
+        });
+    }
+
+    /** Reporte de ventas de un cliente con el layout de Fybeca. */
+    public void escribirReporteFybeca(String codCliente, OutputStream out) throws IOException {
+        escribir(out, SQL_BASE + "WHERE c.cod_cliente = ? ORDER BY v.id", codCliente, ENCABEZADOS_FYBECA, (rs, row) -> {
+            row.createCell(0).setCellValue(rs.getInt("anio"));
+            row.createCell(1).setCellValue(rs.getInt("mes"));
+            row.createCell(2).setCellValue(texto(rs, "marca", null));
+            row.createCell(3).setCellValue(texto(rs, "cod_cliente", "N/A"));
+            row.createCell(4).setCellValue(texto(rs, "nombre_cliente", "N/A"));
+            row.createCell(5).setCellValue(texto(rs, "cod_barra", null));
+            row.createCell(6).setCellValue(texto(rs, "codigo_sap", null));
+            boolean conProducto = rs.getObject("producto_id") != null;
+            row.createCell(7).setCellValue(conProducto ? texto(rs, "cod_item", null) : "N/A");
+            row.createCell(8).setCellValue(conProducto ? texto(rs, "nombre_producto", null) : "N/A");
+            row.createCell(9).setCellValue(texto(rs, "cod_pdv", null));
+            row.createCell(10).setCellValue(texto(rs, "ciudad_cliente", "N/A"));
+            row.createCell(11).setCellValue(texto(rs, "pdv", null));
+            row.createCell(12).setCellValue(rs.getDouble("stock_dolares"));
+            row.createCell(13).setCellValue(rs.getDouble("stock_unidades"));
+            row.createCell(14).setCellValue(rs.getDouble("venta_dolares"));
+            row.createCell(15).setCellValue(rs.getDouble("venta_unidad"));
+        });
+    }
+
+    // =========================
+    //        ESCRITURA
+    // =========================
+
+    private void escribir(OutputStream out, String sql, String parametro, List<String> encabezados,
+                          EscritorFila escritor) throws IOException {
+        long t0 = System.nanoTime();
+        SXSSFWorkbook wb = new SXSSFWorkbook(ventanaFilas);
+        wb.setCompressTempFiles(true);
+        try {
+            Sheet[] hoja = {nuevaHoja(wb, "Ventas", encabezados)};
+
+            // Confirma status y cabeceras antes de recorrer el cursor: el cliente ve la descarga iniciada
+            // aunque el zip del libro solo se emite al final.
+            out.flush();
+
+            Integer filas = txLectura.execute(status -> em.unwrap(Session.class).doReturningWork(con -> {
+                try (PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setFetchSize(FETCH_SIZE);
+                    if (parametro != null) ps.setString(1, parametro);
+                    int n = 0, enHoja = 0, hojas = 1;
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            if (enHoja == FILAS_POR_HOJA) {
+                                hoja[0] = nuevaHoja(wb, "Ventas " + (++hojas), encabezados);
+                                enHoja = 0;
+                            }
+                            escritor.escribir(rs, hoja[0].createRow(++enHoja));
+                            n++;
+                        }
+                    }
+                    return n;
+                }
+            }));
+
+            wb.write(out);
+            out.flush();
+            log.info(String.format("Reporte de ventas: %d filas en %d hoja(s), %d ms",
+                    filas, wb.getNumberOfSheets(), (System.nanoTime() - t0) / 1_000_000));
+        } finally {
+            wb.close();
+            wb.dispose();
+        }
+    }
+
+    private static Sheet nuevaHoja(SXSSFWorkbook wb, String nombre, List<String> encabezados) {
+        Sheet sheet = wb.createSheet(nombre);
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < encabezados.size(); i++) header.createCell(i).setCellValue(encabezados.get(i));
+        return sheet;
+    }
+
+    private static String texto(ResultSet rs, String columna, String siNulo) throws SQLException {
+        String s = rs.getString(columna);
+        return s != null ? s : siNulo;
+    }
+}
@@ -0,0 +1,191 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Venta;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resumen mensual de ventas (venta_resumen_mensual): unidades y dólares por
+ * cliente, PDV, año y mes.
+ *
+ * Las cargas recalculan solo los periodos (cliente, año, mes) que tocaron: se borran las filas
+ * del resumen de esos periodos y se vuelven a agregar desde venta. Los reportes de unidades leen
+ * de aquí, así su costo depende del número de PDV y meses, no del histórico de ventas.
+ * La tabla y su carga inicial vienen de la migración V1__venta_resumen_mensual.
+ */
+@Service
+public class VentaResumenService {
+
+    private static final Logger log = Logger.getLogger(VentaResumenService.class.getName());
+
+    static final String TABLA = "[SELLOUT].[dbo].[venta_resumen_mensual]";
+
+    private static final String SQL_CREAR_PERIODOS =
+            "IF OBJECT_ID('tempdb..#periodos') IS NOT NULL DROP TABLE #periodos; " +
+            "CREATE TABLE #periodos (cliente_id BIGINT NULL, anio INT NOT NULL, mes INT NOT NULL)";
+
+    /** Filtro por #periodos; cliente_id NULL en el periodo = todos los clientes de ese mes. */
+    private static final String EN_PERIODOS =
+            "EXISTS (SELECT 1 FROM #periodos p WHERE p.anio = %1$s.anio AND p.mes = %1$s.mes " +
+            "AND (p.cliente_id IS NULL OR p.cliente_id = %1$s.cliente_id))";
+
+    // TABLOCKX + HOLDLOCK: dos recálculos simultáneos se serializan y no duplican filas
+    private static final String SQL_BORRAR =
+            "DELETE r FROM " + TABLA + " r WITH (TABLOCKX, HOLDLOCK) WHERE " + EN_PERIODOS.formatted("r");
+
+    private static final String SQL_AGREGAR = """
+            INSERT INTO [SELLOUT].[dbo].[venta_resumen_mensual]
+                (cliente_id, anio, mes, cod_pdv, pdv, total_unidades, total_dolares, filas, actualizado)
+            SELECT v.cliente_id, v.anio, v.mes, v.cod_pdv, v.pdv,
+                   SUM(CAST(v.venta_unidad AS BIGINT)), SUM(v.venta_dolares), COUNT_BIG(*), SYSUTCDATETIME()
+            FROM [SELLOUT].[dbo].[venta] v
+            WHERE v.anio IS NOT NULL AND v.mes IS NOT NULL %s
+            GROUP BY v.cliente_id, v.anio, v.mes, v.cod_pdv, v.pdv
+            """;
+
+    /** Mismo reporte que antes se calculaba sobre venta: últimos 3 periodos, promedio por PDV. */
+    private static final String SQL_REPORTE = """
+            WITH VentasMensuales AS (
+                SELECT r.cod_pdv, r.pdv, r.anio * 100 + r.mes AS periodo, SUM(r.total_unidades) AS total_unidades
+                FROM [SELLOUT].[dbo].[venta_resumen_mensual] r
+                %s
+                GROUP BY r.cod_pdv, r.pdv, r.anio, r.mes
+            ),
+            PromedioUnidades AS (
+                SELECT cod_pdv, AVG(total_unidades) AS promedio_mensual
+                FROM VentasMensuales
+                WHERE periodo IN (
+                    SELECT DISTINCT TOP 3 periodo FROM VentasMensuales ORDER BY periodo DESC
+                )
+                GROUP BY cod_pdv
+            )
+            SELECT vm.cod_pdv, vm.pdv, tm.ciudad, tm.tipo_Display_Essence, tm.tipo_Mueble_Display_Catrice,
+                   COALESCE(SUM(vm.total_unidades), 0) AS total_unidades_mes,
+                   COALESCE(pu.promedio_mensual, 0) AS promedio_mes,
+                   ROUND(COALESCE(pu.promedio_mensual, 0) / 30, 2) AS unidad_diaria
+            FROM VentasMensuales vm
+            INNER JOIN [SELLOUT].[dbo].[tipo_mueble] tm ON vm.cod_pdv = tm.cod_Pdv
+            LEFT JOIN PromedioUnidades pu ON vm.cod_pdv = pu.cod_pdv
+            GROUP BY vm.cod_pdv, vm.pdv, tm.ciudad, tm.tipo_Display_Essence, tm.tipo_Mueble_Display_Catrice, pu.promedio_mensual
+            """;
+
+    private final EntityManager em;
+    private final TransactionTemplate txTemplate;
+    /** Para recalcular desde afterCommit, donde la transacción del llamador sigue asociada al hilo. */
+    private final TransactionTemplate txNueva;
+
+    public VentaResumenService(EntityManager entityManager, PlatformTransactionManager ptm) {
+        this.em = entityManager;
+        this.txTemplate = new TransactionTemplate(ptm);
+        this.txNueva = new TransactionTemplate(ptm);
+        this.txNueva.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /** Periodo afectado por una carga; clienteId null = todos los clientes. */
+    public record Periodo(Long clienteId, int anio, int mes) {}
+
+    /** Periodos (cliente, año, mes) presentes en las ventas; ignora las que no tienen año o mes. */
+    public static Set<Periodo> periodosDe(Collection<Venta> ventas) {
+        Set<Periodo> out = new HashSet<>();
+        for (Venta v : ventas) {
+            if (v.getAnio() == null || v.getMes() == null) continue;
+            Long clienteId = v.getCliente() != null ? v.getCliente().getId() : null;
+            out.add(new Periodo(clienteId, v.getAnio(), v.getMes()));
+        }
+        return out;
+    }
+
+    // =========================
+    //      MANTENIMIENTO
+    // =========================
+
+    /** Recalcula los periodos indicados en una transacción propia (o la del llamador si existe). */
+    public void recalcular(Collection<Periodo> periodos) {
+        recalcular(periodos, txTemplate);
+    }
+
+    private void recalcular(Collection<Periodo> periodos, TransactionTemplate tx) {
+        if (periodos == null || periodos.isEmpty()) return;
+        long t0 = System.nanoTime();
+        int[] filas = new int[1];
+        tx.executeWithoutResult(status -> em.unwrap(Session.class).doWork(con -> {
+            try (Statement st = con.createStatement()) {
+                st.execute(SQL_CREAR_PERIODOS);
+            }
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO #periodos (cliente_id, anio, mes) VALUES (?, ?, ?)")) {
+                for (Periodo p : periodos) {
+                    if (p.clienteId() == null) ps.setNull(1, Types.BIGINT);
+                    else ps.setLong(1, p.clienteId());
+                    ps.setInt(2, p.anio());
+                    ps.setInt(3, p.mes());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (Statement st = con.createStatement()) {
+                st.executeUpdate(SQL_BORRAR);
+                filas[0] = st.executeUpdate(SQL_AGREGAR.formatted("AND " + EN_PERIODOS.formatted("v")));
+                st.execute("DROP TABLE #periodos");
+            }
+        }));
+        log.info(String.format("Resumen mensual: %d periodos recalculados (%d filas) en %d ms",
+                periodos.size(), filas[0], (System.nanoTime() - t0) / 1_000_000));
+    }
+
+    /**
+     * Variante para las cargas: un fallo del resumen no debe tumbar una carga ya guardada.
+     * Queda en el log; el periodo se corrige en la siguiente carga que lo toque.
+     */
+    public void recalcularSinFallar(Collection<Periodo> periodos) {
+        try {
+            recalcular(periodos);
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "No se pudo recalcular el resumen mensual (" + periodos.size() + " periodos): "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Para las escrituras sueltas (PUT, upsert por fila, carga mapeada): recalcula cuando confirma
+     * la transacción del llamador, en una transacción nueva, sin tumbar la escritura si falla.
+     */
+    public void recalcularTrasCommit(Collection<Periodo> periodos) {
+        if (periodos == null || periodos.isEmpty()) return;
+        Set<Periodo> copia = Set.copyOf(periodos);
+        TrasCommit.ejecutar(() -> {
+            try {
+                recalcular(copia, txNueva);
+            } catch (Exception e) {
+                log.log(Level.SEVERE, "No se pudo recalcular el resumen mensual (" + copia.size() + " periodos): "
+                        + e.getMessage(), e);
+            }
+        });
+    }
+
+    // =========================
+    //         REPORTE
+    // =========================
+
+    /** Reporte de unidades por PDV (todos los clientes si codCliente es null). */
+    public List<Object[]> obtenerReporteVentas(String codCliente) {
+        String filtro = codCliente == null ? ""
+                : "JOIN [SELLOUT].[dbo].[cliente] c ON c.id = r.cliente_id WHERE c.cod_cliente = :codCliente";
+        Query q = em.createNativeQuery(SQL_REPORTE.formatted(filtro));
+        if (codCliente != null) q.setParameter("codCliente", codCliente);
+        @SuppressWarnings("unchecked")
+        List<Object[]> res = q.getResultList();
+        return res;
+    }
+}
@@ -52,6 +52,12 @@ public class VentaService {
 
     private final VentaRepository ventaRepository;
     private final EntityManager entityManager;
+    private final VentaBulkService ventaBulkService;
+    private final SapProductCatalog sapCatalog;
+    private final VentaEscrituraParalelaService ventaEscrituraParalela;
+    private final VentaResumenService ventaResumenService;
+    private final VentaCatalogoService ventaCatalogo;
+    private final VentaBorradoService ventaBorrado;
     private static final Logger log = Logger.getLogger(VentaService.class.getName());
     private static final ZoneId ZONE = ZoneId.systemDefault();
 
@@ -66,131 +72,42 @@ public class VentaService {
     }
 
     @Autowired
-    public VentaService(VentaRepository ventaRepository, EntityManager entityManager) {
+    public VentaService(VentaRepository ventaRepository, EntityManager entityManager,
+                        VentaBulkService ventaBulkService, SapProductCatalog sapCatalog,
+                        VentaEscrituraParalelaService ventaEscrituraParalela,
+                        VentaResumenService ventaResumenService,
+                        VentaCatalogoService ventaCatalogo,
+                        VentaBorradoService ventaBorrado) {
         this.ventaRepository = ventaRepository;
         this.entityManager = entityManager;
+        this.ventaBulkService = ventaBulkService;
+        this.sapCatalog = sapCatalog;
+        this.ventaEscrituraParalela = ventaEscrituraParalela;
+        this.ventaResumenService = ventaResumenService;
+        this.ventaCatalogo = ventaCatalogo;
+        this.ventaBorrado = ventaBorrado;
     }
 
     // ============================================================
     // =============== OPTIMIZACIÓN: UPSERT EN LOTE ===============
     // ============================================================
 
-    private static String safe(String s) { return (s == null ? "" : s.trim()); }
-
-    private static String key(int anio, int mes, Integer dia, String codBarra, String codPdv, Long clienteId) {
-        return anio + "|" + mes + "|" + (dia == null ? "" : dia) + "|" +
-               safe(codBarra) + "|" + safe(codPdv) + "|" + (clienteId == null ? "" : clienteId);
-    }
-
     private static class Counts { int inserts; int updates; }
 
-    @Transactional
+    /**
+     * Upsert del lote por clave natural (cliente_id, anio, mes, dia, cod_barra, cod_pdv).
+     * Delegado en {@link VentaBulkService}: staging en tabla temporal + un único MERGE.
+     */
     protected Counts guardarVentasEnBloque(List<Venta> lote) {
         Counts counts = new Counts();
         if (lote == null || lote.isEmpty()) return counts;
 
-        Map<String, Venta> porClave = new LinkedHashMap<>();
-        Set<Integer> anios = new HashSet<>();
-        Set<Integer> meses = new HashSet<>();
-        Set<Integer> dias = new HashSet<>();
-        Set<String> barras = new HashSet<>();
-        Set<String> pdvs = new HashSet<>();
-        Set<Long> clientes = new HashSet<>();
-
-        for (Venta v : lote) {
-            Long clienteId = (v.getCliente() != null ? v.getCliente().getId() : null);
-            Integer diaKey = (v.getDia() > 0 ? Integer.valueOf(v.getDia()) : null);
-            String k = key(v.getAnio(), v.getMes(), diaKey, v.getCodBarra(), v.getCodPdv(), clienteId);
-            porClave.put(k, v);
-
-            if (v.getAnio() != null) anios.add(v.getAnio());
-            if (v.getMes() != null) meses.add(v.getMes());
-            int diaVal = v.getDia();
-            if (diaVal > 0) dias.add(diaVal);
-            if (v.getCodBarra() != null) barras.add(safe(v.getCodBarra()));
-            if (v.getCodPdv() != null) pdvs.add(safe(v.getCodPdv()));
-            if (clienteId != null) clientes.add(clienteId);
-        }
-
-        List<Object[]> existentesRaw = new ArrayList<>();
-        if (!anios.isEmpty() && !meses.isEmpty() && !barras.isEmpty()) {
-            String sql = """
-                SELECT id, anio, mes, dia, cod_barra, cod_pdv, cliente_id
-                FROM [SELLOUT].[dbo].[venta]
-                WHERE anio IN (:anios)
-                  AND mes  IN (:meses)
-                  AND cod_barra IN (:barras)
-                  AND ( :usarDias = 0 OR dia IN (:dias) )
-                  AND ( :usarPdvs = 0 OR cod_pdv IN (:pdvs) )
-                  AND ( :usarClientes = 0 OR cliente_id IN (:clientes) )
-            """;
-            Query q = entityManager.createNativeQuery(sql);
-            q.setParameter("anios", anios);
-            q.setParameter("meses", meses);
-            q.setParameter("barras", barras);
-            q.setParameter("usarDias", dias.isEmpty() ? 0 : 1);
-            q.setParameter("dias", dias.isEmpty() ? List.of(-1) : dias);
-            q.setParameter("usarPdvs", pdvs.isEmpty() ? 0 : 1);
-            q.setParameter("pdvs", pdvs.isEmpty() ? List.of("_NULL_") : pdvs);
-            q.setParameter("usarClientes", clientes.isEmpty() ? 0 : 1);
-            q.setParameter("clientes", clientes.isEmpty() ? List.of(-1L) : clientes);
-            @SuppressWarnings("unchecked")
-            List<Object[]> res = q.getResultList();
-            existentesRaw = res;
-        }
-
-        Map<String, Long> claveAId = new LinkedHashMap<>();
-        for (Object[] r : existentesRaw) {
-            Long id   = ((Number) r[0]).longValue();
-            Integer an = (Integer) r[1];
-            Integer me = (Integer) r[2];
-            Integer di = (r[3] == null ? null : ((Number) r[3]).intValue());
-            String cb  = (String)  r[4];
-            String cp  = (String)  r[5];
-            Long cliId = (r[6] == null ? null : ((Number) r[6]).longValue());
-            String k = key(an, me, di, cb, cp, cliId);
-            claveAId.put(k, id);
-        }
-
-        List<Venta> inserts = new ArrayList<>();
-        List<Venta> updates = new ArrayList<>();
-        for (Venta v : porClave.values()) {
-            Long clienteId = (v.getCliente() != null ? v.getCliente().getId() : null);
-            Integer diaKey = (v.getDia() > 0 ? Integer.valueOf(v.getDia()) : null);
-            String k = key(v.getAnio(), v.getMes(), diaKey, v.getCodBarra(), v.getCodPdv(), clienteId);
-            Long id = claveAId.get(k);
-            if (id != null) {
-                v.setId(id);
-                updates.add(v);
-            } else {
-                inserts.add(v);
-            }
-        }
-
-        counts.inserts = inserts.size();
-        counts.updates = updates.size();
-
-        final int BATCH = 1_000;
-        batchSave(inserts, BATCH);
-        batchSave(updates, BATCH);
-
+        VentaBulkService.Resultado res = ventaBulkService.upsert(lote);
+        counts.inserts = res.insertados;
+        counts.updates = res.actualizados;
         return counts;
     }
 
-    private void batchSave(List<Venta> list, int batch) {
-        for (int i = 0; i < list.size(); i++) {
-            ventaRepository.save(list.get(i));
-            if ((i + 1) % batch == 0) {
-                ventaRepository.flush();
-                entityManager.clear();
-            }
-        }
-        if (!list.isEmpty()) {
-            ventaRepository.flush();
-            entityManager.clear();
-        }
-    }
-
     // ============================================================
     // ===================== LÓGICA EXISTENTE =====================
     // ============================================================
@@ -201,13 +118,12 @@ public class VentaService {
         codItem = codItem.trim();
 
         try {
+            // Datos de SAP desde el catálogo en memoria (sin cruzar el linked server por fila)
             String queryStr = """
                 SELECT TOP 1
                     c.id AS ClienteID, c.cod_Cliente, c.nombre_Cliente, c.ciudad, c.codigo_Proveedor,
-                    p.id AS IdProducto, p.cod_Item, p.cod_Barra_Sap,
-                    sp.CodProd, sp.CodBarra, sp.Descripcion, sp.Marca
+                    p.id AS IdProducto, p.cod_Item, p.cod_Barra_Sap
                 FROM SELLOUT.dbo.producto p
-                LEFT JOIN SAPHANA..CG3_360CORP.SAP_Prod sp ON sp.CodBarra = p.cod_Barra_Sap
                 CROSS JOIN (SELECT TOP 1 * FROM SELLOUT.dbo.cliente) c
                 WHERE p.cod_Item = :codItem
             """;
@@ -221,26 +137,26 @@ public class VentaService {
                 return false;
             }
             Object[] result = results.get(0);
-            if (result.length == 12) {
-                venta.setCliente(new Cliente());
-                venta.getCliente().setId(((Number) result[0]).longValue());
-                venta.getCliente().setCodCliente((String) result[1]);
-                venta.getCliente().setNombreCliente((String) result[2]);
-                venta.getCliente().setCiudad((String) result[3]);
-                venta.getCliente().setCodigoProveedor((String) result[4]);
-
-                venta.setProducto(new Producto());
-                venta.getProducto().setId(((Number) result[5]).longValue());
-                venta.getProducto().setCodItem((String) result[6]);
-                venta.getProducto().setCodBarraSap((String) result[7]);
-
-                venta.setCodigoSap((String) result[8]);
-                venta.setCodBarra(((String) result[9]).trim());
-                venta.setDescripcion((String) result[10]);
-                venta.setNombreProducto((String) result[10]);
-                venta.setMarca((String) result[11]);
-                return true;
+            SapProductCatalog.SapProducto sap = sapCatalog.buscar((String) result[7]).orElse(null);
+            if (sap == null) {
+                guardarCodigoNoEncontrado(codItem);
+                return false;
             }
+
+            venta.setCliente(new Cliente());
+            venta.getCliente().setId(((Number) result[0]).longValue());
+            venta.getCliente().setCodCliente((String) result[1]);
+            venta.getCliente().setNombreCliente((String) result[2]);
+            venta.getCliente().setCiudad((String) result[3]);
+            venta.getCliente().setCodigoProveedor((String) result[4]);
+
+            venta.setProducto(new Producto());
+            venta.getProducto().setId(((Number) result[5]).longValue());
+            venta.getProducto().setCodItem((String) result[6]);
+            venta.getProducto().setCodBarraSap((String) result[7]);
+
+            aplicarDatosSap(venta, sap);
+            return true;
         } catch (NoResultException | NonUniqueResultException e) {
             guardarCodigoNoEncontrado(codItem);
             return false;
@@ -248,7 +164,6 @@ public class VentaService {
             guardarCodigoNoEncontrado(codItem);
             return false;
         }
-        return false;
     }
 
     public boolean cargarDatosDeProductoDeprati(Venta venta, Set<String> codigosNoEncontrados) {
@@ -257,15 +172,14 @@ public class VentaService {
         codBarra = codBarra.trim();
 
         try {
+            // sp.CodBarra = p.cod_Barra_Sap, así que basta con buscar en producto y resolver SAP en memoria
             String queryStr = """
                 SELECT TOP 1
                     c.id AS ClienteID, c.cod_Cliente, c.nombre_Cliente, c.ciudad, c.codigo_Proveedor,
-                    p.id AS IdProducto, p.cod_Item, p.cod_Barra_Sap,
-                    sp.CodProd, sp.CodBarra, sp.Descripcion, sp.Marca
+                    p.id AS IdProducto, p.cod_Item, p.cod_Barra_Sap
                 FROM SELLOUT.dbo.producto p
-                LEFT JOIN SAPHANA..CG3_360CORP.SAP_Prod sp ON sp.CodBarra = p.cod_Barra_Sap
                 JOIN SELLOUT.dbo.cliente c ON c.cod_Cliente = :codCliente
-                WHERE (p.cod_Barra_Sap = :codBarra OR sp.CodBarra = :codBarra OR p.cod_Item = :codBarra)
+                WHERE (p.cod_Barra_Sap = :codBarra OR p.cod_Item = :codBarra)
             """;
             Query query = entityManager.createNativeQuery(queryStr);
             query.setParameter("codCliente", "MZCL-000009");
@@ -277,28 +191,28 @@ public class VentaService {
                 return false;
             }
             Object[] result = results.get(0);
-            if (result.length == 12) {
-                Cliente cliente = new Cliente();
-                cliente.setId(((Number) result[0]).longValue());
-                cliente.setCodCliente((String) result[1]);
-                cliente.setNombreCliente((String) result[2]);
-                cliente.setCiudad((String) result[3]);
-                cliente.setCodigoProveedor((String) result[4]);
-                venta.setCliente(cliente);
-
-                Producto producto = new Producto();
-                producto.setId(((Number) result[5]).longValue());
-                producto.setCodItem((String) result[6]);
-                producto.setCodBarraSap((String) result[7]);
-                venta.setProducto(producto);
-
-                venta.setCodigoSap((String) result[8]);
-                venta.setCodBarra(((String) result[9]).trim());
-                venta.setDescripcion((String) result[10]);
-                venta.setNombreProducto((String) result[10]);
-                venta.setMarca((String) result[11]);
-                return true;
+            SapProductCatalog.SapProducto sap = sapCatalog.buscar((String) result[7]).orElse(null);
+            if (sap == null) {
+                guardarCodigoNoEncontrado(codBarra);
+                return false;
             }
+
+            Cliente cliente = new Cliente();
+            cliente.setId(((Number) result[0]).longValue());
+            cliente.setCodCliente((String) result[1]);
+            cliente.setNombreCliente((String) result[2]);
+            cliente.setCiudad((String) result[3]);
+            cliente.setCodigoProveedor((String) result[4]);
+            venta.setCliente(cliente);
+
+            Producto producto = new Producto();
+            producto.setId(((Number) result[5]).longValue());
+            producto.setCodItem((String) result[6]);
+            producto.setCodBarraSap((String) result[7]);
+            venta.setProducto(producto);
+
+            aplicarDatosSap(venta, sap);
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
             guardarCodigoNoEncontrado(codBarra);
@@ -306,6 +220,79 @@ public class VentaService {
         return false;
     }
 
+    /** Producto local + datos maestros SAP para un código leído del Excel. */
+    public record ProductoResuelto(Producto producto, SapProductCatalog.SapProducto sap) {}
+
+    private static final int CODIGOS_POR_CONSULTA = 1_000; // se bindean dos veces: 2000 < 2100 params
+
+    /**
+     * Resolución por conjuntos de códigos (cod_Barra_Sap o cod_Item) contra producto,
+     * con los datos SAP tomados del catálogo en memoria. Equivale a llamar
+     * cargarDatosDeProductoDeprati por cada código, pero con una consulta cada 1000 códigos.
+     * Los códigos sin producto o sin SAP no aparecen en el mapa.
+     */
+    public Map<String, ProductoResuelto> resolverProductosPorCodigo(Collection<String> codigos) {
+        Map<String, ProductoResuelto> out = new HashMap<>();
+        List<String> lista = codigos.stream()
+                .filter(Objects::nonNull).map(String::trim).filter(c -> !c.isEmpty())
+                .distinct().collect(Collectors.toList());
+        if (lista.isEmpty()) return out;
+
+        Map<String, List<Producto>> porBarraSap = new HashMap<>();
+        Map<String, List<Producto>> porCodItem = new HashMap<>();
+
+        for (int i = 0; i < lista.size(); i += CODIGOS_POR_CONSULTA) {
+            List<String> sub = lista.subList(i, Math.min(i + CODIGOS_POR_CONSULTA, lista.size()));
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = entityManager.createNativeQuery("""
+                    SELECT p.id, p.cod_Item, p.cod_Barra_Sap
+                    FROM SELLOUT.dbo.producto p
+                    WHERE p.cod_Barra_Sap IN (:codigos) OR p.cod_Item IN (:codigos)
+                    ORDER BY p.id
+                """)
+                    .setParameter("codigos", sub)
+                    .getResultList();
+
+            for (Object[] r : rows) {
+                Producto p = new Producto();
+                p.setId(((Number) r[0]).longValue());
+                p.setCodItem((String) r[1]);
+                p.setCodBarraSap((String) r[2]);
+                if (p.getCodBarraSap() != null) {
+                    porBarraSap.computeIfAbsent(p.getCodBarraSap().trim(), k -> new ArrayList<>()).add(p);
+                }
+                if (p.getCodItem() != null) {
+                    porCodItem.computeIfAbsent(p.getCodItem().trim(), k -> new ArrayList<>()).add(p);
+                }
+            }
+        }
+
+        for (String codigo : lista) {
+            ProductoResuelto pr = primeroConSap(porBarraSap.get(codigo));
+            if (pr == null) pr = primeroConSap(porCodItem.get(codigo));
+            if (pr != null) out.put(codigo, pr);
+        }
+        return out;
+    }
+
+    private ProductoResuelto primeroConSap(List<Producto> candidatos) {
+        if (candidatos == null) return null;
+        for (Producto p : candidatos) {
+            SapProductCatalog.SapProducto sap = sapCatalog.buscar(p.getCodBarraSap()).orElse(null);
+            if (sap != null) return new ProductoResuelto(p, sap);
+        }
+        return null;
+    }
+
+    /** Copia a la venta los datos maestros de SAP (código, barra, descripción y marca). */
+    static void aplicarDatosSap(Venta venta, SapProductCatalog.SapProducto sap) {
+        venta.setCodigoSap(sap.codProd());
+        venta.setCodBarra(sap.codBarra());
+        venta.setDescripcion(sap.descripcion());
+        venta.setNombreProducto(sap.descripcion());
+        venta.setMarca(sap.marca());
+    }
+
     private static final String CARPETA_CODIGOS = "/creacion-codigos";
 
     private void guardarCodigoNoEncontrado(String codItem) {
@@ -392,22 +379,7 @@ public class VentaService {
     // ===== NUEVO: validación de existencia en SAP por codBarra =====
     private boolean codBarraExisteEnSap(String codBarra) {
         if (codBarra == null || codBarra.trim().isEmpty()) return false;
-
-        // Opción A: usa el repositorio si agregaste existsSapByCodBarra
-        try {
-            return ventaRepository.codBarraExisteEnSap(codBarra.trim());
-        } catch (Throwable ignore) {
-            // Opción B: fallback con EntityManager
-            String sql = "SELECT TOP 1 1 FROM SAPHANA..CG3_360CORP.SAP_Prod WHERE CodBarra = :cb";
-            try {
-                Object r = entityManager.createNativeQuery(sql)
-                        .setParameter("cb", codBarra.trim())
-                        .getSingleResult();
-                return r != null;
-            } catch (Exception e) {
-                return false;
-            }
-        }
+        return sapCatalog.existe(codBarra);
     }
 
     // =================== Lectura genérica desde Excel ===================
@@ -431,6 +403,10 @@ public class VentaService {
         }
     }
 
+    private String obtenerValorCeldaComoString(Row fila, Integer columnaIndex, DiccionarioTextos textos) {
+        return textos.comun(obtenerValorCeldaComoString(fila, columnaIndex));
+    }
+
     private Double obtenerValorCeldaComoDouble(Row fila, Integer columnaIndex) {
         if (columnaIndex == null) return null;
         Cell celda = fila.getCell(columnaIndex);
@@ -452,7 +428,7 @@ public class VentaService {
         return null;
     }
 
-    private Date obtenerFechaCelda(Row fila, Integer columnaIndex) {
+    private Date obtenerFechaCelda(Row fila, Integer columnaIndex, ReconocedorFechas fechas) {
         if (columnaIndex == null) return null;
         Cell celda = fila.getCell(columnaIndex);
         if (celda == null) return null;
@@ -472,7 +448,7 @@ public class VentaService {
                 int tIdx = s.indexOf('T');
                 if (tIdx > 0) s = s.substring(0, tIdx);
 
-                LocalDate ld = tryParseLocalDate(s);
+                LocalDate ld = fechas.leer(s);
                 if (ld != null) {
                     return Date.from(ld.atStartOfDay(ZONE).toInstant());
                 }
@@ -481,24 +457,6 @@ public class VentaService {
         return null;
     }
 
-    private static final List<java.time.format.DateTimeFormatter> DATE_FORMATS = List.of(
-            java.time.format.DateTimeFormatter.ofPattern("dd/MM/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("d/M/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("dd-MM-uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("d-M-uuuu"),
-            java.time.format.DateTimeFormatter.ISO_LOCAL_DATE,
-            java.time.format.DateTimeFormatter.ofPattern("MM/dd/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("M/d/uuuu")
-    );
-
-    private LocalDate tryParseLocalDate(String s) {
-        for (var f : DATE_FORMATS) {
-            try { return LocalDate.parse(s, f); }
-            catch (Exception ignore) {}
-        }
-        return null;
-    }
-
     // ======= MÉTODO DE CARGA DESDE EXCEL con validación SAP (firma original + overload) =======
 
     // Overload recomendado: devuelve también incidencias y métricas
@@ -510,6 +468,7 @@ public class VentaService {
 
         long t0 = System.nanoTime();
         List<Incidencia> incidencias = new ArrayList<>();
+        Set<VentaResumenService.Periodo> periodos = new HashSet<>();
 
         int filasLeidas = 0;
         int filasProcesadas = 0;
@@ -517,6 +476,8 @@ public class VentaService {
         try (Workbook workbook = WorkbookFactory.create(inputStream)) {
             Sheet hoja = workbook.getSheetAt(0);
             List<Venta> buffer = new ArrayList<>(5_000);
+            DiccionarioTextos textos = new DiccionarioTextos();
+            ReconocedorFechas fechas = new ReconocedorFechas(ReconocedorFechas.Perfil.GENERAL);
 
             for (int filaIndex = filaInicio; filaIndex <= hoja.getLastRowNum(); filaIndex++) {
                 Row fila = hoja.getRow(filaIndex);
@@ -524,15 +485,15 @@ public class VentaService {
                 filasLeidas++;
 
                 String codBarra = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaCodBarra"));
-                String marca = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaMarca"));
-                String nombreProducto = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaProducto"));
-                String descripcion = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaDescripcion"));
+                String marca = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaMarca"), textos);
+                String nombreProducto = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaProducto"), textos);
+                String descripcion = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaDescripcion"), textos);
                 String codPdv = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaCodPdv"));
-                String pdv = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaPdv"));
+                String pdv = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaPdv"), textos);
 
                 Double ventaUnidades = obtenerValorCeldaComoDouble(fila, mapeoColumnas.get("columnaUnidades"));
                 Double ventaUSD = obtenerValorCeldaComoDouble(fila, mapeoColumnas.get("columnaDolares"));
-                Date fecha = obtenerFechaCelda(fila, mapeoColumnas.get("columnaFecha"));
+                Date fecha = obtenerFechaCelda(fila, mapeoColumnas.get("columnaFecha"), fechas);
 
                 boolean tieneVentaPositiva =
                         (ventaUnidades != null && ventaUnidades > 0) ||
@@ -552,6 +513,17 @@ public class VentaService {
                 }
 
                 var zdt = fecha.toInstant().atZone(ZONE);
+                String fueraDeRango = VentaNaturalKey.fueraDeRango(null,
+                        zdt.getYear(), zdt.getMonthValue(), zdt.getDayOfMonth());
+                if (fueraDeRango != null) {
+                    incidencias.add(new Incidencia(
+                            (codBarra == null || codBarra.isBlank()) ? "CODBARRA_VACIO" : codBarra.trim(),
+                            fueraDeRango,
+                            (filaIndex + 1)
+                    ));
+                    continue; // omitimos la fila
+                }
+
                 Venta venta = new Venta();
                 venta.setAnio(zdt.getYear());
                 venta.setMes(zdt.getMonthValue());
@@ -572,16 +544,23 @@ public class VentaService {
                 filasProcesadas++;
 
                 if (buffer.size() >= 10_000) {
+                    log.info("Carga " + nombreArchivo + ": chunk de " + buffer.size() + " filas; " + textos.resumen());
                     guardarVentasEnBloque(buffer);
+                    ventaCatalogo.registrar(buffer);
+                    periodos.addAll(VentaResumenService.periodosDe(buffer));
                     buffer.clear();
                 }
             }
             if (!buffer.isEmpty()) {
                 guardarVentasEnBloque(buffer);
+                ventaCatalogo.registrar(buffer);
+                periodos.addAll(VentaResumenService.periodosDe(buffer));
             }
         } catch (Exception e) {
             incidencias.add(new Incidencia("GENERAL", "ERROR FATAL: " + e.getMessage(), -1));
         }
+        // Aun con error, los chunks ya guardados deben reflejarse en el resumen mensual
+        ventaResumenService.recalcularSinFallar(periodos);
 
         long t1 = System.nanoTime();
         double segundos = (t1 - t0) / 1_000_000_000.0;
@@ -605,50 +584,43 @@ public class VentaService {
     @Transactional
     public void guardarVentas(List<Venta> ventas) {
         int batchSize = 200;
+        List<Venta> guardadas = new ArrayList<>(ventas.size());
+        Set<Long> marcaCambiada = new HashSet<>();
         for (int i = 0; i < ventas.size(); i++) {
-            guardarOActualizarVenta(ventas.get(i));
+            guardadas.add(upsertVenta(ventas.get(i), marcaCambiada));
             if ((i + 1) % batchSize == 0) {
                 ventaRepository.flush();
             }
         }
         ventaRepository.flush();
+        ventaResumenService.recalcularTrasCommit(VentaResumenService.periodosDe(guardadas));
+        catalogoTrasCommit(guardadas, marcaCambiada);
     }
 
-    @Transactional
-    public void guardarVentasConExecutorService(List<Venta> ventas) {
-        int batchSize = 50;
-        java.util.concurrent.ExecutorService executorService = java.util.concurrent.Executors.newFixedThreadPool(10);
-        try {
-            for (int i = 0; i < ventas.size(); i += batchSize) {
-                int end = Math.min(i + batchSize, ventas.size());
-                List<Venta> batchList = ventas.subList(i, end);
-                executorService.submit(() -> {
-                    try {
-                        ventaRepository.saveAll(batchList);
-                        ventaRepository.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
-            }
-        } finally {
-            executorService.shutdown();
-            try {
-                if (!executorService.awaitTermination(60, java.util.concurrent.TimeUnit.SECONDS)) {
-                    executorService.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executorService.shutdownNow();
-            }
-        }
+    /**
+     * Guardado masivo en paralelo: particiones por clave natural sobre el pool compartido,
+     * un MERGE por lote en su propia transacción, reintento ante deadlock y tiempos por lote.
+     */
+    public VentaEscrituraParalelaService.Resultado guardarVentasConExecutorService(List<Venta> ventas) {
+        return ventaEscrituraParalela.guardar(ventas);
     }
 
     public List<Venta> obtenerTodasLasVentas() { return ventaRepository.findAll(); }
 
+    /** Ventas de un cliente, filtradas en la BD. */
+    public List<Venta> obtenerVentasPorCodCliente(String codCliente) {
+        return entityManager.createQuery("SELECT v FROM Venta v JOIN FETCH v.cliente c LEFT JOIN FETCH v.producto WHERE c.codCliente = :cod", Venta.class)
+                .setParameter("cod", codCliente)
+                .getResultList();
+    }
+
     public Optional<Venta> obtenerVentaPorId(Long id) { return ventaRepository.findById(id); }
 
     public Venta actualizarVenta(Long id, Venta nuevaVenta) {
         return ventaRepository.findById(id).map(venta -> {
+            // Periodo anterior y nuevo: cambiar año, mes o cliente mueve totales de uno a otro
+            Set<VentaResumenService.Periodo> periodos = new HashSet<>(VentaResumenService.periodosDe(List.of(venta)));
+            Set<Long> clientes = clienteIdsDe(List.of(venta));
             venta.setAnio(nuevaVenta.getAnio());
             venta.setMes(nuevaVenta.getMes());
             venta.setDia(nuevaVenta.getDia());
@@ -665,67 +637,57 @@ public class VentaService {
             venta.setStockUnidades(nuevaVenta.getStockUnidades());
             venta.setCliente(nuevaVenta.getCliente());
             venta.setProducto(nuevaVenta.getProducto());
-            return ventaRepository.save(venta);
+            Venta guardada = ventaRepository.save(venta);
+            periodos.addAll(VentaResumenService.periodosDe(List.of(guardada)));
+            clientes.addAll(clienteIdsDe(List.of(guardada)));
+            ventaResumenService.recalcularTrasCommit(periodos);
+            // La marca o el periodo anterior pueden haber quedado sin ventas: se recargan ambos clientes
+            TrasCommit.ejecutar(() -> ventaCatalogo.invalidar(clientes));
+            return guardada;
         }).orElseThrow(() -> new RuntimeException("Venta no encontrada con el ID: " + id));
     }
 
     public boolean eliminarVenta(Long id) {
         return ventaRepository.findById(id).map(venta -> {
             ventaRepository.delete(venta);
+            ventaResumenService.recalcularSinFallar(VentaResumenService.periodosDe(List.of(venta)));
+            ventaCatalogo.invalidar(clienteIdsDe(List.of(venta)));
             return true;
         }).orElse(false);
     }
 
     public boolean eliminarVentas(List<Long> ids) {
         try {
-            List<Venta> ventas = ventaRepository.findAllById(ids);
-            ventaRepository.deleteAll(ventas);
+            ventaBorrado.eliminarPorIds(ids, null);
             return true;
         } catch (Exception e) {
             return false;
         }
     }
 
+    /** Borrado masivo por ids con DELETE por conjuntos; devuelve los conteos. */
+    public VentaBorradoService.Resultado eliminarVentasMasivo(List<Long> ids) {
+        return ventaBorrado.eliminarPorIds(ids, null);
+    }
+
     public List<String> obtenerMarcasDisponibles() {
-        String queryStr = "SELECT DISTINCT v.marca FROM Venta v WHERE v.marca IS NOT NULL";
-        Query query = entityManager.createQuery(queryStr);
-        @SuppressWarnings("unchecked")
-        List<String> res = query.getResultList();
-        return res;
+        return obtenerMarcasDisponibles(null);
     }
 
-    @Transactional
+    public List<String> obtenerMarcasDisponibles(Long clienteId) {
+        return ventaCatalogo.catalogo(clienteId).listaMarcas();
+    }
+
+    static Set<Long> clienteIdsDe(Collection<Venta> ventas) {
+        Set<Long> ids = new HashSet<>();
+        for (Venta v : ventas) ids.add(v.getCliente() != null ? v.getCliente().getId() : null);
+        return ids;
+    }
+
+    /** Reporte de unidades por PDV (últimos 3 periodos), leído de venta_resumen_mensual. */
     public List<Object[]> obtenerReporteVentas() {
         try {
-            String sql = """
-                WITH VentasMensuales AS (
-                    SELECT v.cod_Pdv, v.pdv,
-                           FORMAT(v.anio, '0000') + '-' + FORMAT(v.mes, '00') AS periodo,
-                           SUM(CAST(v.venta_Unidad AS INT)) AS total_unidades
-                    FROM [SELLOUT].[dbo].[venta] v
-                    GROUP BY v.cod_Pdv, v.pdv, v.anio, v.mes
-                ),
-                PromedioUnidades AS (
-                    SELECT cod_Pdv, AVG(total_unidades) AS promedio_mensual
-                    FROM VentasMensuales
-                    WHERE periodo IN (
-                        SELECT DISTINCT TOP 3 periodo FROM VentasMensuales ORDER BY periodo DESC
-                    )
-                    GROUP BY cod_Pdv
-                )
-                SELECT vm.cod_Pdv, vm.pdv, tm.ciudad, tm.tipo_Display_Essence, tm.tipo_Mueble_Display_Catrice,
-                       COALESCE(SUM(vm.total_unidades), 0) AS total_unidades_mes,
-                       COALESCE(pu.promedio_mensual, 0) AS promedio_mes,
-                       ROUND(COALESCE(pu.promedio_mensual, 0) / 30, 2) AS unidad_diaria
-                FROM VentasMensuales vm
-                INNER JOIN [SELLOUT].[dbo].[tipo_mueble] tm ON vm.cod_Pdv = tm.cod_Pdv
-                LEFT JOIN PromedioUnidades pu ON vm.cod_Pdv = pu.cod_Pdv
-                GROUP BY vm.cod_Pdv, vm.pdv, tm.ciudad, tm.tipo_Display_Essence, tm.tipo_Mueble_Display_Catrice, pu.promedio_mensual
-            """;
-            Query query = entityManager.createNativeQuery(sql);
-            @SuppressWarnings("unchecked")
-            List<Object[]> resultados = query.getResultList();
-            return resultados;
+            return ventaResumenService.obtenerReporteVentas(null);
         } catch (Exception e) {
             e.printStackTrace();
             return new ArrayList<>();
@@ -734,6 +696,28 @@ public class VentaService {
 
     @Transactional
     public void guardarOActualizarVenta(Venta nuevaVenta) {
+        Set<Long> marcaCambiada = new HashSet<>();
+        Venta guardada = upsertVenta(nuevaVenta, marcaCambiada);
+        ventaResumenService.recalcularTrasCommit(VentaResumenService.periodosDe(List.of(guardada)));
+        catalogoTrasCommit(List.of(guardada), marcaCambiada);
+    }
+
+    /**
+     * Catálogo tras el commit: agrega marca y periodo de lo guardado; los clientes a los que un
+     * upsert le cambió la marca a una fila existente se recargan (la marca anterior puede sobrar).
+     */
+    private void catalogoTrasCommit(List<Venta> guardadas, Set<Long> marcaCambiada) {
+        TrasCommit.ejecutar(() -> {
+            ventaCatalogo.registrar(guardadas);
+            if (!marcaCambiada.isEmpty()) ventaCatalogo.invalidar(marcaCambiada);
+        });
+    }
+
+    /**
+     * Upsert por clave natural; la clave no cambia, así que el periodo es el de la venta guardada.
+     * Anota en {@code marcaCambiada} el cliente si la fila existente tenía otra marca.
+     */
+    private Venta upsertVenta(Venta nuevaVenta, Set<Long> marcaCambiada) {
         String codBarra = nuevaVenta.getCodBarra() == null ? null : nuevaVenta.getCodBarra().trim();
         String codPdv   = nuevaVenta.getCodPdv()   == null ? null : nuevaVenta.getCodPdv().trim();
         nuevaVenta.setCodBarra(codBarra);
@@ -753,6 +737,7 @@ public class VentaService {
 
         if (existente.isPresent()) {
             Venta v = existente.get();
+            if (!Objects.equals(v.getMarca(), nuevaVenta.getMarca())) marcaCambiada.add(clienteId);
             v.setVentaDolares(nuevaVenta.getVentaDolares());
             v.setVentaUnidad(nuevaVenta.getVentaUnidad());
             v.setStockDolares(nuevaVenta.getStockDolares());
@@ -765,32 +750,18 @@ public class VentaService {
             v.setDescripcion(nuevaVenta.getDescripcion());
             v.setCliente(nuevaVenta.getCliente());
             v.setProducto(nuevaVenta.getProducto());
-            ventaRepository.save(v);
-        } else {
-            ventaRepository.save(nuevaVenta);
+            return ventaRepository.save(v);
         }
+        return ventaRepository.save(nuevaVenta);
     }
 
-   /** Años disponibles (distintos) en Venta, opcionalmente filtrado por clienteId. */
-public List<Integer> obtenerAniosDisponibles(Long clienteId) {
-    String jpql = "SELECT DISTINCT v.anio FROM Venta v " +
-                  (clienteId != null ? "WHERE v.cliente.id = :clienteId " : "") +
-                  "ORDER BY v.anio DESC";
-    TypedQuery<Integer> q = entityManager.createQuery(jpql, Integer.class);
-    if (clienteId != null) q.setParameter("clienteId", clienteId);
-    return q.getResultList();
-}
+    /** Años disponibles (distintos) en Venta, opcionalmente filtrado por clienteId. Del catálogo en memoria. */
+    public List<Integer> obtenerAniosDisponibles(Long clienteId) {
+        return ventaCatalogo.catalogo(clienteId).listaAnios();
+    }
 
-    /** Meses disponibles (distintos) en Venta, opcionalmente filtrado por año y clienteId. */
+    /** Meses disponibles (distintos) en Venta, opcionalmente filtrado por año y clienteId. Del catálogo en memoria. */
     public List<Integer> obtenerMesesDisponibles(Integer anio, Long clienteId) {
-        StringBuilder jpql = new StringBuilder("SELECT DISTINCT v.mes FROM Venta v WHERE 1=1 ");
-        if (anio != null)      jpql.append("AND v.anio = :anio ");
-        if (clienteId != null) jpql.append("AND v.cliente.id = :clienteId ");
-        jpql.append("ORDER BY v.mes ASC");
-
-        TypedQuery<Integer> q = entityManager.createQuery(jpql.toString(), Integer.class);
-        if (anio != null)      q.setParameter("anio", anio);
-        if (clienteId != null) q.setParameter("clienteId", clienteId);
-        return q.getResultList();
+        return ventaCatalogo.catalogo(clienteId).listaMeses(anio);
     }
 }
@@ -0,0 +1,251 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.WorkbookDocument;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Lector por eventos (SAX) de hojas .xlsx.
+ *
+ * Nunca construye el DOM del workbook: recorre el XML de la hoja fila por fila y
+ * entrega a un {@link FilaHandler} los valores crudos de cada celda, con la misma
+ * tipificación que usa la lectura con {@code Workbook}:
+ * String, Double, Boolean o Date (numérico con formato de fecha).
+ *
+ * Solo se mantienen en memoria la tabla de strings compartidos y la fila en curso.
+ */
+public final class XlsxStreamingReader {
+
+    /** Recibe cada fila presente en la hoja (índice 0-based) con las celdas 0..colMax. */
+    @FunctionalInterface
+    public interface FilaHandler {
+        void fila(int rowIndex, Object[] celdas);
+    }
+
+    /** Lanzada desde el handler para cortar la lectura (p. ej. fin de datos detectado). */
+    public static final class Detener extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public Detener() { super(null, null, false, false); }
+    }
+
+    private XlsxStreamingReader() {}
+
+    /**
+     * Lee la primera hoja cuyo nombre cumpla el selector.
+     * @return false si ninguna hoja coincide.
+     */
+    public static boolean leerHoja(File archivo, Predicate<String> selectorHoja, int colMax, FilaHandler handler)
+            throws IOException {
+        return leerHoja(archivo, selectorHoja, colMax, ultimaFila -> {}, handler);
+    }
+
+    /**
+     * Igual que {@link #leerHoja(File, Predicate, int, FilaHandler)}, informando además la última
+     * fila (0-based) declarada en {@code <dimension>} de la hoja, si el archivo la trae.
+     */
+    public static boolean leerHoja(File archivo, Predicate<String> selectorHoja, int colMax,
+                                   IntConsumer ultimaFila, FilaHandler handler) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(archivo, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sst = new ReadOnlySharedStringsTable(pkg, false);
+            StylesTable estilos = reader.getStylesTable();
+            boolean fecha1904 = esFecha1904(reader);
+
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (it.hasNext()) {
+                try (InputStream hoja = it.next()) {
+                    if (!selectorHoja.test(it.getSheetName())) continue;
+
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new HojaHandler(sst, estilos, fecha1904, colMax, ultimaFila, handler));
+                    try {
+                        parser.parse(new InputSource(hoja));
+                    } catch (Detener fin) {
+                        // corte solicitado por el handler
+                    } catch (SAXException e) {
+                        if (!(e.getException() instanceof Detener)) throw new IOException(e.getMessage(), e);
+                    }
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("No se pudo leer el archivo .xlsx: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean esFecha1904(XSSFReader reader) {
+        try (InputStream wb = reader.getWorkbookData()) {
+            CTWorkbook workbook = WorkbookDocument.Factory.parse(wb).getWorkbook();
+            return workbook.isSetWorkbookPr() && workbook.getWorkbookPr().getDate1904();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /** Índice 0-based de columna a partir de una referencia tipo "AB12". */
+    static int columnaDeReferencia(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char ch = ref.charAt(i);
+            if (ch < 'A' || ch > 'Z') break;
+            col = col * 26 + (ch - 'A' + 1);
+        }
+        return col - 1;
+    }
+
+    private static final class HojaHandler extends DefaultHandler {
+        private final ReadOnlySharedStringsTable sst;
+        private final StylesTable estilos;
+        private final boolean fecha1904;
+        private final int colMax;
+        private final IntConsumer ultimaFila;
+        private final FilaHandler handler;
+
+        private final StringBuilder texto = new StringBuilder(64);
+        private Object[] celdas;
+        private int filaActual = -1;
+        private int colActual = -1;
+        private String tipo;
+        private int estilo = -1;
+        private boolean capturando;
+        private boolean tieneValor;
+
+        HojaHandler(ReadOnlySharedStringsTable sst, StylesTable estilos, boolean fecha1904,
+                    int colMax, IntConsumer ultimaFila, FilaHandler handler) {
+            this.sst = sst;
+            this.estilos = estilos;
+            this.fecha1904 = fecha1904;
+            this.colMax = colMax;
+            this.ultimaFila = ultimaFila;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attrs) {
+            switch (localName) {
+                case "dimension": {
+                    // ref="B1:N50000" => última fila 49999 (0-based)
+                    String ref = attrs.getValue("ref");
+                    if (ref != null) {
+                        String fin = ref.substring(ref.indexOf(':') + 1).replaceAll("[A-Z]", "");
+                        try { ultimaFila.accept(Integer.parseInt(fin) - 1); } catch (NumberFormatException ignored) {}
+                    }
+                    break;
+                }
+                case "row": {
+                    String r = attrs.getValue("r");
+                    filaActual = (r != null) ? Integer.parseInt(r) - 1 : filaActual + 1;
+                    colActual = -1;
+                    celdas = new Object[colMax + 1];
+                    break;
+                }
+                case "c": {
+                    String ref = attrs.getValue("r");
+                    colActual = (ref != null) ? columnaDeReferencia(ref) : colActual + 1;
+                    tipo = attrs.getValue("t");
+                    String s = attrs.getValue("s");
+                    estilo = (s != null) ? Integer.parseInt(s) : -1;
+                    tieneValor = false;
+                    texto.setLength(0);
+                    break;
+                }
+                case "v":
+                case "t":
+                    // <t> solo aparece dentro de <is> (inlineStr) en el XML de la hoja
+                    capturando = true;
+                    tieneValor = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (capturando) texto.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "t":
+                    capturando = false;
+                    break;
+                case "c":
+                    if (tieneValor && colActual >= 0 && colActual <= colMax) {
+                        celdas[colActual] = valorCelda();
+                    }
+                    break;
+                case "row":
+                    handler.fila(filaActual, celdas);
+                    celdas = null;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private Object valorCelda() {
+            String v = texto.toString();
+            if (tipo == null || "n".equals(tipo)) {
+                if (v.isEmpty()) return null;
+                double d;
+                try {
+                    d = Double.parseDouble(v);
+                } catch (NumberFormatException e) {
+                    return v;
+                }
+                if (esFormatoFecha() && DateUtil.isValidExcelDate(d)) {
+                    return DateUtil.getJavaDate(d, fecha1904);
+                }
+                return d;
+            }
+            switch (tipo) {
+                case "s":
+                    try {
+                        return sst.getItemAt(Integer.parseInt(v.trim())).getString();
+                    } catch (Exception e) {
+                        return null;
+                    }
+                case "inlineStr":
+                case "str":
+                    return v;
+                case "b":
+                    return "1".equals(v);
+                default:
+                    // "e" (error) y otros: igual que la lectura DOM, sin valor
+                    return null;
+            }
+        }
+
+        private boolean esFormatoFecha() {
+            if (estilo < 0 || estilos == null) return false;
+            XSSFCellStyle st = estilos.getStyleAt(estilo);
+            if (st == null) return false;
+            return DateUtil.isADateFormat(st.getDataFormat(), st.getDataFormatString());
+        }
+    }
+}
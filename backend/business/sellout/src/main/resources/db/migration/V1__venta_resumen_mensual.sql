@@ -0,0 +1,31 @@
+-- =========================================================
+-- Resumen mensual de ventas (ver VentaResumenService)
+-- =========================================================
+-- Antes la creaba la aplicación al arrancar; si ya existe se deja como está.
+-- Recién creada se llena con todo el histórico (una sola vez).
+
+IF OBJECT_ID('[SELLOUT].[dbo].[venta_resumen_mensual]', 'U') IS NULL
+BEGIN
+    CREATE TABLE [SELLOUT].[dbo].[venta_resumen_mensual] (
+        cliente_id      BIGINT        NULL,
+        anio            INT           NOT NULL,
+        mes             INT           NOT NULL,
+        cod_pdv         VARCHAR(255)  NULL,
+        pdv             VARCHAR(255)  NULL,
+        total_unidades  BIGINT        NOT NULL,
+        total_dolares   FLOAT         NOT NULL,
+        filas           BIGINT        NOT NULL,
+        actualizado     DATETIME2     NOT NULL
+    );
+
+    CREATE CLUSTERED INDEX IX_venta_resumen_mensual_periodo
+        ON [SELLOUT].[dbo].[venta_resumen_mensual] (anio, mes, cliente_id, cod_pdv);
+
+    INSERT INTO [SELLOUT].[dbo].[venta_resumen_mensual]
+        (cliente_id, anio, mes, cod_pdv, pdv, total_unidades, total_dolares, filas, actualizado)
+    SELECT v.cliente_id, v.anio, v.mes, v.cod_pdv, v.pdv,
+           SUM(CAST(v.venta_unidad AS BIGINT)), SUM(v.venta_dolares), COUNT_BIG(*), SYSUTCDATETIME()
+    FROM [SELLOUT].[dbo].[venta] v
+    WHERE v.anio IS NOT NULL AND v.mes IS NOT NULL
+    GROUP BY v.cliente_id, v.anio, v.mes, v.cod_pdv, v.pdv;
+END;
@@ -0,0 +1,91 @@
+-- =========================================================
+-- Clave natural de venta: (cliente_id, anio, mes, dia, cod_barra, cod_pdv)
+-- =========================================================
+-- Todos los upserts (MERGE de VentaBulkService, prefetch de Template General, Fybeca y Deprati)
+-- buscan por esta clave. El índice único convierte esas búsquedas en seeks y hace imposibles
+-- los duplicados. SQL Server trata los NULL como iguales en un índice único, igual que el MERGE.
+
+-- 1) No se aplica mientras existan duplicados: se informa cuántos hay y dónde (hasta 20 grupos).
+--    Para verlos todos:
+--      SELECT cliente_id, anio, mes, dia, cod_barra, cod_pdv, COUNT(*) AS filas, MIN(id), MAX(id)
+--      FROM [SELLOUT].[dbo].[venta]
+--      GROUP BY cliente_id, anio, mes, dia, cod_barra, cod_pdv
+--      HAVING COUNT(*) > 1;
+IF EXISTS (
+    SELECT 1
+    FROM [SELLOUT].[dbo].[venta]
+    GROUP BY cliente_id, anio, mes, dia, cod_barra, cod_pdv
+    HAVING COUNT(*) > 1
+)
+BEGIN
+    DECLARE @grupos BIGINT, @sobrantes BIGINT, @detalle NVARCHAR(1600), @mensaje NVARCHAR(2048);
+
+    SELECT @grupos = COUNT_BIG(*), @sobrantes = SUM(d.filas - 1)
+    FROM (
+        SELECT COUNT_BIG(*) AS filas
+        FROM [SELLOUT].[dbo].[venta]
+        GROUP BY cliente_id, anio, mes, dia, cod_barra, cod_pdv
+        HAVING COUNT(*) > 1
+    ) d;
+
+    SET @detalle = LEFT(STUFF((
+        SELECT TOP 20
+               '; cliente_id=' + ISNULL(CAST(cliente_id AS VARCHAR(20)), 'NULL')
+             + ' ' + ISNULL(CAST(anio AS VARCHAR(4)), 'NULL') + '-' + ISNULL(CAST(mes AS VARCHAR(2)), 'NULL')
+             + '-' + ISNULL(CAST(dia AS VARCHAR(2)), 'NULL')
+             + ' cod_barra=' + ISNULL(cod_barra, 'NULL')
+             + ' cod_pdv=' + ISNULL(cod_pdv, 'NULL')
+             + ' (' + CAST(COUNT(*) AS VARCHAR(10)) + ' filas, ids ' + CAST(MIN(id) AS VARCHAR(20))
+             + '..' + CAST(MAX(id) AS VARCHAR(20)) + ')'
+        FROM [SELLOUT].[dbo].[venta]
+        GROUP BY cliente_id, anio, mes, dia, cod_barra, cod_pdv
+        HAVING COUNT(*) > 1
+        ORDER BY COUNT(*) DESC, cliente_id, anio, mes
+        FOR XML PATH(''), TYPE).value('.', 'NVARCHAR(MAX)'), 1, 2, ''), 1600);
+
+    SET @mensaje = N'venta tiene ' + CAST(@grupos AS NVARCHAR(20)) + N' claves naturales duplicadas ('
+                 + CAST(@sobrantes AS NVARCHAR(20)) + N' filas sobrantes); depure antes de migrar. '
+                 + @detalle;
+    THROW 50001, @mensaje, 1;
+END;
+
+-- 2) Índice único sobre la clave natural. El id (clave del índice clustered) va incluido
+--    implícitamente: el prefetch de ids y el MERGE se resuelven sin tocar la tabla.
+IF NOT EXISTS (SELECT 1 FROM sys.indexes
+               WHERE name = 'UX_venta_clave_natural' AND object_id = OBJECT_ID('[SELLOUT].[dbo].[venta]'))
+    CREATE UNIQUE NONCLUSTERED INDEX UX_venta_clave_natural
+        ON [SELLOUT].[dbo].[venta] (cliente_id, anio, mes, dia, cod_barra, cod_pdv);
+
+-- 3) Índices de apoyo para filtros y reportes
+--    Catálogo de marcas y filtro por marca de un cliente
+IF NOT EXISTS (SELECT 1 FROM sys.indexes
+               WHERE name = 'IX_venta_cliente_marca' AND object_id = OBJECT_ID('[SELLOUT].[dbo].[venta]'))
+    CREATE NONCLUSTERED INDEX IX_venta_cliente_marca
+        ON [SELLOUT].[dbo].[venta] (cliente_id, marca);
+
+--    Filtro por PDV y recálculo del resumen mensual (agrupa por cod_pdv, pdv)
+IF NOT EXISTS (SELECT 1 FROM sys.indexes
+               WHERE name = 'IX_venta_periodo_pdv' AND object_id = OBJECT_ID('[SELLOUT].[dbo].[venta]'))
+    CREATE NONCLUSTERED INDEX IX_venta_periodo_pdv
+        ON [SELLOUT].[dbo].[venta] (anio, mes, cod_pdv)
+        INCLUDE (cliente_id, pdv, venta_unidad, venta_dolares);
+
+--    Borrado de productos (ProductoRepository desvincula las ventas por producto_id)
+IF NOT EXISTS (SELECT 1 FROM sys.indexes
+               WHERE name = 'IX_venta_producto' AND object_id = OBJECT_ID('[SELLOUT].[dbo].[venta]'))
+    CREATE NONCLUSTERED INDEX IX_venta_producto
+        ON [SELLOUT].[dbo].[venta] (producto_id);
+
+--    Filtro por código de barras del listado paginado (/venta/pagina)
+IF NOT EXISTS (SELECT 1 FROM sys.indexes
+               WHERE name = 'IX_venta_cod_barra' AND object_id = OBJECT_ID('[SELLOUT].[dbo].[venta]'))
+    CREATE NONCLUSTERED INDEX IX_venta_cod_barra
+        ON [SELLOUT].[dbo].[venta] (cod_barra);
+
+--    Orden "periodo" del listado paginado: ORDER BY y seek del keyset sobre (anio, mes, dia, id)
+--    del cliente sin ordenar el conjunto filtrado. UX_venta_clave_natural no sirve: cod_barra y
+--    cod_pdv quedan entre dia e id.
+IF NOT EXISTS (SELECT 1 FROM sys.indexes
+               WHERE name = 'IX_venta_cliente_periodo' AND object_id = OBJECT_ID('[SELLOUT].[dbo].[venta]'))
+    CREATE NONCLUSTERED INDEX IX_venta_cliente_periodo
+        ON [SELLOUT].[dbo].[venta] (cliente_id, anio, mes, dia, id);
@@ -0,0 +1,221 @@
+-- =========================================================
+-- Ids por secuencia (venta, producto, cliente, tipo_mueble)
+-- =========================================================
+-- Con IDENTITY Hibernate necesita el id de cada fila al insertarla y desactiva el batching
+-- de INSERT. Con una secuencia de incremento 1000 (optimizador pooled-lo) reserva un bloque
+-- de 1000 ids por viaje y envía los INSERT en lotes de hibernate.jdbc.batch_size.
+--
+-- SQL Server no permite quitar IDENTITY a una columna: se crea una tabla gemela sin IDENTITY
+-- (mismas columnas e índices), se pasan los datos con ALTER TABLE ... SWITCH (solo metadatos,
+-- no copia filas) y se renombra. Las FK, DEFAULT y CHECK se guardan y se vuelven a crear.
+-- Cada secuencia arranca en MAX(id) + 1 y queda además como DEFAULT de la columna id, solo como
+-- respaldo para INSERT manuales: cada fila que lo usa consume un bloque entero de 1000 ids. Los
+-- INSERT por JDBC de la aplicación (MERGE y bulk copy de VentaBulkService) reservan bloques con
+-- sp_sequence_get_range y escriben el id, igual que pooled-lo.
+
+CREATE OR ALTER PROCEDURE dbo.sellout_identity_a_secuencia
+    @tabla      SYSNAME,
+    @secuencia  SYSNAME,
+    @incremento INT
+AS
+BEGIN
+    SET NOCOUNT ON;
+    SET XACT_ABORT ON;
+
+    DECLARE @obj INT = OBJECT_ID(N'dbo.' + QUOTENAME(@tabla), N'U');
+    IF @obj IS NULL
+    BEGIN
+        DECLARE @noExiste NVARCHAR(2048) = N'No existe la tabla dbo.' + @tabla;
+        THROW 50002, @noExiste, 1;
+    END;
+
+    DECLARE @t   NVARCHAR(300) = N'dbo.' + QUOTENAME(@tabla);
+    DECLARE @sql NVARCHAR(MAX), @max BIGINT;
+
+    -- 1) Secuencia a partir del id más alto
+    IF OBJECT_ID(N'dbo.' + QUOTENAME(@secuencia), N'SO') IS NULL
+    BEGIN
+        SET @sql = N'SELECT @m = ISNULL(MAX(id), 0) FROM ' + @t + N' WITH (TABLOCKX, HOLDLOCK)';
+        EXEC sp_executesql @sql, N'@m BIGINT OUTPUT', @m = @max OUTPUT;
+        SET @sql = N'CREATE SEQUENCE dbo.' + QUOTENAME(@secuencia) + N' AS BIGINT START WITH '
+                 + CAST(@max + 1 AS NVARCHAR(20)) + N' INCREMENT BY ' + CAST(@incremento AS NVARCHAR(10))
+                 + N' NO CYCLE CACHE 50';
+        EXEC (@sql);
+    END;
+
+    -- 2) Quitar IDENTITY (si aún lo tiene)
+    IF EXISTS (SELECT 1 FROM sys.identity_columns WHERE object_id = @obj)
+    BEGIN
+        DECLARE @gemela SYSNAME = @tabla + N'_sin_identity';
+        DECLARE @g NVARCHAR(300) = N'dbo.' + QUOTENAME(@gemela);
+        DECLARE @antes   TABLE (n INT IDENTITY, s NVARCHAR(MAX));  -- sobre la gemela, antes del SWITCH
+        DECLARE @despues TABLE (n INT IDENTITY, s NVARCHAR(MAX));  -- sobre la tabla renombrada
+        DECLARE @quitar  TABLE (n INT IDENTITY, s NVARCHAR(MAX));  -- FK que impiden el SWITCH
+
+        -- 2a) Columnas, tal cual pero sin IDENTITY
+        DECLARE @cols NVARCHAR(MAX) = STUFF((
+            SELECT N', ' + QUOTENAME(c.name) + N' ' +
+                   CASE
+                       WHEN ty.name IN (N'varchar', N'char', N'varbinary', N'binary')
+                           THEN ty.name + N'(' + CASE WHEN c.max_length = -1 THEN N'MAX' ELSE CAST(c.max_length AS NVARCHAR(10)) END + N')'
+                       WHEN ty.name IN (N'nvarchar', N'nchar')
+                           THEN ty.name + N'(' + CASE WHEN c.max_length = -1 THEN N'MAX' ELSE CAST(c.max_length / 2 AS NVARCHAR(10)) END + N')'
+                       WHEN ty.name IN (N'decimal', N'numeric')
+                           THEN ty.name + N'(' + CAST(c.precision AS NVARCHAR(3)) + N',' + CAST(c.scale AS NVARCHAR(3)) + N')'
+                       WHEN ty.name IN (N'datetime2', N'time', N'datetimeoffset')
+                           THEN ty.name + N'(' + CAST(c.scale AS NVARCHAR(3)) + N')'
+                       WHEN ty.name = N'float'
+                           THEN N'float(' + CAST(c.precision AS NVARCHAR(3)) + N')'
+                       ELSE ty.name
+                   END +
+                   CASE WHEN c.collation_name IS NOT NULL THEN N' COLLATE ' + c.collation_name ELSE N'' END +
+                   CASE WHEN c.is_nullable = 1 THEN N' NULL' ELSE N' NOT NULL' END
+            FROM sys.columns c
+            JOIN sys.types ty ON ty.user_type_id = c.user_type_id
+            WHERE c.object_id = @obj
+            ORDER BY c.column_id
+            FOR XML PATH(''), TYPE).value('.', 'NVARCHAR(MAX)'), 1, 2, N'');
+
+        -- 2b) Índices idénticos en la gemela (el SWITCH lo exige); PK/UQ con nombre temporal
+        DECLARE @idx INT, @nombre SYSNAME, @tipo NVARCHAR(60), @unico BIT, @pk BIT, @uq BIT, @filtro NVARCHAR(MAX);
+        DECLARE @claves NVARCHAR(MAX), @incluidas NVARCHAR(MAX);
+        DECLARE indices CURSOR LOCAL FAST_FORWARD FOR
+            SELECT index_id, name, type_desc, is_unique, is_primary_key, is_unique_constraint, filter_definition
+            FROM sys.indexes
+            WHERE object_id = @obj AND index_id > 0 AND is_hypothetical = 0
+            ORDER BY index_id;
+        OPEN indices;
+        FETCH NEXT FROM indices INTO @idx, @nombre, @tipo, @unico, @pk, @uq, @filtro;
+        WHILE @@FETCH_STATUS = 0
+        BEGIN
+            SET @claves = STUFF((
+                SELECT N', ' + QUOTENAME(c.name) + CASE WHEN ic.is_descending_key = 1 THEN N' DESC' ELSE N'' END
+                FROM sys.index_columns ic
+                JOIN sys.columns c ON c.object_id = ic.object_id AND c.column_id = ic.column_id
+                WHERE ic.object_id = @obj AND ic.index_id = @idx AND ic.key_ordinal > 0
+                ORDER BY ic.key_ordinal
+                FOR XML PATH(''), TYPE).value('.', 'NVARCHAR(MAX)'), 1, 2, N'');
+            SET @incluidas = STUFF((
+                SELECT N', ' + QUOTENAME(c.name)
+                FROM sys.index_columns ic
+                JOIN sys.columns c ON c.object_id = ic.object_id AND c.column_id = ic.column_id
+                WHERE ic.object_id = @obj AND ic.index_id = @idx AND ic.is_included_column = 1
+                ORDER BY ic.index_column_id
+                FOR XML PATH(''), TYPE).value('.', 'NVARCHAR(MAX)'), 1, 2, N'');
+
+            IF @pk = 1 OR @uq = 1
+            BEGIN
+                INSERT INTO @antes (s) VALUES (N'ALTER TABLE ' + @g + N' ADD CONSTRAINT ' + QUOTENAME(@nombre + N'_tmp')
+                    + CASE WHEN @pk = 1 THEN N' PRIMARY KEY ' ELSE N' UNIQUE ' END + @tipo + N' (' + @claves + N')');
+                INSERT INTO @despues (s) VALUES (N'EXEC sp_rename N''dbo.' + QUOTENAME(@nombre + N'_tmp') + N''', N'''
+                    + REPLACE(@nombre, N'''', N'''''') + N''', N''OBJECT''');
+            END
+            ELSE
+                INSERT INTO @antes (s) VALUES (N'CREATE ' + CASE WHEN @unico = 1 THEN N'UNIQUE ' ELSE N'' END + @tipo
+                    + N' INDEX ' + QUOTENAME(@nombre) + N' ON ' + @g + N' (' + @claves + N')'
+                    + ISNULL(N' INCLUDE (' + @incluidas + N')', N'')
+                    + ISNULL(N' WHERE ' + @filtro, N''));
+
+            FETCH NEXT FROM indices INTO @idx, @nombre, @tipo, @unico, @pk, @uq, @filtro;
+        END;
+        CLOSE indices;
+        DEALLOCATE indices;
+
+        -- 2c) FK que apuntan a la tabla y FK propias: se quitan y se recrean sobre la tabla final
+        INSERT INTO @quitar (s)
+        SELECT N'ALTER TABLE ' + QUOTENAME(OBJECT_SCHEMA_NAME(fk.parent_object_id)) + N'.'
+               + QUOTENAME(OBJECT_NAME(fk.parent_object_id)) + N' DROP CONSTRAINT ' + QUOTENAME(fk.name)
+        FROM sys.foreign_keys fk
+        WHERE fk.referenced_object_id = @obj OR fk.parent_object_id = @obj;
+
+        INSERT INTO @despues (s)
+        SELECT N'ALTER TABLE ' + QUOTENAME(OBJECT_SCHEMA_NAME(fk.parent_object_id)) + N'.'
+               + QUOTENAME(OBJECT_NAME(fk.parent_object_id))
+               + CASE WHEN fk.is_not_trusted = 1 THEN N' WITH NOCHECK' ELSE N' WITH CHECK' END
+               + N' ADD CONSTRAINT ' + QUOTENAME(fk.name) + N' FOREIGN KEY ('
+               + STUFF((SELECT N', ' + QUOTENAME(COL_NAME(fkc.parent_object_id, fkc.parent_column_id))
+                        FROM sys.foreign_key_columns fkc WHERE fkc.constraint_object_id = fk.object_id
+                        ORDER BY fkc.constraint_column_id
+                        FOR XML PATH(''), TYPE).value('.', 'NVARCHAR(MAX)'), 1, 2, N'')
+               + N') REFERENCES ' + QUOTENAME(OBJECT_SCHEMA_NAME(fk.referenced_object_id)) + N'.'
+               + QUOTENAME(OBJECT_NAME(fk.referenced_object_id)) + N' ('
+               + STUFF((SELECT N', ' + QUOTENAME(COL_NAME(fkc.referenced_object_id, fkc.referenced_column_id))
+                        FROM sys.foreign_key_columns fkc WHERE fkc.constraint_object_id = fk.object_id
+                        ORDER BY fkc.constraint_column_id
+                        FOR XML PATH(''), TYPE).value('.', 'NVARCHAR(MAX)'), 1, 2, N'')
+               + N') ON DELETE ' + REPLACE(fk.delete_referential_action_desc, N'_', N' ')
+               + N' ON UPDATE ' + REPLACE(fk.update_referential_action_desc, N'_', N' ')
+        FROM sys.foreign_keys fk
+        WHERE fk.referenced_object_id = @obj OR fk.parent_object_id = @obj;
+
+        -- 2d) DEFAULT y CHECK de la tabla original
+        INSERT INTO @despues (s)
+        SELECT N'ALTER TABLE ' + @t + N' ADD CONSTRAINT ' + QUOTENAME(dc.name) + N' DEFAULT ' + dc.definition
+               + N' FOR ' + QUOTENAME(COL_NAME(dc.parent_object_id, dc.parent_column_id))
+        FROM sys.default_constraints dc
+        WHERE dc.parent_object_id = @obj;
+
+        INSERT INTO @despues (s)
+        SELECT N'ALTER TABLE ' + @t + CASE WHEN cc.is_not_trusted = 1 THEN N' WITH NOCHECK' ELSE N' WITH CHECK' END
+               + N' ADD CONSTRAINT ' + QUOTENAME(cc.name) + N' CHECK ' + cc.definition
+        FROM sys.check_constraints cc
+        WHERE cc.parent_object_id = @obj;
+
+        -- 2e) Gemela, SWITCH, renombre y restauración
+        DECLARE @n INT = 1, @total INT;
+
+        SELECT @total = COUNT(*) FROM @quitar;
+        WHILE @n <= @total
+        BEGIN
+            SELECT @sql = s FROM @quitar WHERE n = @n;
+            EXEC (@sql);
+            SET @n += 1;
+        END;
+
+        SET @sql = N'CREATE TABLE ' + @g + N' (' + @cols + N')';
+        EXEC (@sql);
+
+        SELECT @n = 1, @total = COUNT(*) FROM @antes;
+        WHILE @n <= @total
+        BEGIN
+            SELECT @sql = s FROM @antes WHERE n = @n;
+            EXEC (@sql);
+            SET @n += 1;
+        END;
+
+        SET @sql = N'ALTER TABLE ' + @t + N' SWITCH TO ' + @g;
+        EXEC (@sql);
+        SET @sql = N'DROP TABLE ' + @t;
+        EXEC (@sql);
+        EXEC sp_rename @g, @tabla, N'OBJECT';
+
+        SELECT @n = 1, @total = COUNT(*) FROM @despues;
+        WHILE @n <= @total
+        BEGIN
+            SELECT @sql = s FROM @despues WHERE n = @n;
+            EXEC (@sql);
+            SET @n += 1;
+        END;
+
+        SET @obj = OBJECT_ID(@t, N'U');
+    END;
+
+    -- 3) La secuencia como DEFAULT del id para los INSERT que no lo indican
+    IF NOT EXISTS (SELECT 1 FROM sys.default_constraints
+                   WHERE parent_object_id = @obj AND parent_column_id = COLUMNPROPERTY(@obj, N'id', 'ColumnId'))
+    BEGIN
+        SET @sql = N'ALTER TABLE ' + @t + N' ADD CONSTRAINT ' + QUOTENAME(N'DF_' + @tabla + N'_id')
+                 + N' DEFAULT (NEXT VALUE FOR dbo.' + QUOTENAME(@secuencia) + N') FOR id';
+        EXEC (@sql);
+    END;
+END;
+GO
+
+EXEC dbo.sellout_identity_a_secuencia @tabla = N'cliente',     @secuencia = N'cliente_id_seq',     @incremento = 1000;
+EXEC dbo.sellout_identity_a_secuencia @tabla = N'producto',    @secuencia = N'producto_id_seq',    @incremento = 1000;
+EXEC dbo.sellout_identity_a_secuencia @tabla = N'tipo_mueble', @secuencia = N'tipo_mueble_id_seq', @incremento = 1000;
+EXEC dbo.sellout_identity_a_secuencia @tabla = N'venta',       @secuencia = N'venta_id_seq',       @incremento = 1000;
+GO
+
+DROP PROCEDURE dbo.sellout_identity_a_secuencia;
+GO
@@ -0,0 +1,57 @@
+package com.manamer.backend.business.sellout.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class MapaClaveVentaTest {
+
+    @Test
+    void empaquetaYDesempaquetaLaClave() {
+        DiccionarioCodigos dic = new DiccionarioCodigos();
+        VentaNaturalKey k = new VentaNaturalKey(
+                VentaNaturalKey.numeros(123456789L, 2025, 12, 31),
+                VentaNaturalKey.codigos(dic.codigo(" 7861234 "), dic.codigo("PDV1")));
+
+        assertEquals(123456789L, k.clienteId());
+        assertEquals(2025, k.anio());
+        assertEquals(12, k.mes());
+        assertEquals(31, k.dia());
+        assertEquals(dic.codigo("7861234"), dic.codigo("7861234 "));
+        assertEquals(0, dic.codigo(null));
+        assertEquals(0, dic.codigo("  "));
+        assertThrows(IllegalArgumentException.class, () -> VentaNaturalKey.numeros(1L, 2025, 16, 1));
+
+        // Los cargadores omiten la fila con este motivo en vez de dejar que numeros() aborte el lote
+        assertNull(VentaNaturalKey.fueraDeRango(123456789L, 2025, 12, 31));
+        assertEquals("Año fuera de rango: 9999", VentaNaturalKey.fueraDeRango(1L, 9999, 12, 31));
+        assertEquals("Cliente fuera de rango: " + (1L << 40), VentaNaturalKey.fueraDeRango(1L << 40, 2025, 1, 1));
+    }
+
+    @Test
+    void conservaOrdenDeInsercionYReemplazaEnSuLugar() {
+        MapaClaveVenta<String> mapa = new MapaClaveVenta<>(4);
+        int n = 10_000;
+        for (int i = 0; i < n; i++) {
+            mapa.put(VentaNaturalKey.numeros((long) i % 7, 2024, i % 12 + 1, i % 28 + 1), i, "v" + i);
+        }
+        assertEquals(n, mapa.size());
+
+        long num = VentaNaturalKey.numeros(3L, 2024, 4, 4);
+        assertEquals("v3", mapa.put(num, 3, "otra"));
+        assertEquals(n, mapa.size());
+        assertEquals("otra", mapa.valores().get(3));
+        assertEquals("otra", mapa.get(num, 3));
+
+        for (int i = 0; i < n; i++) {
+            if (i != 3) assertEquals("v" + i, mapa.valorEn(i));
+        }
+        assertTrue(mapa.containsKey(num, 3));
+        assertFalse(mapa.containsKey(num, 4));
+        assertNull(mapa.get(num, n));
+    }
+}
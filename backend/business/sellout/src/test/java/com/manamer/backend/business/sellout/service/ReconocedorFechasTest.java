@@ -0,0 +1,76 @@
+package com.manamer.backend.business.sellout.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** Mismo resultado que las listas de DateTimeFormatter que reemplaza ReconocedorFechas. */
+class ReconocedorFechasTest {
+
+    private static final List<DateTimeFormatter> GENERAL = List.of(
+            DateTimeFormatter.ofPattern("dd/MM/uuuu"),
+            DateTimeFormatter.ofPattern("d/M/uuuu"),
+            DateTimeFormatter.ofPattern("dd-MM-uuuu"),
+            DateTimeFormatter.ofPattern("d-M-uuuu"),
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("MM/dd/uuuu"),
+            DateTimeFormatter.ofPattern("M/d/uuuu"));
+
+    private static final List<DateTimeFormatter> DEPRATI = List.of(
+            "dd.MM.yyyy", "dd/MM/yyyy", "dd-MM-yyyy", "yyyy-MM-dd", "yyyy/MM/dd", "d-MMM-yyyy").stream()
+            .map(p -> DateTimeFormatter.ofPattern(p).withLocale(Locale.US)).toList();
+
+    private static LocalDate legado(List<DateTimeFormatter> formatos, String s) {
+        for (DateTimeFormatter f : formatos) {
+            try { return LocalDate.parse(s, f); } catch (Exception ignore) {}
+        }
+        return null;
+    }
+
+    @Test
+    void casosConocidos() {
+        ReconocedorFechas general = new ReconocedorFechas(ReconocedorFechas.Perfil.GENERAL);
+        assertEquals(LocalDate.of(2024, 4, 5), general.leer("05/04/2024"));
+        assertEquals(LocalDate.of(2024, 12, 25), general.leer("12/25/2024"));
+        assertEquals(LocalDate.of(2024, 4, 5), general.leer("05/04/2024")); // la forma en caché no cambia la prioridad
+        assertEquals(LocalDate.of(2024, 4, 30), general.leer("31/04/2024"));
+        assertEquals(null, general.leer("2024-02-30"));
+
+        ReconocedorFechas deprati = new ReconocedorFechas(ReconocedorFechas.Perfil.DEPRATI);
+        assertEquals(LocalDate.of(2024, 3, 5), deprati.leer("5-Mar-2024"));
+        assertEquals(LocalDate.of(2024, 3, 5), deprati.leer("05.03.2024"));
+        assertEquals(null, deprati.leer("5-MAR-2024"));
+        assertEquals(null, deprati.leer("45292"));
+    }
+
+    @Test
+    void aleatoriosIgualAlLegado() {
+        Random r = new Random(7);
+        String[] seps = {"/", "-", ".", ":"};
+        String[] meses = {"Jan", "Feb", "Sep", "Dec", "MAR", "Foo"};
+        ReconocedorFechas general = new ReconocedorFechas(ReconocedorFechas.Perfil.GENERAL);
+        ReconocedorFechas deprati = new ReconocedorFechas(ReconocedorFechas.Perfil.DEPRATI);
+        for (int i = 0; i < 20_000; i++) {
+            String sep = seps[r.nextInt(seps.length)];
+            String a = numero(r, 1 + r.nextInt(2), 35);
+            String b = r.nextInt(8) == 0 ? meses[r.nextInt(meses.length)] : numero(r, 1 + r.nextInt(2), 35);
+            String y = r.nextInt(2000) + 1000 + "";
+            String s = r.nextInt(4) == 0 ? y + sep + numero(r, 2, 14) + sep + numero(r, 2, 33) : a + sep + b + sep + y;
+            assertEquals(legado(GENERAL, s), general.leer(s), s);
+            assertEquals(legado(DEPRATI, s), deprati.leer(s), s);
+        }
+    }
+
+    private static String numero(Random r, int largo, int max) {
+        int v = r.nextInt(max);
+        String s = String.valueOf(v);
+        while (s.length() < largo) s = "0" + s;
+        return s;
+    }
+}
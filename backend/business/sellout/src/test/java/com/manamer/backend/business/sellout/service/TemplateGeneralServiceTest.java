@@ -0,0 +1,33 @@
+package com.manamer.backend.business.sellout.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/** Prefetch de ventas existentes del Template General contra la clave de UX_venta_clave_natural. */
+class TemplateGeneralServiceTest {
+
+    @Test
+    void recargaDelMesSoloEmparejaLaFilaDelMismoDia() {
+        DiccionarioCodigos codigos = new DiccionarioCodigos();
+        MapaClaveVenta<Long> existentes = new MapaClaveVenta<>();
+        // Mismo cliente/año/mes/cod_barra/pdv en dos días distintos, como permite el índice único
+        TemplateGeneralService.indexarExistentes(List.of(
+                new Object[]{10L, 2024, 3, 5, "7861", "P1", 1L},
+                new Object[]{11L, 2024, 3, 20, "7861", "P1", 1L},
+                new Object[]{12L, 2024, 3, null, "7861", "P1", 1L}), codigos, existentes);
+        long cod = VentaNaturalKey.codigos(codigos.codigo("7861"), codigos.codigo("P1"));
+
+        // La fila del día 20 actualiza la del día 20 (el UPDATE por id no cambia el día)
+        assertEquals(11L, existentes.get(TemplateGeneralService.numerosFila(1L, LocalDate.of(2024, 3, 20)), cod));
+        assertEquals(10L, existentes.get(TemplateGeneralService.numerosFila(1L, LocalDate.of(2024, 3, 5)), cod));
+        // Un día sin fila es un alta con clave propia, no un UPDATE que choque con otra fila del mes
+        assertNull(existentes.get(TemplateGeneralService.numerosFila(1L, LocalDate.of(2024, 3, 1)), cod));
+        assertNull(existentes.get(TemplateGeneralService.numerosFila(2L, LocalDate.of(2024, 3, 20)), cod));
+        assertEquals(3, existentes.size());
+    }
+}
@@ -0,0 +1,92 @@
+package com.manamer.backend.business.sellout.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** Equivalencia con las implementaciones que reemplaza TextNormalizer. */
+class TextNormalizerTest {
+
+    private static final List<String> CORPUS = List.of(
+            "", " ", "  CodCliente ", "Código Cliente", "NOMBRE  LOCAL", "Día natural", "No. Mat. Proveedor",
+            "año", "Año", "venta $", "FARMACIAS  ÉCONÓMICAS\tS.A.", "Ñandú", "São Paulo", "Łódź", "İstanbul",
+            "Straße", "cod_barra", "  \t ", "é", "ǅemal", "ÆØÅ æøå", "ŉ", "ǰ", "Ωmega", "Tiếng Việt");
+
+    // ==== Implementaciones anteriores ====
+
+    /** ClienteService.normalizeForKey */
+    private static String claveParLegado(String s) {
+        if (s == null) return "";
+        String t = Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        t = t.trim().replaceAll("\\s+", " ");
+        return t.toUpperCase(Locale.ROOT);
+    }
+
+    /** TemplateGeneralService.normalizar */
+    private static String encabezadoTemplateLegado(String s) {
+        if (s == null) return null;
+        return Normalizer.normalize(s.trim().replaceAll("\\s+", " "), Normalizer.Form.NFD)
+                .replaceAll("\\p{InCombiningDiacriticalMarks}+", "")
+                .toUpperCase(Locale.ROOT);
+    }
+
+    /** ClienteRepository.limpiar */
+    private static String limpiarLegado(String s) {
+        if (s == null) return "";
+        return Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT).trim();
+    }
+
+    /** DepratiVentaService / FybecaVentaService.normalizarTexto */
+    private static String normalizarTextoLegado(String input) {
+        if (input == null) return null;
+        return Normalizer.normalize(input.toLowerCase().trim(), Normalizer.Form.NFD)
+                .replaceAll("\\p{InCombiningDiacriticalMarks}+", "")
+                .replaceAll("[^\\p{ASCII}]", "")
+                .replaceAll("[\\.,\\\"\\']", "");
+    }
+
+    @Test
+    void mayusculasYMinusculasIgualesALoAnterior() {
+        for (String s : CORPUS) {
+            assertEquals(claveParLegado(s), TextNormalizer.mayusculas(s), s);
+            assertEquals(limpiarLegado(s), TextNormalizer.minusculas(s), s);
+            if (!s.contains("\u0301")) {
+                // Template General quitaba tildes después de colapsar espacios: solo difiere con marcas sueltas
+                assertEquals(encabezadoTemplateLegado(s), TextNormalizer.mayusculas(s), s);
+            }
+        }
+    }
+
+    @Test
+    void aleatoriosEnTodoElRangoLatino() {
+        Random r = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            char[] cs = new char[r.nextInt(24)];
+            for (int j = 0; j < cs.length; j++) {
+                int k = r.nextInt(10);
+                cs[j] = k == 0 ? ' ' : k == 1 ? '\t' : k == 2 ? (char) (0x300 + r.nextInt(0x70))
+                        : k == 3 ? (char) (0x250 + r.nextInt(0x1E00)) : (char) r.nextInt(0x250);
+            }
+            String s = new String(cs);
+            assertEquals(claveParLegado(s), TextNormalizer.mayusculas(s), s);
+            assertEquals(limpiarLegado(s), TextNormalizer.minusculas(s), s);
+        }
+    }
+
+    @Test
+    void claveDeEncabezado() {
+        // Con un solo espacio entre palabras y sin '_', igual que normalizarTexto
+        for (String s : List.of("Código Cliente", "Día natural", "No. Mat. Proveedor", "venta $", "Stock en Unidades",
+                "\"Marca\"", "PDV's", "Ñandú")) {
+            assertEquals(normalizarTextoLegado(s), TextNormalizer.clave(s), s);
+        }
+        assertEquals("cod barra", TextNormalizer.clave("  COD__barra "));
+        assertEquals("venta unidades", TextNormalizer.clave("Venta  Unidades"));
+        assertEquals("", TextNormalizer.clave(null));
+    }
+}
@@ -0,0 +1,41 @@
+package com.manamer.backend.business.sellout.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.manamer.backend.business.sellout.models.Venta;
+
+/** Ids explícitos de los INSERT por JDBC a partir de bloques reservados de venta_id_seq. */
+class VentaBulkDataTest {
+
+    @Test
+    void bloquesCubrenTodasLasFilas() {
+        assertEquals(1, VentaBulkService.bloquesPara(0));
+        assertEquals(1, VentaBulkService.bloquesPara(1));
+        assertEquals(1, VentaBulkService.bloquesPara(VentaBulkService.BLOQUE_IDS));
+        assertEquals(2, VentaBulkService.bloquesPara(VentaBulkService.BLOQUE_IDS + 1));
+    }
+
+    @Test
+    void idConsecutivoEnLaPrimeraColumna() {
+        Venta a = new Venta();
+        a.setCodBarra("7861");
+        Venta b = new Venta();
+        b.setCodBarra("7862");
+        VentaBulkData data = new VentaBulkData(List.of(a, b), 5_001L);
+
+        assertEquals(VentaBulkService.COLUMNAS.size() + 1, data.getColumnOrdinals().size());
+        assertEquals("id", data.getColumnName(1));
+        assertEquals("cliente_id", data.getColumnName(2));
+
+        data.next();
+        Object[] fila = data.getRowData();
+        assertEquals(5_001L, fila[0]);
+        assertEquals("7861", fila[1 + VentaBulkService.COLUMNAS.indexOf("cod_barra")]);
+        data.next();
+        assertEquals(5_002L, data.getRowData()[0]);
+    }
+}